@@ -5,6 +5,7 @@ plugins {
     id("com.github.johnrengelman.shadow") version "8.1.1"
     id("org.openjfx.javafxplugin") version "0.0.13"
     id("org.beryx.jlink") version "2.25.0"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "io.olmosjt"
@@ -49,6 +50,24 @@ dependencies {
 
 tasks.withType<Test> {
     useJUnitPlatform()
+    // CompactTaskStoreTest holds 1M history rows as Task objects to measure them.
+    maxHeapSize = "1g"
+    // DataService tests run against an in-memory H2 database; the archive tier, kept next to the
+    // database, lands in this scratch working directory instead of the project.
+    val scratch = layout.buildDirectory.dir("test-db").get().asFile
+    systemProperty("terminaltodo.db", "mem:terminaltodo-test")
+    workingDir = scratch
+    doFirst {
+        scratch.deleteRecursively()
+        scratch.mkdirs()
+    }
+}
+
+// Persistence benchmarks (src/jmh): ./gradlew jmh, results in build/results/jmh
+jmh {
+    jmhVersion.set("1.37")
+    profilers.add("gc")
+    resultFormat.set("JSON")
 }
 
 
@@ -61,8 +80,43 @@ tasks.shadowJar {
 
 jlink {
     imageZip.set(layout.buildDirectory.file("/distributions/app-${javafx.platform.classifier}.zip"))
-    options.set(listOf("--strip-debug", "--compress", "2", "--no-header-files", "--no-man-pages"))
+    // The image needs its own base CDS archive: the dynamic one cdsArchive writes is layered on top.
+    options.set(listOf("--strip-debug", "--compress", "2", "--no-header-files", "--no-man-pages",
+        "--generate-cds-archive"))
     launcher {
         name = "app"
+        // The archive is written by cdsArchive below; without it the JVM just starts without AppCDS.
+        // The GUI gets the same flag: see cdsArchive for what it does and does not cover there.
+        jvmArgs = listOf(
+            "--enable-native-access=javafx.graphics",
+            "-Xshare:auto",
+            "-XX:SharedArchiveFile={{BIN_DIR}}/../lib/app.jsa"
+        )
     }
+}
+
+// AppCDS for the headless commands (app add / app ls): one training run of the jlink image
+// against a scratch database dumps the loaded classes into lib/app.jsa inside the image.
+// The run is headless because the build machine may have no display, so the GUI path is not
+// trained: a GUI start maps the shared classes (JDK, H2, backend) from the archive and loads
+// javafx.* and the ui package from the image as before. Training the GUI as well would need a
+// second run under a display (e.g. xvfb-run) that quits after its first frame.
+val cdsArchive by tasks.registering(Exec::class) {
+    dependsOn(tasks.named("jlink"))
+    val image = layout.buildDirectory.dir("image").get().asFile
+    val scratchDb = layout.buildDirectory.file("cds-training/db").get().asFile
+    inputs.file(image.resolve("lib/modules"))
+    outputs.file(image.resolve("lib/app.jsa"))
+    doFirst { scratchDb.parentFile.deleteRecursively() }
+    commandLine(
+        image.resolve("bin/java").absolutePath,
+        "-XX:ArchiveClassesAtExit=" + image.resolve("lib/app.jsa").absolutePath,
+        "-Dterminaltodo.db=" + scratchDb.absolutePath,
+        "-m", "io.olmosjt.terminaltodo/io.olmosjt.terminaltodo.Launcher",
+        "ls", "--today"
+    )
+}
+
+tasks.named("jlinkZip") {
+    dependsOn(cdsArchive)
 }
\ No newline at end of file
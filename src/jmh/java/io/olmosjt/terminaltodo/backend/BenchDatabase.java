@@ -0,0 +1,75 @@
+package io.olmosjt.terminaltodo.backend;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Throwaway H2 database for one JMH trial. Must run before anything touches {@link DataService},
+ * because the database path is read once when {@link Database} is loaded; JMH forks a fresh JVM
+ * per trial, so every parameter combination gets its own file.
+ */
+final class BenchDatabase {
+  private static final int SEED_CHUNK = 10_000;
+
+  private static int idSeq;
+
+  private BenchDatabase() {}
+
+  static Path create() {
+    try {
+      Path dir = Files.createTempDirectory("terminaltodo-bench");
+      System.setProperty("terminaltodo.db", dir.resolve("bench_db").toString());
+      return dir;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Seeds {@code count} top-level tasks spread over the last {@code count / 50} days (about 50 a day);
+   * every fifth task gets two subtasks. Written in chunks so 1M rows never sit on the heap at once.
+   */
+  static void seed(int count) {
+    LocalDateTime now = LocalDateTime.now();
+    List<Task> chunk = new ArrayList<>(SEED_CHUNK);
+    for (int i = 0; i < count; i++) {
+      Task t = syntheticTask(i, now.minusMinutes((long) i * 29));
+      if (i % 5 == 0) {
+        t.getSubTasks().add(syntheticTask(i, t.getCreatedAt().plusMinutes(1)));
+        t.getSubTasks().add(syntheticTask(i, t.getCreatedAt().plusMinutes(2)));
+      }
+      chunk.add(t);
+      if (chunk.size() == SEED_CHUNK) {
+        DataService.saveTasks(chunk);
+        chunk.clear();
+      }
+    }
+    DataService.saveTasks(chunk);
+  }
+
+  static Task syntheticTask(int i, LocalDateTime createdAt) {
+    Task t = new Task("synthetic task #" + i + " review notes and follow up", Task.Priority.values()[i % 4]);
+    // Odd multiplier mod 2^32 is a bijection, so ids are unique but still look random.
+    t.setId(String.format("%08x", (idSeq++) * 2654435761L & 0xffffffffL));
+    t.setCreatedAt(createdAt);
+    t.setDone(i % 3 == 0);
+    if (t.isDone()) t.setCompletedAt(createdAt.plusHours(1));
+    return t;
+  }
+
+  static void destroy(Path dir) {
+    DataService.shutdown();
+    try (Stream<Path> files = Files.walk(dir)) {
+      files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
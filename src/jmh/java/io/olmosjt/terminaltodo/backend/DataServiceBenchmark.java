@@ -0,0 +1,100 @@
+package io.olmosjt.terminaltodo.backend;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Baseline for the DataService persistence paths. Run with {@code ./gradlew jmh}; the gc profiler
+ * adds allocation rate per operation and SampleTime mode reports latency percentiles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DataServiceBenchmark {
+  @Param({"1000", "100000", "1000000"})
+  public int taskCount;
+
+  private Path dir;
+  private List<Task> loaded;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    dir = BenchDatabase.create();
+    BenchDatabase.seed(taskCount);
+    loaded = new ArrayList<>();
+    DataService.loadTasks(loaded);
+    next = taskCount;
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    BenchDatabase.destroy(dir);
+  }
+
+  /** A row that exists before each deleteTask invocation, so every call deletes something. */
+  @State(Scope.Thread)
+  public static class Victim {
+    String id;
+
+    @Setup(Level.Invocation)
+    public void insert(DataServiceBenchmark bench) {
+      Task t = BenchDatabase.syntheticTask(bench.next++, LocalDateTime.now());
+      DataService.saveTasks(List.of(t));
+      id = t.getId();
+    }
+  }
+
+  @Benchmark
+  public List<Task> loadTasks() {
+    List<Task> tasks = new ArrayList<>();
+    DataService.loadTasks(tasks);
+    return tasks;
+  }
+
+  @Benchmark
+  public List<Task> loadRecentWindow() {
+    return DataService.loadPage(LocalDate.now().minusDays(6), DataService.END_OF_TIME);
+  }
+
+  /** The create-task path: one new task in a large in-memory list should write exactly one row. */
+  @Benchmark
+  public int saveTasksAfterOneAdd() {
+    loaded.add(BenchDatabase.syntheticTask(next++, LocalDateTime.now()));
+    return DataService.saveTasks(loaded);
+  }
+
+  @Benchmark
+  public Task updateTask() {
+    Task t = loaded.get(next++ % loaded.size());
+    t.setDone(!t.isDone());
+    DataService.updateTask(t);
+    return t;
+  }
+
+  @Benchmark
+  public void deleteTask(Victim victim) {
+    DataService.deleteTask(victim.id);
+  }
+}
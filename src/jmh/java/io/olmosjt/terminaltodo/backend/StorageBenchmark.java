@@ -0,0 +1,122 @@
+package io.olmosjt.terminaltodo.backend;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * H2 against the append-only journal on the same workload: single writes (what the persistence
+ * queue does after a lone click), concurrent writers (where group commit shares one fsync), and
+ * loading the recent window. Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class StorageBenchmark {
+  private static final int SEED_BATCH = 1000;
+
+  @Param({"h2", "journal"})
+  public String engine;
+
+  @Param({"10000", "100000"})
+  public int taskCount;
+
+  private Path dir;
+  private TaskStorage storage;
+  private List<TaskRow> seeded;
+  private final AtomicInteger next = new AtomicInteger();
+  private int toggled;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    if (engine.equals("h2")) {
+      dir = BenchDatabase.create();
+      storage = new H2Storage();
+    } else {
+      dir = Files.createTempDirectory("terminaltodo-bench");
+      storage = new JournalStorage(dir.resolve("journal"));
+    }
+
+    seeded = new ArrayList<>(taskCount);
+    LocalDateTime now = LocalDateTime.now();
+    List<PendingWrite> batch = new ArrayList<>(SEED_BATCH);
+    for (int i = 0; i < taskCount; i++) {
+      TaskRow row = TaskRow.of(BenchDatabase.syntheticTask(i, now.minusMinutes((long) i * 29)), null);
+      seeded.add(row);
+      batch.add(upsert(row));
+      if (batch.size() == SEED_BATCH) {
+        storage.apply(batch);
+        batch.clear();
+      }
+    }
+    storage.apply(batch);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    storage.close();
+    BenchDatabase.destroy(dir);
+  }
+
+  @Benchmark
+  public void createTask() {
+    storage.apply(List.of(upsert(newRow())));
+  }
+
+  /** Eight writers at once: H2 serializes whole transactions, the journal shares each fsync. */
+  @Benchmark
+  @Threads(8)
+  public void createTaskConcurrent() {
+    storage.apply(List.of(upsert(newRow())));
+  }
+
+  @Benchmark
+  public void toggleTask() {
+    int i = toggled++ % seeded.size();
+    TaskRow r = seeded.get(i);
+    TaskRow flipped = new TaskRow(r.id(), r.text(), !r.done(), r.migrated(), r.createdAt(),
+        r.done() ? null : LocalDateTime.now(), r.priority(), r.parentId(), r.workspace());
+    seeded.set(i, flipped);
+    storage.apply(List.of(upsert(flipped)));
+  }
+
+  @Benchmark
+  public List<Task> loadRecentWindow() {
+    return storage.loadPage(LocalDate.now().minusDays(6), DataService.END_OF_TIME);
+  }
+
+  private TaskRow newRow() {
+    Task t = new Task("benchmark task " + next.get(), Task.Priority.NORMAL);
+    // Prefixed so concurrent ids never collide with the seeded ones.
+    t.setId(String.format("b%07x", next.getAndIncrement()));
+    return TaskRow.of(t, null);
+  }
+
+  private static PendingWrite upsert(TaskRow row) {
+    return new PendingWrite(PendingWrite.Kind.UPSERT, row.id(), row);
+  }
+}
@@ -0,0 +1,95 @@
+package io.olmosjt.terminaltodo.backend;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scan vs. seek at 100k rows: the same queries with the schema's indexes (migration 2) in place
+ * and with them dropped.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TaskIndexesBenchmark {
+  private static final int TASK_COUNT = 100_000;
+
+  @Param({"true", "false"})
+  public boolean indexed;
+
+  private Path dir;
+  private String parentId;
+
+  @Setup(Level.Trial)
+  public void setUp() throws SQLException {
+    dir = BenchDatabase.create();
+    BenchDatabase.seed(TASK_COUNT);
+    if (!indexed) {
+      try (Statement stmt = Database.connection().createStatement()) {
+        stmt.execute("""
+            DROP INDEX idx_tasks_created_at;
+            DROP INDEX idx_tasks_parent_id;
+            DROP INDEX idx_tasks_done_created;
+            """);
+      }
+    }
+    try (Statement stmt = Database.connection().createStatement();
+         ResultSet rs = stmt.executeQuery("SELECT parent_id FROM tasks WHERE parent_id IS NOT NULL LIMIT 1 OFFSET 5000")) {
+      rs.next();
+      parentId = rs.getString(1);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    BenchDatabase.destroy(dir);
+  }
+
+  @Benchmark
+  public List<Task> recentWindowByCreatedAt() {
+    return DataService.loadPage(LocalDate.now().minusDays(6), DataService.END_OF_TIME);
+  }
+
+  @Benchmark
+  public int subtasksByParentId() throws SQLException {
+    PreparedStatement ps = Database.prepare("SELECT COUNT(*) FROM tasks WHERE parent_id = ?");
+    ps.setString(1, parentId);
+    try (ResultSet rs = ps.executeQuery()) {
+      rs.next();
+      return rs.getInt(1);
+    }
+  }
+
+  @Benchmark
+  public int openTasksSinceLastWeek() throws SQLException {
+    PreparedStatement ps = Database.prepare("SELECT COUNT(*) FROM tasks WHERE is_done = FALSE AND created_at >= ?");
+    ps.setTimestamp(1, Timestamp.valueOf(LocalDate.now().minusDays(7).atStartOfDay()));
+    try (ResultSet rs = ps.executeQuery()) {
+      rs.next();
+      return rs.getInt(1);
+    }
+  }
+}
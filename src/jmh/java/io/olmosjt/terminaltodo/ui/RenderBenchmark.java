@@ -0,0 +1,173 @@
+package io.olmosjt.terminaltodo.ui;
+
+import io.olmosjt.terminaltodo.backend.CompactTaskStore;
+import io.olmosjt.terminaltodo.backend.Task;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.scene.layout.BorderPane;
+import javafx.stage.Stage;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frame time of the two list renderers over a large list: each invocation jumps a page and waits
+ * for the pulse that restyles, lays out and (for the canvas) repaints it. The frame time is the
+ * span from the pre-layout to the post-layout pulse listener of that pulse, reported as
+ * {@code scrollFrame:pulseMillis}; the primary score also counts the hop onto the FX thread. GPU
+ * rasterization on the render thread is not included. Needs a display; run with
+ * {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RenderBenchmark {
+  private static final int PAGE = 37;
+
+  @Param({"nodes", "canvas"})
+  public String mode;
+
+  @Param({"50000"})
+  public int rowCount;
+
+  private Stage stage;
+  private TaskListPanel panel;
+  private CanvasTaskView canvas;
+  private int position;
+
+  // FX thread only, except pulseNanos, which is read after the latch.
+  private boolean armed;
+  private long pulseStart;
+  private long pulseNanos;
+  private CountDownLatch pulsed;
+
+  /** Pre- to post-layout time of the measured pulses, averaged per iteration. */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class PulseTime {
+    private long nanos;
+    private long pulses;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      nanos = 0;
+      pulses = 0;
+    }
+
+    void record(long spanNanos) {
+      nanos += spanNanos;
+      pulses++;
+    }
+
+    public double pulseMillis() {
+      return pulses == 0 ? 0 : nanos / 1e6 / pulses;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    try {
+      Platform.startup(started::countDown);
+    } catch (IllegalStateException alreadyRunning) {
+      started.countDown();
+    }
+    started.await();
+    Platform.setImplicitExit(false);
+
+    onFx(() -> {
+      LocalDateTime first = LocalDateTime.now().minusMinutes(rowCount * 29L);
+      List<Task> built = new ArrayList<>(rowCount);
+      for (int i = 0; i < rowCount; i++) {
+        Task t = new Task("synthetic task #" + i + " review notes and follow up", Task.Priority.values()[i % 4]);
+        t.setCreatedAt(first.plusMinutes(i * 29L));
+        t.setDone(i % 3 == 0);
+        if (t.isDone()) t.setCompletedAt(t.getCreatedAt().plusHours(1));
+        if (i % 5 == 0) t.getSubTasks().add(new Task("follow-up for #" + i, Task.Priority.NORMAL));
+        built.add(t);
+      }
+      ObservableList<Task> tasks = FXCollections.observableArrayList(built);
+      panel = new TaskListPanel(tasks, new CompactTaskStore(), t -> {}, t -> {});
+      Parent view = panel;
+      if (mode.equals("canvas")) {
+        canvas = new CanvasTaskView(panel);
+        view = canvas;
+      }
+
+      BorderPane root = new BorderPane(view);
+      root.getStyleClass().addAll("terminal-window", "theme-dark");
+      Scene scene = new Scene(root, 750, 500);
+      scene.getStylesheets().add(TaskListPanel.class.getResource("style.css").toExternalForm());
+      scene.addPreLayoutPulseListener(() -> {
+        if (armed) pulseStart = System.nanoTime();
+      });
+      scene.addPostLayoutPulseListener(() -> {
+        if (!armed) return;
+        armed = false;
+        pulseNanos = System.nanoTime() - pulseStart;
+        pulsed.countDown();
+      });
+      stage = new Stage();
+      stage.setScene(scene);
+      stage.show();
+      return null;
+    });
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    onFx(() -> {
+      stage.hide();
+      return null;
+    });
+  }
+
+  /** Jumps a page further down the list (wrapping) and waits for the pulse that shows it. */
+  @Benchmark
+  public void scrollFrame(PulseTime time) throws InterruptedException {
+    CountDownLatch done = new CountDownLatch(1);
+    Platform.runLater(() -> {
+      position = (position + PAGE) % panel.getItems().size();
+      if (canvas != null) canvas.scrollToEntry(position);
+      else panel.scrollTo(position);
+
+      // No pulse runs during a runLater, so the next pre-layout listener starts the frame.
+      pulsed = done;
+      armed = true;
+      Platform.requestNextPulse();
+    });
+    done.await();
+    time.record(pulseNanos);
+  }
+
+  private static <T> T onFx(Callable<T> work) throws Exception {
+    FutureTask<T> task = new FutureTask<>(work);
+    Platform.runLater(task);
+    return task.get();
+  }
+}
@@ -1,9 +1,14 @@
 package io.olmosjt.terminaltodo;
 
+import io.olmosjt.terminaltodo.command.HeadlessCli;
 import io.olmosjt.terminaltodo.ui.TerminalTodo;
 
 public class Launcher {
   public static void main(String[] args) {
+    // Headless commands return before TerminalTodo (and with it javafx.*) is ever loaded.
+    if (HeadlessCli.handles(args)) {
+      System.exit(HeadlessCli.run(args));
+    }
     TerminalTodo.main(args);
   }
 }
@@ -0,0 +1,409 @@
+package io.olmosjt.terminaltodo.backend;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Columnar, primitive-backed storage for history rows (tasks scrolled in from older pages). A row
+ * costs a few array slots instead of a {@link Task} with its strings, date objects and subtask list:
+ * ids are packed into a {@code long}, timestamps are epoch microseconds (H2's TIMESTAMP precision,
+ * so a row written back is unchanged), flags live in bitsets and texts (workspace names too) are
+ * deduplicated. Top-level rows are also indexed by packed id for prefix lookups. {@link Task} objects are only built for rows being shown, kept in a small
+ * LRU cache, and pinned once edited so changes are never lost.
+ *
+ * <p>A top-level task's subtree is stored in the rows right after it, in pre-order with each row's
+ * depth, so {@code subCounts} of a top-level row is the length of that span. Not thread-safe; owned
+ * by the FX thread.
+ */
+public class CompactTaskStore {
+  private static final long NO_TIME = Long.MIN_VALUE;
+  private static final long NOT_PACKED = -1;
+  private static final int MATERIALIZED_CACHE_SIZE = 256;
+  private static final Task.Priority[] PRIORITIES = Task.Priority.values();
+
+  private int size;
+  private long[] ids = new long[64];
+  private long[] createdAt = new long[64];
+  private long[] completedAt = new long[64];
+  private byte[] priorities = new byte[64];
+  private int[] textRefs = new int[64];
+  private int[] workspaceRefs = new int[64];
+  private int[] subCounts = new int[64];
+  private byte[] depths = new byte[64];
+  private final BitSet done = new BitSet();
+  private final BitSet migrated = new BitSet();
+  private final BitSet subTask = new BitSet();
+  private final BitSet deleted = new BitSet();
+  private final Map<Integer, String> unpackedIds = new HashMap<>();
+
+  // Top-level rows with a packed id, as (id << 32 | row) with the sign bit flipped so signed order
+  // is id order. Entries past indexSorted were appended since the last lookup and are merged in by
+  // the next one, so appending a page stays O(page) and a lookup is a binary search.
+  private long[] idIndex = new long[64];
+  private int indexSize;
+  private int indexSorted;
+
+  private final List<String> texts = new ArrayList<>();
+  private final Map<String, Integer> textIds = new HashMap<>();
+
+  private final Map<Integer, Task> pinned = new HashMap<>();
+  private final Map<Task, Integer> rowOf = new IdentityHashMap<>();
+  private final Map<Integer, Task> cache = new LinkedHashMap<>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Integer, Task> eldest) {
+      if (size() <= MATERIALIZED_CACHE_SIZE) return false;
+      rowOf.remove(eldest.getValue());
+      return true;
+    }
+  };
+
+  /** Appends a top-level task and its whole subtree; returns the task's row. */
+  public int append(Task task) {
+    int row = appendRow(task, 0);
+    appendSubTasks(task, 1);
+    subCounts[row] = size - row - 1;
+    return row;
+  }
+
+  private void appendSubTasks(Task parent, int depth) {
+    if (depth > Task.MAX_DEPTH) return;
+    for (Task sub : parent.getSubTasks()) {
+      appendRow(sub, depth);
+      appendSubTasks(sub, depth + 1);
+    }
+  }
+
+  /** The task at a top-level row, built on demand; the same instance while cached or pinned. */
+  public Task materialize(int row) {
+    Task t = pinned.get(row);
+    if (t == null) t = cache.get(row);
+    if (t != null) return t;
+
+    t = build(row);
+    // path[d] is the last task built at depth d; the span is pre-order, so it parents depth d + 1.
+    Task[] path = new Task[Task.MAX_DEPTH + 1];
+    path[0] = t;
+    for (int i = row + 1; i <= row + subCounts[row]; i++) {
+      if (deleted.get(i)) continue;
+      Task sub = build(i);
+      path[depths[i] - 1].getSubTasks().add(sub);
+      path[depths[i]] = sub;
+    }
+    cache.put(row, t);
+    rowOf.put(t, row);
+    return t;
+  }
+
+  /**
+   * Direct subtasks of a top-level row as they would be shown: the materialized task's list if
+   * there is one (it may have been edited), otherwise the stored first-level rows not removed.
+   */
+  public int subTaskCount(int row) {
+    Task t = materialized(row);
+    if (t != null) return t.getSubTasks().size();
+    int count = 0;
+    for (int i = row + 1; i <= row + subCounts[row]; i++) {
+      if (depths[i] == 1 && !deleted.get(i)) count++;
+    }
+    return count;
+  }
+
+  /** The task at a top-level row if it is materialized right now, otherwise {@code null}. */
+  public Task materialized(int row) {
+    Task t = pinned.get(row);
+    return t != null ? t : cache.get(row);
+  }
+
+  /** Keeps a materialized task (and the edits made to it) alive for good. */
+  public void pin(Task task) {
+    Integer row = rowOf.get(task);
+    if (row != null && cache.remove(row) != null) pinned.put(row, task);
+  }
+
+  /** Row of a materialized top-level task, or -1 if it does not come from this store. */
+  public int rowOf(Task task) {
+    Integer row = rowOf.get(task);
+    return row != null ? row : -1;
+  }
+
+  public void remove(int row) {
+    deleted.set(row, row + subCounts[row] + 1);
+    Task t = pinned.remove(row);
+    if (t == null) t = cache.remove(row);
+    if (t != null) rowOf.remove(t);
+  }
+
+  /** Flags the rows with the given ids as migrated, materialized copies included. */
+  public void markMigrated(Collection<String> taskIds) {
+    Set<String> wanted = new HashSet<>(taskIds);
+    Set<Long> packed = new HashSet<>();
+    Set<String> unpacked = new HashSet<>();
+    for (String id : wanted) {
+      long p = pack(id);
+      if (p == NOT_PACKED) unpacked.add(id);
+      else packed.add(p);
+    }
+    for (int row = 0; row < size; row++) {
+      boolean hit = ids[row] == NOT_PACKED ? unpacked.contains(unpackedIds.get(row)) : packed.contains(ids[row]);
+      if (hit) migrated.set(row);
+    }
+    for (Task t : rowOf.keySet()) {
+      markMigrated(t, wanted);
+    }
+  }
+
+  private static void markMigrated(Task task, Set<String> wanted) {
+    if (wanted.contains(task.getId())) task.migrated();
+    for (Task sub : task.getSubTasks()) {
+      markMigrated(sub, wanted);
+    }
+  }
+
+  /**
+   * Brings stored rows up to date with changes a sync pulled into the table, materialized copies
+   * included (see {@link Task#applyRow}). A deleted subtask is removed here with its subtree; the
+   * top-level rows that were deleted are returned, for the caller to drop from view and
+   * {@link #remove}. Rows the pull inserted or moved to another parent show on the next load.
+   */
+  public List<Integer> applyPulled(Collection<SyncChange> changes) {
+    Map<Long, SyncChange> packed = new HashMap<>();
+    Map<String, SyncChange> unpacked = new HashMap<>();
+    for (SyncChange c : changes) {
+      long p = pack(c.id());
+      if (p == NOT_PACKED) unpacked.put(c.id(), c);
+      else packed.put(p, c);
+    }
+    List<Integer> removedTopLevel = new ArrayList<>();
+    int top = 0;
+    for (int row = 0; row < size; row++) {
+      if (!subTask.get(row)) top = row;
+      if (deleted.get(row)) continue;
+      SyncChange c = ids[row] == NOT_PACKED ? unpacked.get(unpackedIds.get(row)) : packed.get(ids[row]);
+      if (c == null) continue;
+      Task copy = materialized(top);
+      if (c.deleted()) {
+        if (row == top) {
+          removedTopLevel.add(row);
+          continue;
+        }
+        int end = row + 1;
+        while (end <= top + subCounts[top] && depths[end] > depths[row]) end++;
+        deleted.set(row, end);
+        if (copy != null) detach(copy, c.id());
+        row = end - 1;
+        continue;
+      }
+      TaskRow r = c.row();
+      textRefs[row] = intern(r.text() != null ? r.text() : "");
+      done.set(row, r.done());
+      migrated.set(row, r.migrated());
+      completedAt[row] = r.completedAt() != null ? toMicros(r.completedAt()) : NO_TIME;
+      priorities[row] = (byte) r.priority().ordinal();
+      Task t = copy != null ? find(copy, c.id()) : null;
+      if (t != null) t.applyRow(r, c.fields());
+    }
+    return removedTopLevel;
+  }
+
+  private static Task find(Task task, String id) {
+    if (task.getId().equals(id)) return task;
+    for (Task sub : task.getSubTasks()) {
+      Task found = find(sub, id);
+      if (found != null) return found;
+    }
+    return null;
+  }
+
+  private static boolean detach(Task task, String id) {
+    if (task.getSubTasks().removeIf(sub -> sub.getId().equals(id))) return true;
+    for (Task sub : task.getSubTasks()) {
+      if (detach(sub, id)) return true;
+    }
+    return false;
+  }
+
+  public boolean isRemoved(int row) {
+    return deleted.get(row);
+  }
+
+  public LocalDateTime createdAt(int row) {
+    return fromMicros(createdAt[row]);
+  }
+
+  /**
+   * Top-level rows whose id starts with {@code prefix}: packed ids in id order, found by binary
+   * search on the id index, then the few rows whose id could not be packed.
+   */
+  public List<Integer> findByPrefix(String prefix, int limit) {
+    List<Integer> matches = new ArrayList<>();
+    if (!prefix.isEmpty() && prefix.length() <= 8 && prefix.chars().allMatch(c -> Character.digit(c, 16) >= 0)
+        && prefix.equals(prefix.toLowerCase())) {
+      sortIndex();
+      int shift = 4 * (8 - prefix.length());
+      long lo = Long.parseLong(prefix, 16) << shift;
+      long hi = lo + (1L << shift);
+      for (int i = lowerBound(lo); i < indexSize && matches.size() < limit; i++) {
+        long entry = idIndex[i] ^ Long.MIN_VALUE;
+        if ((entry >>> 32) >= hi) break;
+        int row = (int) entry;
+        if (!deleted.get(row)) matches.add(row);
+      }
+    }
+    for (Map.Entry<Integer, String> e : unpackedIds.entrySet()) {
+      if (matches.size() == limit) break;
+      int row = e.getKey();
+      if (!subTask.get(row) && !deleted.get(row) && e.getValue().startsWith(prefix)) matches.add(row);
+    }
+    return matches;
+  }
+
+  /** First index entry whose id is at least {@code id}. */
+  private int lowerBound(long id) {
+    int lo = 0, hi = indexSize;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (((idIndex[mid] ^ Long.MIN_VALUE) >>> 32) < id) lo = mid + 1;
+      else hi = mid;
+    }
+    return lo;
+  }
+
+  /** Sorts the entries appended since the last lookup and merges them into the sorted prefix. */
+  private void sortIndex() {
+    if (indexSorted == indexSize) return;
+    Arrays.sort(idIndex, indexSorted, indexSize);
+    if (indexSorted > 0) {
+      long[] merged = new long[idIndex.length];
+      int a = 0, b = indexSorted, out = 0;
+      while (a < indexSorted && b < indexSize) merged[out++] = idIndex[a] <= idIndex[b] ? idIndex[a++] : idIndex[b++];
+      while (a < indexSorted) merged[out++] = idIndex[a++];
+      while (b < indexSize) merged[out++] = idIndex[b++];
+      idIndex = merged;
+    }
+    indexSorted = indexSize;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public void clear() {
+    size = 0;
+    indexSize = 0;
+    indexSorted = 0;
+    done.clear();
+    migrated.clear();
+    subTask.clear();
+    deleted.clear();
+    unpackedIds.clear();
+    texts.clear();
+    textIds.clear();
+    pinned.clear();
+    cache.clear();
+    rowOf.clear();
+  }
+
+  /** Approximate bytes held by the columns and text pool (not counting materialized tasks). */
+  public long estimatedBytes() {
+    long bytes = (long) ids.length * (8 + 8 + 8 + 1 + 4 + 4 + 4 + 1) + (long) idIndex.length * 8;
+    bytes += (done.size() + migrated.size() + subTask.size() + deleted.size()) / 8;
+    for (String text : texts) {
+      bytes += 40 + text.length();
+    }
+    return bytes;
+  }
+
+  private int appendRow(Task t, int depth) {
+    ensureCapacity(size + 1);
+    int row = size++;
+
+    ids[row] = pack(t.getId());
+    if (ids[row] == NOT_PACKED) {
+      unpackedIds.put(row, t.getId());
+    } else if (depth == 0) {
+      if (indexSize == idIndex.length) idIndex = Arrays.copyOf(idIndex, indexSize * 2);
+      idIndex[indexSize++] = (ids[row] << 32 | row) ^ Long.MIN_VALUE;
+    }
+    createdAt[row] = toMicros(t.getCreatedAt());
+    completedAt[row] = t.getCompletedAt() != null ? toMicros(t.getCompletedAt()) : NO_TIME;
+    priorities[row] = (byte) t.getPriority().ordinal();
+    textRefs[row] = intern(t.getText() != null ? t.getText() : "");
+    workspaceRefs[row] = intern(t.getWorkspace());
+    subCounts[row] = 0;
+    depths[row] = (byte) depth;
+    done.set(row, t.isDone());
+    migrated.set(row, t.isMigrated());
+    subTask.set(row, depth > 0);
+    deleted.clear(row);
+    return row;
+  }
+
+  private int intern(String text) {
+    return textIds.computeIfAbsent(text, s -> {
+      texts.add(s);
+      return texts.size() - 1;
+    });
+  }
+
+  private Task build(int row) {
+    Task t = new Task();
+    t.setWorkspace(texts.get(workspaceRefs[row]));
+    t.setId(ids[row] == NOT_PACKED ? unpackedIds.get(row) : String.format("%08x", ids[row]));
+    t.setText(texts.get(textRefs[row]));
+    t.setDone(done.get(row));
+    t.setMigrated(migrated.get(row));
+    t.setCreatedAt(createdAt(row));
+    if (completedAt[row] != NO_TIME) {
+      t.setCompletedAt(fromMicros(completedAt[row]));
+    }
+    t.setPriority(PRIORITIES[priorities[row]]);
+    t.markClean();
+    return t;
+  }
+
+  private static long toMicros(LocalDateTime t) {
+    return t.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + t.getNano() / 1_000;
+  }
+
+  private static LocalDateTime fromMicros(long micros) {
+    return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000), Math.floorMod(micros, 1_000_000) * 1_000,
+        ZoneOffset.UTC);
+  }
+
+  /** 8 lower-case hex chars (the format {@link Task#newId()} produces) fit in a long; anything else doesn't. */
+  private static long pack(String id) {
+    if (id == null || id.length() != 8) return NOT_PACKED;
+    long value = 0;
+    for (int i = 0; i < 8; i++) {
+      char c = id.charAt(i);
+      int digit = Character.digit(c, 16);
+      if (digit < 0 || Character.isUpperCase(c)) return NOT_PACKED;
+      value = (value << 4) | digit;
+    }
+    return value;
+  }
+
+  private void ensureCapacity(int needed) {
+    if (needed <= ids.length) return;
+    int capacity = Math.max(needed, ids.length * 2);
+    ids = Arrays.copyOf(ids, capacity);
+    createdAt = Arrays.copyOf(createdAt, capacity);
+    completedAt = Arrays.copyOf(completedAt, capacity);
+    priorities = Arrays.copyOf(priorities, capacity);
+    textRefs = Arrays.copyOf(textRefs, capacity);
+    workspaceRefs = Arrays.copyOf(workspaceRefs, capacity);
+    subCounts = Arrays.copyOf(subCounts, capacity);
+    depths = Arrays.copyOf(depths, capacity);
+  }
+}
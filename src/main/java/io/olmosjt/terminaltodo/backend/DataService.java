@@ -1,91 +1,163 @@
 package io.olmosjt.terminaltodo.backend;
 
-import javafx.collections.ObservableList;
+import io.olmosjt.terminaltodo.metrics.Metrics;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.*;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class DataService {
-  private static final String DB_URL = "jdbc:h2:" + System.getProperty("user.home") + "/.daily_plan_db;DB_CLOSE_ON_EXIT=FALSE";
+  /** Exclusive upper bound for "everything from here on" page loads. */
+  public static final LocalDate END_OF_TIME = LocalDate.of(9999, 12, 31);
 
-  private static final String TABLE_SQL = """
-    CREATE TABLE IF NOT EXISTS tasks (
-        id VARCHAR(36) PRIMARY KEY,
-        text VARCHAR(255),
-        is_done BOOLEAN,
-        is_migrated BOOLEAN,
-        created_at TIMESTAMP,
-        completed_at TIMESTAMP,
-        priority VARCHAR(20),
-        parent_id VARCHAR(36)
-    );
-    CREATE TABLE IF NOT EXISTS settings (
-        conf_key VARCHAR(50) PRIMARY KEY,
-        conf_value VARCHAR(255)
-    );
-    """;
+  private static final String LAST_MIGRATION_KEY = "last_migration_date";
+  private static final String SYNC_PUSHED_KEY = "sync_pushed_version";
+  private static final String SYNC_CURSOR_KEY = "sync_cursor";
+  // Every statement that changes a row takes a fresh version from this, so changes since the last
+  // sync are a range scan of idx_tasks_sync_version. Inserts get one from the column default.
+  private static final String NEXT_VERSION = "NEXT VALUE FOR task_version_seq";
+  // UPDATEs of a row's changed columns, by SyncChange field mask; built on first use.
+  private static final String[] FIELD_UPDATES = new String[SyncChange.ALL + 1];
 
-  static {
-    try (Connection conn = DriverManager.getConnection(DB_URL);
-         Statement stmt = conn.createStatement()) {
-      stmt.execute(TABLE_SQL);
+  // The workspace that loads, queries, search and deleteAllTasks are scoped to. Writes are not:
+  // every row carries its own. Set through the PersistenceQueue, in line with the queued work.
+  private static String workspace = Task.DEFAULT_WORKSPACE;
+
+  // Prefix for statements over whole subtrees: "subtree" holds the rows whose ids are in the array
+  // bound to parameter 1, at depth 0, and every descendant below them.
+  private static final String SUBTREE = """
+      WITH RECURSIVE subtree(id, depth) AS (
+        SELECT id, 0 FROM tasks WHERE id = ANY(?)
+        UNION ALL
+        SELECT t.id, s.depth + 1 FROM tasks t JOIN subtree s ON t.parent_id = s.id WHERE s.depth < %d
+      )
+      """.formatted(Task.MAX_DEPTH);
+
+  /** Outcome of a daily migration: the original rows now marked migrated, and their fresh copies. */
+  public record MigrationResult(List<String> migratedIds, List<Task> carried) {}
+
+  /** Outcome of an export or import; {@code firstError} describes the first rejected record, if any. */
+  public record TransferResult(int rows, int rejected, String firstError) {}
+
+  /** Top-level ids a {@link TaskQuery} matched, newest first; {@code truncated} if the limit cut it. */
+  public record QueryResult(List<String> ids, boolean truncated) {}
+
+  /** A workspace that has rows, with its number of top-level tasks. */
+  public record WorkspaceInfo(String name, int tasks) {}
+
+  /** Local changes the sync server has not acknowledged, oldest first; {@code upTo} is the last version read. */
+  public record SyncBatch(List<SyncChange> changes, long upTo, boolean more) {}
+
+  /**
+   * Opens the database and runs pending schema migrations. Optional: any other call does the same
+   * lazily, this just lets startup do it early on a background thread.
+   */
+  public static synchronized void init() {
+    try {
+      Database.connection();
     } catch (SQLException e) {
       e.printStackTrace();
     }
   }
 
-  public static String getTheme() {
-    String sql = "SELECT conf_value FROM settings WHERE conf_key = 'theme'";
-    try (Connection conn = DriverManager.getConnection(DB_URL);
-         Statement stmt = conn.createStatement();
-         ResultSet rs = stmt.executeQuery(sql)) {
-      if (rs.next()) {
-        return rs.getString("conf_value");
+  /** Closes the shared connection; called once from {@code Application.stop()}. */
+  public static synchronized void shutdown() {
+    Database.close();
+  }
+
+  /** Scopes the reads below (and {@link #deleteAllTasks()}) to workspace {@code name}. */
+  public static synchronized void useWorkspace(String name) {
+    workspace = name;
+  }
+
+  public static synchronized String workspace() {
+    return workspace;
+  }
+
+  /** Every workspace that has rows, by name; a workspace exists once a task is written to it. */
+  public static synchronized List<WorkspaceInfo> listWorkspaces() {
+    List<WorkspaceInfo> result = new ArrayList<>();
+    try (ResultSet rs = Database.prepare(
+        "SELECT workspace, COUNT(*) FROM tasks WHERE parent_id IS NULL GROUP BY workspace ORDER BY workspace").executeQuery()) {
+      while (rs.next()) {
+        result.add(new WorkspaceInfo(rs.getString(1), rs.getInt(2)));
       }
-    } catch (SQLException e) { e.printStackTrace(); }
-    return "theme-dark";
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+    return result;
+  }
+
+  public static String getTheme() {
+    return getSetting("theme", "theme-dark");
   }
 
   public static void setTheme(String theme) {
-    String sql = "MERGE INTO settings (conf_key, conf_value) KEY(conf_key) VALUES ('theme', ?)";
-    try (Connection conn = DriverManager.getConnection(DB_URL);
-         PreparedStatement ps = conn.prepareStatement(sql)) {
-      ps.setString(1, theme);
+    setSetting("theme", theme);
+  }
+
+  public static synchronized String getSetting(String key, String defaultValue) {
+    String sql = "SELECT conf_value FROM settings WHERE conf_key = ?";
+    long start = Metrics.start();
+    try {
+      PreparedStatement ps = Database.prepare(sql);
+      ps.setString(1, key);
+      try (ResultSet rs = ps.executeQuery()) {
+        if (rs.next()) {
+          return rs.getString("conf_value");
+        }
+      }
+    } catch (SQLException e) {
+      e.printStackTrace();
+    } finally {
+      Metrics.record("db.getSetting", start);
+    }
+    return defaultValue;
+  }
+
+  public static synchronized void setSetting(String key, String value) {
+    String sql = "MERGE INTO settings (conf_key, conf_value) KEY(conf_key) VALUES (?, ?)";
+    long start = Metrics.start();
+    try {
+      PreparedStatement ps = Database.prepare(sql);
+      ps.setString(1, key);
+      ps.setString(2, value);
       ps.executeUpdate();
-    } catch (SQLException e) { e.printStackTrace(); }
+    } catch (SQLException e) {
+      e.printStackTrace();
+    } finally {
+      Metrics.record("db.setSetting", start);
+    }
   }
 
-  public static void loadTasks(ObservableList<Task> tasks) {
+  public static synchronized void loadTasks(List<Task> tasks) {
     tasks.clear();
     Map<String, Task> taskMap = new HashMap<>();
     List<Task> topLevel = new ArrayList<>();
     Map<String, String> parentLinks = new HashMap<>();
 
-    try (Connection conn = DriverManager.getConnection(DB_URL);
-         Statement stmt = conn.createStatement();
-         ResultSet rs = stmt.executeQuery("SELECT * FROM tasks ORDER BY created_at")) {
+    try (ResultSet rs = inWorkspace(Database.prepare("SELECT * FROM tasks WHERE workspace = ? ORDER BY created_at"))
+        .executeQuery()) {
 
       while (rs.next()) {
-        Task t = new Task();
-        t.setId(rs.getString("id"));
-        t.setText(rs.getString("text"));
-        t.setDone(rs.getBoolean("is_done"));
-        t.setMigrated(rs.getBoolean("is_migrated"));
-
-        Timestamp created = rs.getTimestamp("created_at");
-        t.setCreatedAt(created != null ? created.toLocalDateTime() : LocalDateTime.now());
-
-        Timestamp completed = rs.getTimestamp("completed_at");
-        if (completed != null) t.setCompletedAt(completed.toLocalDateTime());
-
-        try {
-          t.setPriority(Task.Priority.valueOf(rs.getString("priority")));
-        } catch (Exception e) { t.setPriority(Task.Priority.NORMAL); }
-
+        Task t = readTask(rs);
         String parentId = rs.getString("parent_id");
 
         taskMap.put(t.getId(), t);
@@ -113,85 +185,998 @@ public class DataService {
     }
   }
 
-  public static void saveTasks(ObservableList<Task> tasks) {
-    String insertSql = "INSERT INTO tasks (id, text, is_done, is_migrated, created_at, completed_at, priority, parent_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+  /**
+   * Loads one page of history: top-level tasks of the active workspace created in
+   * {@code [from, to)} plus their whole subtrees, whatever date those were created on. Subtasks are fetched by ancestor rather than by
+   * date, so parent/child links never straddle two pages. Subtasks whose parent no longer exists
+   * are returned as top-level tasks, like {@link #loadTasks} does.
+   */
+  public static synchronized List<Task> loadPage(LocalDate from, LocalDate to) {
+    String topSql = """
+        SELECT * FROM tasks t
+        WHERE t.workspace = ? AND t.created_at >= ? AND t.created_at < ?
+          AND (t.parent_id IS NULL OR NOT EXISTS (SELECT 1 FROM tasks p WHERE p.id = t.parent_id))
+        ORDER BY t.created_at""";
+
+    List<Task> topLevel = new ArrayList<>();
+    Map<String, Task> byId = new HashMap<>();
+    try {
+      PreparedStatement top = inWorkspace(Database.prepare(topSql));
+      top.setTimestamp(2, Timestamp.valueOf(from.atStartOfDay()));
+      top.setTimestamp(3, Timestamp.valueOf(to.atStartOfDay()));
+      try (ResultSet rs = top.executeQuery()) {
+        while (rs.next()) {
+          Task t = readTask(rs);
+          topLevel.add(t);
+          byId.put(t.getId(), t);
+        }
+      }
+      attachDescendants(byId);
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+    return topLevel;
+  }
+
+  /**
+   * First day of the page holding the {@code days} most recent dates (that have top-level tasks)
+   * before {@code before}, or {@code null} when there is no older history.
+   */
+  public static synchronized LocalDate olderPageStart(LocalDate before, int days) {
+    String sql = """
+        SELECT MIN(d) FROM (
+          SELECT DISTINCT CAST(created_at AS DATE) d FROM tasks
+          WHERE workspace = ? AND parent_id IS NULL AND created_at < ?
+          ORDER BY d DESC LIMIT ?
+        )""";
+    try {
+      PreparedStatement ps = inWorkspace(Database.prepare(sql));
+      ps.setTimestamp(2, Timestamp.valueOf(before.atStartOfDay()));
+      ps.setInt(3, days);
+      try (ResultSet rs = ps.executeQuery()) {
+        if (rs.next()) {
+          Date d = rs.getDate(1);
+          return d != null ? d.toLocalDate() : null;
+        }
+      }
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+    return null;
+  }
+
+  /**
+   * Tasks of the active workspace with the given ids, with their subtrees, ordered by creation
+   * time. Used to materialize search hits that are not part of the loaded window.
+   */
+  public static synchronized List<Task> loadTasksByIds(Collection<String> ids) {
+    return loadTrees(ids, true);
+  }
+
+  /** {@link #loadTasksByIds}, in the active workspace only or in all of them. */
+  private static List<Task> loadTrees(Collection<String> ids, boolean activeWorkspace) {
+    List<Task> result = new ArrayList<>();
+    if (ids.isEmpty()) return result;
+
+    Map<String, Task> byId = new HashMap<>();
+    Object[] idArray = ids.toArray();
+    try {
+      PreparedStatement top;
+      if (activeWorkspace) {
+        top = inWorkspace(Database.prepare("SELECT * FROM tasks WHERE workspace = ? AND id = ANY(?) ORDER BY created_at"));
+        top.setObject(2, idArray);
+      } else {
+        top = Database.prepare("SELECT * FROM tasks WHERE id = ANY(?) ORDER BY created_at");
+        top.setObject(1, idArray);
+      }
+      try (ResultSet rs = top.executeQuery()) {
+        while (rs.next()) {
+          Task t = readTask(rs);
+          result.add(t);
+          byId.put(t.getId(), t);
+        }
+      }
+      attachDescendants(byId);
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+    return result;
+  }
+
+  /**
+   * Rows (top-level or subtask) of the active workspace whose id starts with {@code prefix}, at
+   * most {@code limit}. For callers without a loaded {@link TaskIndex}, such as the headless CLI.
+   */
+  public static synchronized List<TaskRow> findByIdPrefix(String prefix, int limit) {
+    List<TaskRow> result = new ArrayList<>();
+    try {
+      PreparedStatement ps = inWorkspace(Database.prepare(
+          "SELECT * FROM tasks WHERE workspace = ? AND id LIKE ? ESCAPE '\\' ORDER BY id LIMIT ?"));
+      ps.setString(2, TaskQuery.escapeLike(prefix) + "%");
+      ps.setInt(3, limit);
+      try (ResultSet rs = ps.executeQuery()) {
+        while (rs.next()) {
+          result.add(TaskRow.of(readTask(rs), rs.getString("parent_id")));
+        }
+      }
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+    return result;
+  }
+
+  /**
+   * {@code count} distinct new ids that no row in any workspace has, for {@link IdPool}: candidates
+   * are checked against the primary key in one query per round. Returns fewer on a read error.
+   */
+  public static synchronized List<String> unusedIds(int count) {
+    Set<String> fresh = new LinkedHashSet<>();
+    try {
+      PreparedStatement ps = Database.prepare("SELECT id FROM tasks WHERE id = ANY(?)");
+      while (fresh.size() < count) {
+        Set<String> candidates = new LinkedHashSet<>();
+        while (candidates.size() < count - fresh.size()) {
+          String id = Task.newId();
+          if (!fresh.contains(id)) candidates.add(id);
+        }
+        ps.setObject(1, candidates.toArray());
+        try (ResultSet rs = ps.executeQuery()) {
+          while (rs.next()) candidates.remove(rs.getString(1));
+        }
+        fresh.addAll(candidates);
+      }
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+    return new ArrayList<>(fresh);
+  }
+
+  /** Levels above row {@code id}: 0 for a top-level task, 1 for its subtasks, and so on. */
+  public static synchronized int depthOf(String id) {
+    try {
+      PreparedStatement ps = Database.prepare("""
+          WITH RECURSIVE up(parent_id, depth) AS (
+            SELECT parent_id, 0 FROM tasks WHERE id = ?
+            UNION ALL
+            SELECT t.parent_id, u.depth + 1 FROM tasks t JOIN up u ON t.id = u.parent_id WHERE u.depth <= %d
+          )
+          SELECT MAX(depth) FROM up""".formatted(Task.MAX_DEPTH));
+      ps.setString(1, id);
+      try (ResultSet rs = ps.executeQuery()) {
+        return rs.next() ? rs.getInt(1) : 0;
+      }
+    } catch (SQLException e) {
+      e.printStackTrace();
+      return 0;
+    }
+  }
+
+  /**
+   * Top-level tasks of the active workspace that match {@code query} themselves or through a
+   * subtask at any depth. The filter runs in H2, but mostly as a scan of the workspace: only a
+   * date range can narrow it through the (workspace, created_at) index, while the word conditions
+   * ({@code LIKE '%word%'}) and {@code COALESCE(is_done, FALSE)} are checked row by row. Matching
+   * rows are walked up to their roots by a recursive query and only ids come back, at most
+   * {@code limit + 1}; callers fetch the tasks they don't already hold with
+   * {@link #loadTasksByIds}. Archived history is not searched.
+   */
+  public static synchronized QueryResult queryTasks(TaskQuery query) {
+    List<String> ids = new ArrayList<>();
+    try {
+      PreparedStatement ps = Database.prepare("WITH RECURSIVE hit(id, parent_id, depth) AS ("
+          + "SELECT id, parent_id, 0 FROM tasks WHERE " + query.where() + " AND workspace = ?"
+          + " UNION ALL SELECT p.id, p.parent_id, h.depth + 1 FROM tasks p JOIN hit h ON p.id = h.parent_id"
+          + " WHERE h.depth < " + Task.MAX_DEPTH + ")"
+          + " SELECT id FROM tasks WHERE parent_id IS NULL AND id IN (SELECT id FROM hit)"
+          + " ORDER BY created_at DESC LIMIT ?");
+      int next = query.bind(ps);
+      ps.setString(next, workspace);
+      ps.setInt(next + 1, query.limit() + 1);
+      try (ResultSet rs = ps.executeQuery()) {
+        while (rs.next()) ids.add(rs.getString(1));
+      }
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+    boolean truncated = ids.size() > query.limit();
+    return new QueryResult(truncated ? ids.subList(0, query.limit()) : ids, truncated);
+  }
+
+  /**
+   * Streams the text of every row in the active workspace into {@code index}, each subtask under the id of its top-level task
+   * (resolved by a recursive query); only id, text and the root id are read. Stops early once the
+   * index was cleared after {@code generation} was taken.
+   */
+  public static synchronized void loadSearchIndex(SearchIndex index, long generation) {
+    String sql = """
+        WITH RECURSIVE tree(id, root, depth) AS (
+          SELECT id, id, 0 FROM tasks WHERE workspace = ? AND parent_id IS NULL
+          UNION ALL
+          SELECT t.id, r.root, r.depth + 1 FROM tasks t JOIN tree r ON t.parent_id = r.id WHERE r.depth < %d
+        )
+        SELECT t.id, t.text, r.root FROM tasks t JOIN tree r ON r.id = t.id""".formatted(Task.MAX_DEPTH);
+    if (!index.beginBulkLoad(generation)) return;
+    try {
+      PreparedStatement ps = inWorkspace(Database.prepare(sql));
+      ps.setFetchSize(1000);
+      try (ResultSet rs = ps.executeQuery()) {
+        while (rs.next()) {
+          String id = rs.getString(1);
+          String root = rs.getString(3);
+          if (!index.addBulkRow(generation, id, rs.getString(2), root.equals(id) ? null : root)) break;
+        }
+      }
+    } catch (SQLException e) {
+      e.printStackTrace();
+    } finally {
+      index.endBulkLoad();
+    }
+  }
+
+  /** Runs {@link #migrateUnfinished} unless it already ran on {@code today}; returns null if skipped. */
+  public static synchronized MigrationResult migrateIfDue(LocalDate today) {
+    if (today.toString().equals(getSetting(LAST_MIGRATION_KEY, ""))) return null;
+    return migrateUnfinished(today);
+  }
+
+  /**
+   * Bullet-journal rollover: every unfinished top-level task created before {@code today} is copied
+   * to today (with its unfinished subtasks, at any depth) under a new id, and the originals are
+   * marked migrated, in every workspace (a copy stays in its original's). The work is a handful of
+   * set-based statements in one transaction (the subtask one runs once per nesting level), driven
+   * by a temporary old-id/new-id map, so it never loops over tasks in Java.
+   */
+  public static synchronized MigrationResult migrateUnfinished(LocalDate today) {
+    List<String> migratedIds = new ArrayList<>();
+    List<String> carriedIds = new ArrayList<>();
+    try {
+      Connection conn = Database.connection();
+      // DDL commits implicitly in H2, so the scratch table is created before the transaction starts.
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute("""
+            CREATE LOCAL TEMPORARY TABLE IF NOT EXISTS migration_map (
+                old_id VARCHAR(36) PRIMARY KEY,
+                new_id VARCHAR(36),
+                parent_old VARCHAR(36)
+            )""");
+      }
 
-    try (Connection conn = DriverManager.getConnection(DB_URL)) {
       conn.setAutoCommit(false);
-      try (Statement stmt = conn.createStatement();
-           PreparedStatement ps = conn.prepareStatement(insertSql)) {
+      try {
+        Database.prepare("DELETE FROM migration_map").executeUpdate();
 
-        stmt.execute("DELETE FROM tasks");
+        PreparedStatement tops = Database.prepare("""
+            INSERT INTO migration_map (old_id, new_id, parent_old)
+            SELECT id, %s, NULL FROM tasks
+            WHERE parent_id IS NULL AND COALESCE(is_done, FALSE) = FALSE AND COALESCE(is_migrated, FALSE) = FALSE
+              AND created_at < ?""".formatted(copyId("id")));
+        tops.setString(1, today.toString());
+        tops.setTimestamp(2, Timestamp.valueOf(today.atStartOfDay()));
+        tops.executeUpdate();
 
-        for (Task t : tasks) {
-          insertTask(ps, t, null);
-          for (Task sub : t.getSubTasks()) {
-            insertTask(ps, sub, t.getId());
+        // One level of unfinished subtasks per round, each under a parent that is being carried.
+        PreparedStatement level = Database.prepare("""
+            INSERT INTO migration_map (old_id, new_id, parent_old)
+            SELECT s.id, %s, s.parent_id
+            FROM tasks s JOIN migration_map m ON s.parent_id = m.old_id
+            WHERE COALESCE(s.is_done, FALSE) = FALSE
+              AND NOT EXISTS (SELECT 1 FROM migration_map x WHERE x.old_id = s.id)""".formatted(copyId("s.id")));
+        level.setString(1, today.toString());
+        for (int depth = 0; depth < Task.MAX_DEPTH && level.executeUpdate() > 0; depth++) {
+          // until a level adds nothing
+        }
+
+        // 8 hex chars can collide with an existing id (or another new one); re-roll until clean.
+        PreparedStatement reroll = Database.prepare("""
+            UPDATE migration_map SET new_id = LEFT(CAST(RANDOM_UUID() AS VARCHAR), 8)
+            WHERE new_id IN (SELECT id FROM tasks)
+               OR new_id IN (SELECT new_id FROM migration_map GROUP BY new_id HAVING COUNT(*) > 1)""");
+        while (reroll.executeUpdate() > 0) {
+          // until no collisions remain
+        }
+
+        // Copies keep the original order, one millisecond apart from now. The rank is computed here
+        // rather than kept as an identity column: DELETE does not reset one, so it would drift.
+        PreparedStatement copy = Database.prepare("""
+            INSERT INTO tasks (id, text, is_done, is_migrated, created_at, completed_at, priority, parent_id, workspace)
+            SELECT m.new_id, t.text, FALSE, FALSE, DATEADD(MILLISECOND, ROW_NUMBER() OVER (ORDER BY t.created_at, t.id),
+                   CAST(? AS TIMESTAMP)), NULL, t.priority,
+                   p.new_id, t.workspace
+            FROM migration_map m
+            JOIN tasks t ON t.id = m.old_id
+            LEFT JOIN migration_map p ON p.old_id = m.parent_old""");
+        copy.setTimestamp(1, Timestamp.valueOf(LocalDateTime.now()));
+        copy.executeUpdate();
+
+        Database.prepare("UPDATE tasks SET is_migrated = TRUE, sync_version = " + NEXT_VERSION
+            + " WHERE id IN (SELECT old_id FROM migration_map)").executeUpdate();
+
+        try (ResultSet rs = Database.prepare("SELECT old_id, new_id, parent_old FROM migration_map")
+            .executeQuery()) {
+          while (rs.next()) {
+            migratedIds.add(rs.getString(1));
+            if (rs.getString(3) == null) carriedIds.add(rs.getString(2));
           }
         }
+        Database.prepare("DELETE FROM migration_map").executeUpdate();
+
+        PreparedStatement setting = Database.prepare(
+            "MERGE INTO settings (conf_key, conf_value) KEY(conf_key) VALUES (?, ?)");
+        setting.setString(1, LAST_MIGRATION_KEY);
+        setting.setString(2, today.toString());
+        setting.executeUpdate();
 
         conn.commit();
       } catch (SQLException e) {
+        conn.rollback();
+        throw e;
+      } finally {
+        conn.setAutoCommit(true);
+      }
+    } catch (SQLException e) {
+      e.printStackTrace();
+      return new MigrationResult(List.of(), List.of());
+    }
+    return new MigrationResult(migratedIds, loadTrees(carriedIds, false));
+  }
+
+  /**
+   * Moves finished history out of the hot table: top-level tasks created before {@code cutoff}
+   * that are done or migrated, with all their subtasks, are appended to the {@link TaskArchive}
+   * and then deleted from H2, whatever their workspace. The segment is durable before the delete commits, so a crash in
+   * between can only leave a row in both places, never in neither.
+   *
+   * @return ids of the archived top-level tasks
+   */
+  public static synchronized List<String> archiveBefore(LocalDate cutoff) {
+    String finished = "parent_id IS NULL AND created_at < ? AND (COALESCE(is_done, FALSE) OR COALESCE(is_migrated, FALSE))";
+    List<Task> archived = new ArrayList<>();
+    Map<String, Task> byId = new HashMap<>();
+    try {
+      Connection conn = Database.connection();
+      conn.setAutoCommit(false);
+      try {
+        PreparedStatement top = Database.prepare("SELECT * FROM tasks WHERE " + finished + " ORDER BY created_at");
+        top.setTimestamp(1, Timestamp.valueOf(cutoff.atStartOfDay()));
+        try (ResultSet rs = top.executeQuery()) {
+          while (rs.next()) {
+            Task t = readTask(rs);
+            archived.add(t);
+            byId.put(t.getId(), t);
+          }
+        }
+        if (archived.isEmpty()) {
+          conn.commit();
+          return List.of();
+        }
+
+        attachDescendants(byId);
+        TaskArchive.append(archived);
+        deleteSubtrees(byId.keySet().toArray());
+        conn.commit();
+      } catch (SQLException | IOException e) {
         conn.rollback();
         e.printStackTrace();
+        return List.of();
+      } finally {
+        conn.setAutoCommit(true);
       }
     } catch (SQLException e) {
       e.printStackTrace();
+      return List.of();
+    }
+    return new ArrayList<>(byId.keySet());
+  }
+
+  /**
+   * Archived tasks of {@code day} together with the ones still in the hot table, both of the
+   * active workspace; a hot row wins over an archived copy with the same id (it was edited after
+   * being archived). Archived rows deleted since are left out by {@link TaskArchive#readDay}.
+   */
+  public static synchronized List<Task> loadDay(LocalDate day) {
+    Map<String, Task> byId = new LinkedHashMap<>();
+    try {
+      for (Task t : TaskArchive.readDay(day)) {
+        if (workspace.equals(t.getWorkspace())) byId.put(t.getId(), t);
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    for (Task t : loadPage(day, day.plusDays(1))) {
+      byId.put(t.getId(), t);
+    }
+    List<Task> result = new ArrayList<>(byId.values());
+    result.sort(Comparator.comparing(Task::getCreatedAt));
+    return result;
+  }
+
+  /**
+   * Streams every row of every workspace (subtasks included, top-level rows first) to {@code file} as JSONL, or as
+   * CSV when the name ends in {@code .csv}. Rows are fetched in chunks and written as they arrive.
+   */
+  public static synchronized TransferResult exportTasks(Path file) throws IOException {
+    TaskRowFormat format = TaskRowFormat.forFile(file.getFileName().toString());
+    int rows = 0;
+    try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      if (format.header() != null) {
+        out.write(format.header());
+        out.newLine();
+      }
+      PreparedStatement ps = Database.prepare(
+          "SELECT * FROM tasks ORDER BY CASE WHEN parent_id IS NULL THEN 0 ELSE 1 END, created_at");
+      ps.setFetchSize(1000);
+      try (ResultSet rs = ps.executeQuery()) {
+        while (rs.next()) {
+          out.write(format.format(TaskRow.of(readTask(rs), rs.getString("parent_id"))));
+          out.newLine();
+          rows++;
+        }
+      }
+    } catch (SQLException e) {
+      throw new IOException(e);
     }
+    return new TransferResult(rows, 0, null);
   }
 
-  public static void updateTask(Task t) {
-    String sql = "UPDATE tasks SET text=?, is_done=?, completed_at=?, priority=? WHERE id=?";
-    try (Connection conn = DriverManager.getConnection(DB_URL);
-         PreparedStatement ps = conn.prepareStatement(sql)) {
+  /**
+   * Upserts the records of an exported file, reading one record at a time. Rows go through one
+   * JDBC batch of up to {@code batchSize} statements, executed and committed together, so memory
+   * stays flat and a batch costs one round trip. Malformed records are skipped and counted; records
+   * that name no workspace (older exports) go to the active one.
+   */
+  public static synchronized TransferResult importTasks(Path file, int batchSize) throws IOException {
+    String mergeSql = "MERGE INTO tasks (id, text, is_done, is_migrated, created_at, completed_at, priority, parent_id, workspace, sync_version) KEY(id) "
+        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, NEXT VALUE FOR task_version_seq)";
+    TaskRowFormat format = TaskRowFormat.forFile(file.getFileName().toString());
+    int rows = 0, rejected = 0, pending = 0, recordNo = 0;
+    String firstError = null;
+    try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      Connection conn = Database.connection();
+      conn.setAutoCommit(false);
+      try {
+        PreparedStatement merge = Database.prepare(mergeSql);
+        String record;
+        while ((record = format.readRecord(in)) != null) {
+          recordNo++;
+          TaskRow row;
+          try {
+            row = format.parse(record);
+          } catch (IllegalArgumentException e) {
+            rejected++;
+            if (firstError == null) firstError = "record " + recordNo + ": " + e.getMessage();
+            continue;
+          }
+          bindRow(merge, row.workspace() != null ? row : row.withWorkspace(workspace));
+          merge.addBatch();
+          if (++pending == batchSize) {
+            merge.executeBatch();
+            conn.commit();
+            rows += pending;
+            pending = 0;
+          }
+        }
+        if (pending > 0) {
+          merge.executeBatch();
+          conn.commit();
+          rows += pending;
+        }
+      } catch (SQLException | IOException e) {
+        conn.rollback();
+        throw e;
+      } finally {
+        conn.setAutoCommit(true);
+      }
+    } catch (SQLException e) {
+      throw new IOException(e);
+    }
+    return new TransferResult(rows, rejected, firstError);
+  }
+
+  /**
+   * Up to {@code limit} local changes past the pushed mark: rows and tombstones whose
+   * {@code sync_version} is newer, read off the version indexes, so a sync costs what changed and
+   * never a scan of the table. Each row carries the fields that differ from its last synced copy;
+   * one saved again unchanged is skipped, though {@code upTo} still covers it.
+   */
+  public static synchronized SyncBatch pendingChanges(int limit) throws IOException {
+    long mark = longSetting(SYNC_PUSHED_KEY);
+    List<SyncChange> candidates = new ArrayList<>();
+    try {
+      PreparedStatement rows = Database.prepare("SELECT * FROM tasks WHERE sync_version > ? ORDER BY sync_version LIMIT ?");
+      rows.setLong(1, mark);
+      rows.setInt(2, limit);
+      try (ResultSet rs = rows.executeQuery()) {
+        while (rs.next()) {
+          TaskRow row = TaskRow.of(readTask(rs), rs.getString("parent_id"));
+          candidates.add(new SyncChange(row.id(), rs.getLong("sync_version"), false, SyncChange.ALL, row));
+        }
+      }
+      PreparedStatement tombstones = Database.prepare(
+          "SELECT id, sync_version FROM task_tombstones WHERE sync_version > ? ORDER BY sync_version LIMIT ?");
+      tombstones.setLong(1, mark);
+      tombstones.setInt(2, limit);
+      try (ResultSet rs = tombstones.executeQuery()) {
+        while (rs.next()) candidates.add(SyncChange.deletion(rs.getString(1), rs.getLong(2)));
+      }
 
-      ps.setString(1, t.getText());
-      ps.setBoolean(2, t.isDone());
-      ps.setTimestamp(3, t.getCompletedAt() != null ? Timestamp.valueOf(t.getCompletedAt()) : null);
-      ps.setString(4, t.getPriority().name());
-      ps.setString(5, t.getId());
+      // Both lists are in version order, so the first limit of the two merged cover every change up to upTo.
+      candidates.sort(Comparator.comparingLong(SyncChange::version));
+      List<SyncChange> batch = candidates.subList(0, Math.min(limit, candidates.size()));
+      Map<String, TaskRow> bases = syncBases(batch);
+      List<SyncChange> changes = new ArrayList<>();
+      for (SyncChange c : batch) {
+        if (c.deleted()) {
+          changes.add(c);
+          continue;
+        }
+        int fields = SyncChange.diff(c.row(), bases.get(c.id()));
+        if (fields != 0) changes.add(new SyncChange(c.id(), c.version(), false, fields, c.row()));
+      }
+      long upTo = batch.isEmpty() ? mark : batch.get(batch.size() - 1).version();
+      return new SyncBatch(changes, upTo, batch.size() == limit);
+    } catch (SQLException e) {
+      throw new IOException(e);
+    }
+  }
 
+  /** Records that the server has every local change up to {@code upTo}; tombstones it covers are dropped. */
+  public static synchronized void markPushed(long upTo) throws IOException {
+    if (upTo <= longSetting(SYNC_PUSHED_KEY)) return;
+    setSetting(SYNC_PUSHED_KEY, String.valueOf(upTo));
+    try {
+      PreparedStatement ps = Database.prepare("DELETE FROM task_tombstones WHERE sync_version <= ?");
+      ps.setLong(1, upTo);
       ps.executeUpdate();
+    } catch (SQLException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /** Server version of the last change pulled; the next pull asks for what came after it. */
+  public static synchronized long syncCursor() {
+    return longSetting(SYNC_CURSOR_KEY);
+  }
+
+  /**
+   * Applies one page of pulled server changes and moves the cursor to {@code cursor}, in one
+   * transaction. A row with no local change since the last push takes the server state; one
+   * changed locally keeps the fields it changed (against its last synced copy) and takes the rest
+   * from the server, and keeps its version so those fields go out with the next push. Rows
+   * deleted here but not pushed yet stay deleted. Pulled writes take no new version, so they are
+   * never sent back.
+   *
+   * @return the rows inserted, changed or deleted here, as their new local state: a changed row's
+   *     {@code fields} are the ones that changed, so loaded copies can be patched instead of reloaded
+   */
+  public static synchronized List<SyncChange> applyPulled(List<SyncChange> changes, long cursor) throws IOException {
+    String insertSql = "INSERT INTO tasks (id, text, is_done, is_migrated, created_at, completed_at, priority, parent_id, workspace, sync_version) "
+        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+    String updateSql = "UPDATE tasks SET text=?, is_done=?, is_migrated=?, completed_at=?, priority=?, parent_id=? WHERE id=?";
+    String baseSql = "MERGE INTO sync_base (id, text, is_done, is_migrated, created_at, completed_at, priority, parent_id, workspace) "
+        + "KEY(id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    long mark = longSetting(SYNC_PUSHED_KEY);
+    List<SyncChange> applied = new ArrayList<>();
+    try {
+      Connection conn = Database.connection();
+      conn.setAutoCommit(false);
+      try {
+        Map<String, TaskRow> bases = syncBases(changes);
+        List<String> deletedIds = new ArrayList<>();
+        for (SyncChange c : changes) {
+          if (c.deleted()) {
+            if (deleteById("DELETE FROM tasks WHERE id = ?", c.id()) > 0) applied.add(c);
+            deleteById("DELETE FROM sync_base WHERE id = ?", c.id());
+            deletedIds.add(c.id());
+            continue;
+          }
+          PreparedStatement tombstone = Database.prepare("SELECT 1 FROM task_tombstones WHERE id = ?");
+          tombstone.setString(1, c.id());
+          try (ResultSet rs = tombstone.executeQuery()) {
+            if (rs.next()) continue;
+          }
+
+          TaskRow local = null;
+          long version = 0;
+          PreparedStatement select = Database.prepare("SELECT * FROM tasks WHERE id = ?");
+          select.setString(1, c.id());
+          try (ResultSet rs = select.executeQuery()) {
+            if (rs.next()) {
+              local = TaskRow.of(readTask(rs), rs.getString("parent_id"));
+              version = rs.getLong("sync_version");
+            }
+          }
 
-      for (Task sub : t.getSubTasks()) {
-        updateTask(sub);
+          if (local == null) {
+            PreparedStatement insert = Database.prepare(insertSql);
+            bindRow(insert, c.row());
+            insert.executeUpdate();
+            applied.add(new SyncChange(c.id(), 0, false, SyncChange.ALL, c.row()));
+          } else {
+            TaskRow merged = version > mark
+                ? SyncChange.merge(c.row(), local, SyncChange.diff(local, bases.get(c.id())))
+                : c.row();
+            if (!merged.equals(local)) {
+              PreparedStatement update = Database.prepare(updateSql);
+              update.setString(1, merged.text());
+              update.setBoolean(2, merged.done());
+              update.setBoolean(3, merged.migrated());
+              update.setTimestamp(4, merged.completedAt() != null ? Timestamp.valueOf(merged.completedAt()) : null);
+              update.setString(5, merged.priority().name());
+              update.setString(6, merged.parentId());
+              update.setString(7, c.id());
+              update.executeUpdate();
+              applied.add(new SyncChange(c.id(), version, false, SyncChange.diff(merged, local), merged));
+            }
+          }
+          PreparedStatement base = Database.prepare(baseSql);
+          bindRow(base, c.row());
+          base.executeUpdate();
+        }
+        TaskArchive.markDeleted(deletedIds);
+        setSetting(SYNC_CURSOR_KEY, String.valueOf(cursor));
+        conn.commit();
+      } catch (SQLException | IOException e) {
+        conn.rollback();
+        throw e;
+      } finally {
+        conn.setAutoCommit(true);
       }
-    } catch (SQLException e) { e.printStackTrace(); }
+    } catch (SQLException e) {
+      throw new IOException(e);
+    }
+    return applied;
   }
 
-  // CHANGED: Added single task delete to prevent heavy full-rewrite
-  public static void deleteTask(String id) {
-    // Simple delete. In a real app, you might want to cascade delete subtasks manually
-    // if the DB FK doesn't handle it, but for now we assume this is sufficient or handled by app logic.
-    String sql = "DELETE FROM tasks WHERE id=?";
-    try (Connection conn = DriverManager.getConnection(DB_URL);
-         PreparedStatement ps = conn.prepareStatement(sql)) {
-      ps.setString(1, id);
-      ps.executeUpdate();
-      // Ideally delete orphaned subtasks here too
-      deleteOrphanedSubtasks(id);
-    } catch (SQLException e) { e.printStackTrace(); }
+  /**
+   * Writes only the rows that changed since the last save: tasks that were never persisted are
+   * inserted, dirty ones get their changed columns updated, untouched ones are skipped. Removals go through
+   * {@link #deleteTask(String)} / {@link #deleteAllTasks()}.
+   *
+   * @return number of rows written
+   */
+  public static synchronized int saveTasks(List<Task> tasks) {
+    String insertSql = "INSERT INTO tasks (id, text, is_done, is_migrated, created_at, completed_at, priority, parent_id, workspace) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    List<Task> written = new ArrayList<>();
+    try {
+      Connection conn = Database.connection();
+      conn.setAutoCommit(false);
+      try {
+        PreparedStatement insert = Database.prepare(insertSql);
+        Set<PreparedStatement> updates = new LinkedHashSet<>();
+
+        for (Task t : tasks) {
+          collectChanges(insert, updates, t, null, written);
+        }
+
+        if (!written.isEmpty()) {
+          insert.executeBatch();
+          executeBatches(updates);
+        }
+        conn.commit();
+        written.forEach(Task::markClean);
+        return written.size();
+      } catch (SQLException e) {
+        conn.rollback();
+        e.printStackTrace();
+      } finally {
+        conn.setAutoCommit(true);
+      }
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+    return 0;
   }
 
-  private static void deleteOrphanedSubtasks(String parentId) {
-    String sql = "DELETE FROM tasks WHERE parent_id=?";
-    try (Connection conn = DriverManager.getConnection(DB_URL);
-         PreparedStatement ps = conn.prepareStatement(sql)) {
-      ps.setString(1, parentId);
-      ps.executeUpdate();
+  /**
+   * Applies one drained batch of the {@link PersistenceQueue} in a single transaction, in queue
+   * order. Consecutive upserts share one JDBC batch per statement: whole rows are merged, partial
+   * ones update just their columns (a row deleted meanwhile stays deleted).
+   *
+   * @return whether the batch committed; on false it was rolled back and the queue retries it
+   */
+  static synchronized boolean applyWrites(List<PendingWrite> writes) {
+    String mergeSql = "MERGE INTO tasks (id, text, is_done, is_migrated, created_at, completed_at, priority, parent_id, workspace, sync_version) KEY(id) "
+        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, NEXT VALUE FOR task_version_seq)";
+    try {
+      Connection conn = Database.connection();
+      conn.setAutoCommit(false);
+      try {
+        PreparedStatement merge = Database.prepare(mergeSql);
+        Set<PreparedStatement> batched = new LinkedHashSet<>();
+        List<String> deletedIds = new ArrayList<>();
+        for (PendingWrite w : writes) {
+          if (w.kind() == PendingWrite.Kind.UPSERT) {
+            PreparedStatement ps;
+            if (w.fields() == SyncChange.ALL) {
+              ps = merge;
+              bindRow(ps, w.row());
+            } else {
+              ps = fieldUpdate(w.fields());
+              bindFields(ps, w.row(), w.fields());
+            }
+            ps.addBatch();
+            batched.add(ps);
+            continue;
+          }
+          executeBatches(batched);
+          if (w.kind() == PendingWrite.Kind.CLEAR) {
+            deleteWorkspace(w.id());
+          } else if (w.kind() == PendingWrite.Kind.SET_DONE) {
+            setSubtreeDone(w.id(), w.row().done(), w.row().completedAt());
+          } else {
+            tombstoneSubtrees(new Object[] {w.id()});
+            deleteSubtrees(new Object[] {w.id()});
+            deletedIds.add(w.id());
+          }
+        }
+        executeBatches(batched);
+        // The row may also (or only) be in the archive, as shown by loadDay.
+        TaskArchive.markDeleted(deletedIds);
+        conn.commit();
+        return true;
+      } catch (SQLException | IOException e) {
+        conn.rollback();
+        e.printStackTrace();
+      } finally {
+        conn.setAutoCommit(true);
+      }
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+    return false;
+  }
+
+  /** Deletes every row of the active workspace. */
+  public static synchronized void deleteAllTasks() {
+    try {
+      deleteWorkspace(workspace);
     } catch (SQLException e) { e.printStackTrace(); }
   }
 
-  private static void insertTask(PreparedStatement ps, Task t, String parentId) throws SQLException {
-    ps.setString(1, t.getId());
-    ps.setString(2, t.getText());
-    ps.setBoolean(3, t.isDone());
-    ps.setBoolean(4, t.isMigrated());
-    ps.setTimestamp(5, Timestamp.valueOf(t.getCreatedAt()));
-    ps.setTimestamp(6, t.getCompletedAt() != null ? Timestamp.valueOf(t.getCompletedAt()) : null);
-    ps.setString(7, t.getPriority().name());
-    ps.setString(8, parentId);
-    ps.addBatch();
-    ps.executeBatch();
+  /** Deletes every row of workspace {@code name}, leaving a tombstone for each; the caller owns the transaction. */
+  private static void deleteWorkspace(String name) throws SQLException {
+    PreparedStatement tombstones = Database.prepare("MERGE INTO task_tombstones (id, sync_version) KEY(id) SELECT id, "
+        + NEXT_VERSION + " FROM tasks WHERE workspace = ?");
+    tombstones.setString(1, name);
+    tombstones.executeUpdate();
+    PreparedStatement ps = Database.prepare("DELETE FROM tasks WHERE workspace = ?");
+    ps.setString(1, name);
+    ps.executeUpdate();
+  }
+
+  /**
+   * Writes the fields of {@code t} and of every task below it: one UPDATE, batched over the whole
+   * subtree and committed as one transaction.
+   */
+  public static synchronized void updateTask(Task t) {
+    String sql = "UPDATE tasks SET text=?, is_done=?, completed_at=?, priority=?, sync_version=" + NEXT_VERSION + " WHERE id=?";
+    List<Task> written = new ArrayList<>();
+    try {
+      Connection conn = Database.connection();
+      conn.setAutoCommit(false);
+      try {
+        PreparedStatement ps = Database.prepare(sql);
+        Deque<Task> todo = new ArrayDeque<>();
+        todo.push(t);
+        while (!todo.isEmpty()) {
+          Task n = todo.pop();
+          ps.setString(1, n.getText());
+          ps.setBoolean(2, n.isDone());
+          ps.setTimestamp(3, n.getCompletedAt() != null ? Timestamp.valueOf(n.getCompletedAt()) : null);
+          ps.setString(4, n.getPriority().name());
+          ps.setString(5, n.getId());
+          ps.addBatch();
+          written.add(n);
+          n.getSubTasks().forEach(todo::push);
+        }
+        ps.executeBatch();
+        conn.commit();
+        written.forEach(Task::markClean);
+      } catch (SQLException e) {
+        conn.rollback();
+        e.printStackTrace();
+      } finally {
+        conn.setAutoCommit(true);
+      }
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Marks a task and all its descendants done at {@code completedAt}, or open again, in one
+   * statement; the caller owns the transaction.
+   */
+  private static void setSubtreeDone(String id, boolean done, LocalDateTime completedAt) throws SQLException {
+    PreparedStatement ps = Database.prepare(SUBTREE
+        + "UPDATE tasks SET is_done = ?, completed_at = ?, sync_version = " + NEXT_VERSION
+        + " WHERE id IN (SELECT id FROM subtree)");
+    ps.setObject(1, new Object[] {id});
+    ps.setBoolean(2, done);
+    ps.setTimestamp(3, done && completedAt != null ? Timestamp.valueOf(completedAt) : null);
+    ps.executeUpdate();
+  }
+
+  /** Deletes a task together with its whole subtree, archived copies included. */
+  public static synchronized void deleteTask(String id) {
+    try {
+      tombstoneSubtrees(new Object[] {id});
+      deleteSubtrees(new Object[] {id});
+      TaskArchive.markDeleted(List.of(id));
+    } catch (SQLException | IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Records the given rows and every descendant as deleted, for the next sync push. Archiving does
+   * not go through here: a row moved to the cold tier still exists.
+   */
+  private static void tombstoneSubtrees(Object[] ids) throws SQLException {
+    PreparedStatement ps = Database.prepare(SUBTREE
+        + "MERGE INTO task_tombstones (id, sync_version) KEY(id) SELECT id, " + NEXT_VERSION + " FROM subtree");
+    ps.setObject(1, ids);
+    ps.executeUpdate();
+  }
+
+  /** One statement for the given rows and every descendant; the caller owns the transaction. */
+  private static void deleteSubtrees(Object[] ids) throws SQLException {
+    PreparedStatement ps = Database.prepare(SUBTREE + "DELETE FROM tasks WHERE id IN (SELECT id FROM subtree)");
+    ps.setObject(1, ids);
+    ps.executeUpdate();
+  }
+
+  /**
+   * Loads every descendant of {@code roots} with one recursive query and hangs each under its
+   * parent. Rows come back level by level, so a parent is always attached before its children.
+   */
+  private static void attachDescendants(Map<String, Task> roots) throws SQLException {
+    if (roots.isEmpty()) return;
+    PreparedStatement ps = Database.prepare(SUBTREE
+        + "SELECT t.* FROM tasks t JOIN subtree s ON t.id = s.id WHERE s.depth > 0 ORDER BY s.depth, t.created_at");
+    ps.setObject(1, roots.keySet().toArray());
+    Map<String, Task> byId = new HashMap<>(roots);
+    try (ResultSet rs = ps.executeQuery()) {
+      while (rs.next()) {
+        Task parent = byId.get(rs.getString("parent_id"));
+        Task t = readTask(rs);
+        // A parent cycle (only possible through a hand-edited import) would repeat rows; keep the first.
+        if (parent != null && byId.putIfAbsent(t.getId(), t) == null) parent.getSubTasks().add(t);
+      }
+    }
+  }
+
+  /** Batches the insert or update {@code t} needs, if any, then does the same for its subtree. */
+  private static void collectChanges(PreparedStatement insert, Set<PreparedStatement> updates,
+                                     Task t, String parentId, List<Task> written) throws SQLException {
+    if (!t.isPersisted()) {
+      bindRow(insert, TaskRow.of(t, parentId));
+      insert.addBatch();
+      written.add(t);
+    } else if (t.isDirty()) {
+      PreparedStatement update = fieldUpdate(t.getDirtyFields());
+      bindFields(update, TaskRow.of(t, parentId), t.getDirtyFields());
+      update.addBatch();
+      updates.add(update);
+      written.add(t);
+    }
+    for (Task sub : t.getSubTasks()) {
+      collectChanges(insert, updates, sub, t.getId(), written);
+    }
+  }
+
+  /** An UPDATE of only the given {@link SyncChange} fields of a row, stamping a new version. */
+  private static PreparedStatement fieldUpdate(int fields) throws SQLException {
+    String sql = FIELD_UPDATES[fields];
+    if (sql == null) {
+      StringBuilder set = new StringBuilder("UPDATE tasks SET ");
+      if ((fields & SyncChange.TEXT) != 0) set.append("text = ?, ");
+      if ((fields & SyncChange.DONE) != 0) set.append("is_done = ?, completed_at = ?, ");
+      if ((fields & SyncChange.MIGRATED) != 0) set.append("is_migrated = ?, ");
+      if ((fields & SyncChange.PRIORITY) != 0) set.append("priority = ?, ");
+      if ((fields & SyncChange.PARENT) != 0) set.append("parent_id = ?, ");
+      sql = set.append("sync_version = ").append(NEXT_VERSION).append(" WHERE id = ?").toString();
+      FIELD_UPDATES[fields] = sql;
+    }
+    return Database.prepare(sql);
+  }
+
+  /** Binds {@code r} to a {@link #fieldUpdate(int)} statement for the same fields. */
+  private static void bindFields(PreparedStatement ps, TaskRow r, int fields) throws SQLException {
+    int i = 1;
+    if ((fields & SyncChange.TEXT) != 0) ps.setString(i++, r.text());
+    if ((fields & SyncChange.DONE) != 0) {
+      ps.setBoolean(i++, r.done());
+      ps.setTimestamp(i++, r.completedAt() != null ? Timestamp.valueOf(r.completedAt()) : null);
+    }
+    if ((fields & SyncChange.MIGRATED) != 0) ps.setBoolean(i++, r.migrated());
+    if ((fields & SyncChange.PRIORITY) != 0) ps.setString(i++, r.priority().name());
+    if ((fields & SyncChange.PARENT) != 0) ps.setString(i++, r.parentId());
+    ps.setString(i, r.id());
+  }
+
+  private static void executeBatches(Set<PreparedStatement> batched) throws SQLException {
+    for (PreparedStatement ps : batched) {
+      ps.executeBatch();
+    }
+    batched.clear();
+  }
+
+  private static Task readTask(ResultSet rs) throws SQLException {
+    Task t = new Task();
+    t.setId(rs.getString("id"));
+    t.setText(rs.getString("text"));
+    t.setDone(rs.getBoolean("is_done"));
+    t.setMigrated(rs.getBoolean("is_migrated"));
+
+    Timestamp created = rs.getTimestamp("created_at");
+    t.setCreatedAt(created != null ? created.toLocalDateTime() : LocalDateTime.now());
+
+    Timestamp completed = rs.getTimestamp("completed_at");
+    if (completed != null) t.setCompletedAt(completed.toLocalDateTime());
+
+    try {
+      t.setPriority(Task.Priority.valueOf(rs.getString("priority")));
+    } catch (Exception e) { t.setPriority(Task.Priority.NORMAL); }
+    t.setWorkspace(rs.getString("workspace"));
+
+    t.markClean();
+    return t;
+  }
+
+  private static void bindRow(PreparedStatement ps, TaskRow r) throws SQLException {
+    ps.setString(1, r.id());
+    ps.setString(2, r.text());
+    ps.setBoolean(3, r.done());
+    ps.setBoolean(4, r.migrated());
+    ps.setTimestamp(5, Timestamp.valueOf(r.createdAt()));
+    ps.setTimestamp(6, r.completedAt() != null ? Timestamp.valueOf(r.completedAt()) : null);
+    ps.setString(7, r.priority().name());
+    ps.setString(8, r.parentId());
+    ps.setString(9, r.workspace());
+  }
+
+  /** Last synced copies of the rows in {@code changes}, by id. */
+  private static Map<String, TaskRow> syncBases(List<SyncChange> changes) throws SQLException {
+    Map<String, TaskRow> bases = new HashMap<>();
+    if (changes.isEmpty()) return bases;
+    PreparedStatement ps = Database.prepare("SELECT * FROM sync_base WHERE id = ANY(?)");
+    ps.setObject(1, changes.stream().map(SyncChange::id).toArray());
+    try (ResultSet rs = ps.executeQuery()) {
+      while (rs.next()) {
+        TaskRow base = TaskRow.of(readTask(rs), rs.getString("parent_id"));
+        bases.put(base.id(), base);
+      }
+    }
+    return bases;
+  }
+
+  private static int deleteById(String sql, String id) throws SQLException {
+    PreparedStatement ps = Database.prepare(sql);
+    ps.setString(1, id);
+    return ps.executeUpdate();
+  }
+
+  private static long longSetting(String key) {
+    try {
+      return Long.parseLong(getSetting(key, "0"));
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * SQL for the id of the copy of row {@code column} carried to the day bound as parameter 1: a
+   * hash of both, so two synced machines migrating the same day create the same copy, not two.
+   */
+  private static String copyId(String column) {
+    return "LEFT(RAWTOHEX(HASH('SHA-256', STRINGTOUTF8(CONCAT(" + column + ", '@', CAST(? AS VARCHAR))))), 8)";
+  }
+
+  /** Binds the active workspace as parameter 1. */
+  private static PreparedStatement inWorkspace(PreparedStatement ps) throws SQLException {
+    ps.setString(1, workspace);
+    return ps;
   }
 }
\ No newline at end of file
@@ -0,0 +1,58 @@
+package io.olmosjt.terminaltodo.backend;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Owns the single H2 connection used for the whole app lifetime and caches one
+ * {@link PreparedStatement} per SQL string, so callers pay the connect and parse cost once.
+ * Not thread-safe on its own: every caller goes through the synchronized {@link DataService} methods.
+ */
+final class Database {
+  /** Database file path (without H2's ".mv.db" suffix); overridable for benchmarks and scratch runs. */
+  static final String DB_PATH = System.getProperty("terminaltodo.db", System.getProperty("user.home") + "/.daily_plan_db");
+  static final String DB_URL = "jdbc:h2:" + DB_PATH + ";DB_CLOSE_ON_EXIT=FALSE";
+
+  private static Connection connection;
+  private static final Map<String, PreparedStatement> statements = new HashMap<>();
+
+  private Database() {}
+
+  /** Opens the connection on first use and brings the schema up to date before handing it out. */
+  static Connection connection() throws SQLException {
+    if (connection == null || connection.isClosed()) {
+      connection = DriverManager.getConnection(DB_URL);
+      statements.clear();
+      SchemaMigrations.migrate(connection);
+    }
+    return connection;
+  }
+
+  static PreparedStatement prepare(String sql) throws SQLException {
+    Connection conn = connection();
+    PreparedStatement ps = statements.get(sql);
+    if (ps == null || ps.isClosed()) {
+      ps = conn.prepareStatement(sql);
+      statements.put(sql, ps);
+    }
+    return ps;
+  }
+
+  static void close() {
+    if (connection == null) return;
+    for (PreparedStatement ps : statements.values()) {
+      try { ps.close(); } catch (SQLException e) { e.printStackTrace(); }
+    }
+    statements.clear();
+    try {
+      connection.close();
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+    connection = null;
+  }
+}
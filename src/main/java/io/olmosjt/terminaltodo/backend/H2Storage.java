@@ -0,0 +1,37 @@
+package io.olmosjt.terminaltodo.backend;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/** The H2 tables behind {@link DataService}; everything else in the app reads the same database. */
+final class H2Storage implements TaskStorage {
+  @Override
+  public List<Task> loadPage(LocalDate from, LocalDate to) {
+    return DataService.loadPage(from, to);
+  }
+
+  @Override
+  public void useWorkspace(String name) {
+    DataService.useWorkspace(name);
+  }
+
+  @Override
+  public boolean apply(List<PendingWrite> writes) {
+    return DataService.applyWrites(writes);
+  }
+
+  @Override
+  public String getSetting(String key, String defaultValue) {
+    return DataService.getSetting(key, defaultValue);
+  }
+
+  @Override
+  public void setSetting(String key, String value) {
+    DataService.setSetting(key, value);
+  }
+
+  @Override
+  public void close() {
+    DataService.shutdown();
+  }
+}
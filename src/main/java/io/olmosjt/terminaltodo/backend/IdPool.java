@@ -0,0 +1,55 @@
+package io.olmosjt.terminaltodo.backend;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * New task ids already checked against the whole {@code tasks} table, for the FX thread, which
+ * must not wait on the database. The pool refills itself on the persistence thread when it runs
+ * low; a burst that empties it meanwhile gets unchecked random ids rather than waiting behind the
+ * queue. Callers still check the tasks they hold ({@link TaskIndex#ensureUniqueId}), which also
+ * covers rows written after the check.
+ */
+public final class IdPool {
+  private static final int REFILL = 256;
+  private static final int LOW_WATER = 64;
+
+  private final Deque<String> ids = new ArrayDeque<>(); // guarded by this
+  private CompletableFuture<Void> refill; // the running top-up, if any; guarded by this
+
+  /**
+   * A checked id, or an unchecked {@link Task#newId()} while the pool is empty: never blocks. The
+   * odds of an unchecked id matching a stored row are about rows / 2^32.
+   */
+  public synchronized String next() {
+    if (refill == null && ids.size() <= LOW_WATER) {
+      refill = new CompletableFuture<>();
+      fetch(REFILL, refill);
+    }
+    return ids.isEmpty() ? Task.newId() : ids.pollFirst();
+  }
+
+  /**
+   * Completes once the pool holds at least {@code count} ids (or the fetch failed), so a batch can
+   * take them all from {@link #next()} without waiting.
+   */
+  public synchronized CompletableFuture<Void> reserve(int count) {
+    int missing = count + LOW_WATER - ids.size();
+    if (missing <= 0) return CompletableFuture.completedFuture(null);
+    CompletableFuture<Void> done = new CompletableFuture<>();
+    fetch(missing, done);
+    return done;
+  }
+
+  private void fetch(int count, CompletableFuture<Void> done) {
+    PersistenceQueue.submit("db.unusedIds", () -> DataService.unusedIds(count)).whenComplete((fresh, error) -> {
+      synchronized (this) {
+        if (fresh != null) ids.addAll(fresh);
+        if (refill == done) refill = null;
+      }
+      if (error != null) error.printStackTrace();
+      done.complete(null);
+    });
+  }
+}
@@ -0,0 +1,611 @@
+package io.olmosjt.terminaltodo.backend;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Storage engine that never updates in place. Every change is an event ({@link TaskCreated},
+ * {@link Toggled}, {@link Edited}, {@link Deleted}, ...) appended to {@code journal.log}; the
+ * current state lives in memory and is rebuilt on open from the last snapshot plus the events
+ * after it.
+ *
+ * <p>Commits are grouped: a writer appends its events to a shared buffer, and whichever writer
+ * gets the flush lock first swaps out everything buffered so far, then writes and forces it once
+ * holding only the flush lock, so writers keep appending during the fsync and those that arrived
+ * meanwhile return without one of their own. If a write or force fails, the in-memory state is
+ * ahead of the log; the engine is then marked failed and refuses further writes.
+ *
+ * <p>Because the log keeps history, the last {@value #UNDO_DEPTH} batches can be undone and
+ * redone; both append compensating events, so the log stays append-only and replay sees them.
+ *
+ * <p>Record layout: {@code length:int crc32:int payload}, payload {@code seq:long type:byte body}.
+ * A torn or corrupt record at the tail (a crash mid-append) ends replay and is truncated.
+ */
+final class JournalStorage implements TaskStorage {
+  static final String LOG = "journal.log";
+  static final String SNAPSHOT = "snapshot.bin";
+
+  private static final int SNAPSHOT_MAGIC = 0x54534e32; // "TSN2", rows carry their workspace
+  private static final long SNAPSHOT_EVERY = 50_000;
+  private static final int UNDO_DEPTH = 100;
+  private static final Task.Priority[] PRIORITIES = Task.Priority.values();
+
+  private static final byte CREATED = 1, TOGGLED = 2, EDITED = 3, DELETED = 4, CLEARED = 5, SETTING = 6;
+
+  sealed interface Event permits TaskCreated, Toggled, Edited, Deleted, Cleared, SettingChanged {}
+  /** Inserts or replaces a whole row. */
+  record TaskCreated(TaskRow row) implements Event {}
+  record Toggled(String id, boolean done, LocalDateTime completedAt) implements Event {}
+  record Edited(String id, String text, Task.Priority priority, boolean migrated) implements Event {}
+  /** Removes a task and its whole subtree, like {@link DataService#deleteTask}. */
+  record Deleted(String id) implements Event {}
+  /** Removes every row of one workspace. */
+  record Cleared(String workspace) implements Event {}
+  /** {@code value == null} removes the setting. */
+  record SettingChanged(String key, String value) implements Event {}
+
+  /** One applied batch and the events that take it back. */
+  private record Step(List<Event> forward, List<Event> inverse) {}
+
+  private final Path dir;
+  private final FileChannel log;
+  private final Map<String, TaskRow> rows = new HashMap<>();
+  private final Map<String, Set<String>> children = new HashMap<>();
+  private final Map<String, String> settings = new HashMap<>();
+  private String workspace = Task.DEFAULT_WORKSPACE; // what loadPage reads; guarded by this
+  private final Deque<Step> undo = new ArrayDeque<>();
+  private final Deque<Step> redo = new ArrayDeque<>();
+
+  // Appended but not yet written; guarded by this, swapped out under flushLock.
+  private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+  private final DataOutputStream bufferOut = new DataOutputStream(buffer);
+  private final CRC32 crc = new CRC32();
+  private long seq;
+  private long snapshotSeq;
+
+  private final Object flushLock = new Object();
+  private long durableSeq; // guarded by flushLock
+  private volatile boolean failed; // set once a commit could not be made durable
+
+  /** Opens (or creates) the journal in {@code dir} and replays it. */
+  JournalStorage(Path dir) throws IOException {
+    this.dir = dir;
+    Files.createDirectories(dir);
+    loadSnapshot();
+    log = FileChannel.open(dir.resolve(LOG), StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    long valid = replay();
+    if (valid < log.size()) {
+      System.err.println("truncating torn journal tail at byte " + valid);
+      log.truncate(valid);
+      log.force(true);
+    }
+    log.position(valid);
+    durableSeq = seq;
+  }
+
+  @Override
+  public synchronized List<Task> loadPage(LocalDate from, LocalDate to) {
+    LocalDateTime lo = from.atStartOfDay(), hi = to.atStartOfDay();
+    List<TaskRow> top = new ArrayList<>();
+    for (TaskRow r : rows.values()) {
+      boolean topLevel = r.parentId() == null || !rows.containsKey(r.parentId());
+      if (topLevel && workspace.equals(r.workspace()) && !r.createdAt().isBefore(lo) && r.createdAt().isBefore(hi)) top.add(r);
+    }
+    top.sort(Comparator.comparing(TaskRow::createdAt));
+
+    List<Task> result = new ArrayList<>(top.size());
+    for (TaskRow r : top) {
+      Task t = r.toTask();
+      attachSubTasks(t, 1);
+      result.add(t);
+    }
+    return result;
+  }
+
+  private void attachSubTasks(Task parent, int depth) {
+    Set<String> subIds = children.get(parent.getId());
+    if (subIds == null || depth > Task.MAX_DEPTH) return;
+    subIds.stream().map(rows::get).sorted(Comparator.comparing(TaskRow::createdAt)).forEach(sub -> {
+      Task t = sub.toTask();
+      parent.getSubTasks().add(t);
+      attachSubTasks(t, depth + 1);
+    });
+  }
+
+  /** {@code id} and every row below it, breadth-first, so each parent precedes its subtasks. */
+  private List<String> subtree(String id) {
+    List<String> ids = new ArrayList<>();
+    ids.add(id);
+    Set<String> seen = new HashSet<>(ids);
+    for (int i = 0; i < ids.size(); i++) {
+      Set<String> subIds = children.get(ids.get(i));
+      if (subIds == null) continue;
+      for (String subId : subIds) {
+        if (seen.add(subId)) ids.add(subId);
+      }
+    }
+    return ids;
+  }
+
+  @Override
+  public synchronized void useWorkspace(String name) {
+    workspace = name;
+  }
+
+  @Override
+  public boolean apply(List<PendingWrite> writes) {
+    long target;
+    synchronized (this) {
+      if (failed) return false;
+      List<Event> forward = new ArrayList<>();
+      List<List<Event>> inverses = new ArrayList<>();
+      for (PendingWrite w : writes) {
+        // Diff against the state as of the previous write in this batch.
+        for (Event e : toEvents(w)) {
+          append(e);
+          forward.add(e);
+          inverses.add(mutate(e));
+        }
+      }
+      if (forward.isEmpty()) return true;
+      pushUndo(new Step(forward, reverse(inverses)));
+      redo.clear();
+      target = seq;
+    }
+    return commit(target);
+  }
+
+  /** Takes back the last applied (or redone) batch; false when there is nothing to undo or the journal failed. */
+  boolean undo() {
+    return replayStep(undo, redo, true);
+  }
+
+  /** Re-applies the last undone batch; false when there is nothing to redo or the journal failed. */
+  boolean redo() {
+    return replayStep(redo, undo, false);
+  }
+
+  @Override
+  public synchronized String getSetting(String key, String defaultValue) {
+    return settings.getOrDefault(key, defaultValue);
+  }
+
+  /** Like a failed {@link #apply}, a setting that cannot be made durable marks the engine failed. */
+  @Override
+  public void setSetting(String key, String value) {
+    long target;
+    synchronized (this) {
+      if (failed) return;
+      Event e = new SettingChanged(key, value);
+      append(e);
+      mutate(e);
+      target = seq;
+    }
+    commit(target);
+  }
+
+  /** Writes a final snapshot so the next open does not replay the whole log. */
+  @Override
+  public void close() {
+    try {
+      snapshot();
+      log.close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Writes the whole state as of the current sequence number and truncates the log. A crash
+   * between the rename and the truncate is harmless: replay skips events the snapshot covers.
+   */
+  void snapshot() throws IOException {
+    synchronized (flushLock) {
+      synchronized (this) {
+        writeBuffered();
+        Path target = dir.resolve(SNAPSHOT);
+        Path tmp = dir.resolve(SNAPSHOT + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+          DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch), 1 << 16));
+          out.writeInt(SNAPSHOT_MAGIC);
+          out.writeLong(seq);
+          out.writeInt(settings.size());
+          for (Map.Entry<String, String> s : settings.entrySet()) {
+            out.writeUTF(s.getKey());
+            out.writeUTF(s.getValue());
+          }
+          out.writeInt(rows.size());
+          for (TaskRow r : rows.values()) {
+            writeRow(out, r);
+          }
+          out.flush();
+          ch.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        log.truncate(0);
+        log.force(true);
+        snapshotSeq = seq;
+      }
+    }
+  }
+
+  private boolean replayStep(Deque<Step> from, Deque<Step> to, boolean backwards) {
+    long target;
+    synchronized (this) {
+      if (failed) return false;
+      Step step = from.pollLast();
+      if (step == null) return false;
+      List<Event> events = backwards ? step.inverse() : step.forward();
+      List<List<Event>> inverses = new ArrayList<>();
+      for (Event e : events) {
+        append(e);
+        inverses.add(mutate(e));
+      }
+      to.addLast(backwards ? step : new Step(step.forward(), reverse(inverses)));
+      target = seq;
+    }
+    return commit(target);
+  }
+
+  private void pushUndo(Step step) {
+    undo.addLast(step);
+    if (undo.size() > UNDO_DEPTH) undo.removeFirst();
+  }
+
+  /**
+   * Events for one queued write: a new row, or only the fields that changed on an existing one
+   * (of those the write carries).
+   */
+  private List<Event> toEvents(PendingWrite w) {
+    switch (w.kind()) {
+      case DELETE:
+        return List.of(new Deleted(w.id()));
+      case CLEAR:
+        return List.of(new Cleared(w.id()));
+      case SET_DONE:
+        List<Event> toggles = new ArrayList<>();
+        for (String id : subtree(w.id())) {
+          toggles.add(new Toggled(id, w.row().done(), w.row().completedAt()));
+        }
+        return toggles;
+      case UPSERT:
+        break;
+      default:
+        return List.of();
+    }
+    TaskRow r = w.row();
+    TaskRow prev = rows.get(r.id());
+    if (w.fields() != SyncChange.ALL) {
+      // Like H2's column update: other columns keep their newer values, a missing row stays missing.
+      if (prev == null) return List.of();
+      r = SyncChange.merge(prev, r, w.fields());
+    }
+    if (prev == null || !prev.createdAt().equals(r.createdAt()) || !equal(prev.parentId(), r.parentId())) {
+      return List.of(new TaskCreated(r));
+    }
+    List<Event> events = new ArrayList<>(2);
+    if (prev.done() != r.done() || !equal(prev.completedAt(), r.completedAt())) {
+      events.add(new Toggled(r.id(), r.done(), r.completedAt()));
+    }
+    if (!equal(prev.text(), r.text()) || prev.priority() != r.priority() || prev.migrated() != r.migrated()) {
+      events.add(new Edited(r.id(), r.text(), r.priority(), r.migrated()));
+    }
+    return events;
+  }
+
+  /** Applies an event to the in-memory state and returns the events that undo it. */
+  private List<Event> mutate(Event e) {
+    if (e instanceof TaskCreated c) {
+      TaskRow prev = putRow(c.row());
+      return List.of(prev != null ? new TaskCreated(prev) : new Deleted(c.row().id()));
+    }
+    if (e instanceof Toggled t) {
+      TaskRow prev = rows.get(t.id());
+      if (prev == null) return List.of();
+      putRow(new TaskRow(prev.id(), prev.text(), t.done(), prev.migrated(), prev.createdAt(), t.completedAt(),
+          prev.priority(), prev.parentId(), prev.workspace()));
+      return List.of(new Toggled(prev.id(), prev.done(), prev.completedAt()));
+    }
+    if (e instanceof Edited ed) {
+      TaskRow prev = rows.get(ed.id());
+      if (prev == null) return List.of();
+      putRow(new TaskRow(prev.id(), ed.text(), prev.done(), ed.migrated(), prev.createdAt(), prev.completedAt(),
+          ed.priority(), prev.parentId(), prev.workspace()));
+      return List.of(new Edited(prev.id(), prev.text(), prev.priority(), prev.migrated()));
+    }
+    if (e instanceof Deleted d) {
+      List<Event> restore = new ArrayList<>();
+      List<String> below = subtree(d.id());
+      TaskRow prev = removeRow(d.id());
+      if (prev != null) restore.add(new TaskCreated(prev));
+      // subtree() lists parents before their subtasks, so the restore order holds at any depth.
+      for (String id : below.subList(1, below.size())) {
+        TaskRow sub = rows.remove(id);
+        if (sub != null) restore.add(new TaskCreated(sub));
+      }
+      for (String id : below) children.remove(id);
+      return restore;
+    }
+    if (e instanceof Cleared c) {
+      List<TaskRow> cleared = rows.values().stream().filter(r -> c.workspace().equals(r.workspace())).toList();
+      List<Event> restore = new ArrayList<>(cleared.size());
+      // Parents first, so each restored subtask finds its parent.
+      cleared.stream().filter(r -> r.parentId() == null).forEach(r -> restore.add(new TaskCreated(r)));
+      cleared.stream().filter(r -> r.parentId() != null).forEach(r -> restore.add(new TaskCreated(r)));
+      for (TaskRow r : cleared) {
+        removeRow(r.id());
+        children.remove(r.id());
+      }
+      return restore;
+    }
+    SettingChanged s = (SettingChanged) e;
+    String prev = s.value() != null ? settings.put(s.key(), s.value()) : settings.remove(s.key());
+    return List.of(new SettingChanged(s.key(), prev));
+  }
+
+  private TaskRow putRow(TaskRow r) {
+    TaskRow prev = rows.put(r.id(), r);
+    if (prev != null && prev.parentId() != null && !prev.parentId().equals(r.parentId())) {
+      Set<String> siblings = children.get(prev.parentId());
+      if (siblings != null) siblings.remove(r.id());
+    }
+    if (r.parentId() != null) children.computeIfAbsent(r.parentId(), p -> new LinkedHashSet<>()).add(r.id());
+    return prev;
+  }
+
+  private TaskRow removeRow(String id) {
+    TaskRow prev = rows.remove(id);
+    if (prev != null && prev.parentId() != null) {
+      Set<String> siblings = children.get(prev.parentId());
+      if (siblings != null) siblings.remove(id);
+    }
+    return prev;
+  }
+
+  /** Frames an event into the shared buffer under the next sequence number. Caller holds this. */
+  private void append(Event e) {
+    try {
+      ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+      DataOutputStream out = new DataOutputStream(payload);
+      out.writeLong(++seq);
+      writeEvent(out, e);
+      byte[] bytes = payload.toByteArray();
+      crc.reset();
+      crc.update(bytes);
+      bufferOut.writeInt(bytes.length);
+      bufferOut.writeInt((int) crc.getValue());
+      bufferOut.write(bytes);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex); // in-memory streams do not throw
+    }
+  }
+
+  /**
+   * Makes everything up to {@code target} durable and returns whether it is. The first caller in
+   * takes all that is buffered and writes and forces it without holding this, so appends go on
+   * meanwhile; callers queued behind it usually find their events already covered.
+   */
+  private boolean commit(long target) {
+    synchronized (flushLock) {
+      if (failed) return false;
+      if (durableSeq < target) {
+        byte[] bytes;
+        long upTo;
+        synchronized (this) {
+          bytes = buffer.toByteArray();
+          buffer.reset();
+          upTo = seq;
+        }
+        try {
+          write(bytes);
+        } catch (IOException e) {
+          failed = true;
+          e.printStackTrace();
+          return false;
+        }
+        durableSeq = upTo;
+      }
+    }
+    maybeSnapshot();
+    return true;
+  }
+
+  /** Caller holds flushLock and this. */
+  private void writeBuffered() throws IOException {
+    write(buffer.toByteArray());
+    buffer.reset();
+    durableSeq = seq;
+  }
+
+  /** Appends {@code bytes} to the log and forces it. Caller holds flushLock. */
+  private void write(byte[] bytes) throws IOException {
+    if (bytes.length == 0) return;
+    ByteBuffer buf = ByteBuffer.wrap(bytes);
+    while (buf.hasRemaining()) {
+      log.write(buf);
+    }
+    log.force(false);
+  }
+
+  private void maybeSnapshot() {
+    boolean due;
+    synchronized (this) {
+      due = seq - snapshotSeq >= SNAPSHOT_EVERY;
+    }
+    if (!due) return;
+    try {
+      snapshot();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private void loadSnapshot() throws IOException {
+    Path file = dir.resolve(SNAPSHOT);
+    if (!Files.exists(file)) return;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+      if (in.readInt() != SNAPSHOT_MAGIC) throw new IOException("not a journal snapshot: " + file);
+      seq = in.readLong();
+      snapshotSeq = seq;
+      for (int i = in.readInt(); i > 0; i--) {
+        settings.put(in.readUTF(), in.readUTF());
+      }
+      for (int i = in.readInt(); i > 0; i--) {
+        putRow(readRow(in));
+      }
+    }
+  }
+
+  /** Applies every intact record after the snapshot; returns the byte length of the intact prefix. */
+  private long replay() throws IOException {
+    long valid = 0;
+    DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(log), 1 << 16));
+    while (true) {
+      byte[] bytes;
+      int checksum;
+      try {
+        int length = in.readInt();
+        checksum = in.readInt();
+        if (length <= 0 || length > log.size()) break;
+        bytes = new byte[length];
+        in.readFully(bytes);
+      } catch (EOFException e) {
+        break;
+      }
+      crc.reset();
+      crc.update(bytes);
+      if ((int) crc.getValue() != checksum) break;
+
+      DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes));
+      long recordSeq = record.readLong();
+      Event e = readEvent(record);
+      if (recordSeq > seq) {
+        mutate(e);
+        seq = recordSeq;
+      }
+      valid += 8 + bytes.length;
+    }
+    return valid;
+  }
+
+  private static void writeEvent(DataOutputStream out, Event e) throws IOException {
+    if (e instanceof TaskCreated c) {
+      out.writeByte(CREATED);
+      writeRow(out, c.row());
+    } else if (e instanceof Toggled t) {
+      out.writeByte(TOGGLED);
+      out.writeUTF(t.id());
+      out.writeBoolean(t.done());
+      writeTime(out, t.completedAt());
+    } else if (e instanceof Edited ed) {
+      out.writeByte(EDITED);
+      out.writeUTF(ed.id());
+      writeString(out, ed.text());
+      out.writeByte(ed.priority().ordinal());
+      out.writeBoolean(ed.migrated());
+    } else if (e instanceof Deleted d) {
+      out.writeByte(DELETED);
+      out.writeUTF(d.id());
+    } else if (e instanceof Cleared c) {
+      out.writeByte(CLEARED);
+      out.writeUTF(c.workspace());
+    } else {
+      SettingChanged s = (SettingChanged) e;
+      out.writeByte(SETTING);
+      out.writeUTF(s.key());
+      writeString(out, s.value());
+    }
+  }
+
+  private static Event readEvent(DataInputStream in) throws IOException {
+    byte type = in.readByte();
+    return switch (type) {
+      case CREATED -> new TaskCreated(readRow(in));
+      case TOGGLED -> new Toggled(in.readUTF(), in.readBoolean(), readTime(in));
+      case EDITED -> new Edited(in.readUTF(), readString(in), PRIORITIES[in.readUnsignedByte()], in.readBoolean());
+      case DELETED -> new Deleted(in.readUTF());
+      case CLEARED -> new Cleared(in.readUTF());
+      case SETTING -> new SettingChanged(in.readUTF(), readString(in));
+      default -> throw new IOException("unknown journal event type " + type);
+    };
+  }
+
+  private static void writeRow(DataOutputStream out, TaskRow r) throws IOException {
+    out.writeUTF(r.id());
+    writeString(out, r.text());
+    out.writeBoolean(r.done());
+    out.writeBoolean(r.migrated());
+    writeTime(out, r.createdAt());
+    writeTime(out, r.completedAt());
+    out.writeByte(r.priority().ordinal());
+    writeString(out, r.parentId());
+    out.writeUTF(r.workspace());
+  }
+
+  private static TaskRow readRow(DataInputStream in) throws IOException {
+    return new TaskRow(in.readUTF(), readString(in), in.readBoolean(), in.readBoolean(), readTime(in),
+        readTime(in), PRIORITIES[in.readUnsignedByte()], readString(in), in.readUTF());
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    out.writeBoolean(s != null);
+    if (s != null) out.writeUTF(s);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static void writeTime(DataOutputStream out, LocalDateTime t) throws IOException {
+    out.writeBoolean(t != null);
+    if (t == null) return;
+    out.writeLong(t.toEpochSecond(ZoneOffset.UTC));
+    out.writeInt(t.getNano());
+  }
+
+  private static LocalDateTime readTime(DataInputStream in) throws IOException {
+    return in.readBoolean() ? LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC) : null;
+  }
+
+  private static List<Event> reverse(List<List<Event>> inverses) {
+    List<Event> out = new ArrayList<>();
+    for (int i = inverses.size() - 1; i >= 0; i--) {
+      out.addAll(inverses.get(i));
+    }
+    return out;
+  }
+
+  private static boolean equal(Object a, Object b) {
+    return a == null ? b == null : a.equals(b);
+  }
+}
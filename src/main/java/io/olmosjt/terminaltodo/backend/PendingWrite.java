@@ -0,0 +1,21 @@
+package io.olmosjt.terminaltodo.backend;
+
+/**
+ * One coalesced entry of the {@link PersistenceQueue}. {@code row} is only set for upserts and
+ * subtree toggles (which read its done state and completion time), {@code action} only for calls.
+ * {@code fields} are the {@link SyncChange} fields an upsert writes: {@link SyncChange#ALL} writes
+ * the whole row, inserting it if missing; fewer update only those columns of an existing row.
+ * Deletes and toggles cover the row and its whole subtree; a clear's {@code id} is the workspace it
+ * empties.
+ */
+record PendingWrite(Kind kind, String id, TaskRow row, int fields, Runnable action) {
+  enum Kind { UPSERT, SET_DONE, DELETE, CLEAR, CALL }
+
+  PendingWrite(Kind kind, String id, TaskRow row) {
+    this(kind, id, row, SyncChange.ALL, null);
+  }
+
+  PendingWrite(Kind kind, String id, TaskRow row, int fields) {
+    this(kind, id, row, fields, null);
+  }
+}
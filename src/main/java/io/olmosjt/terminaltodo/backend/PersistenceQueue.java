@@ -0,0 +1,357 @@
+package io.olmosjt.terminaltodo.backend;
+
+import io.olmosjt.terminaltodo.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntConsumer;
+
+/**
+ * Write-behind queue with a single writer thread. Writes are keyed by task id, so a burst of
+ * toggles/edits on the same task collapses into one row write, and everything queued while the
+ * writer is busy goes out in one transaction. Callers never block except in {@link #flush()}
+ * and {@link #shutdown()}.
+ *
+ * <p>Tasks are marked clean as soon as their row is queued: from then on the queue owns the
+ * change. A batch the storage fails to commit goes back to the head of the queue and is retried
+ * with a growing pause, so a failed write is late, never lost.
+ */
+public final class PersistenceQueue {
+  private static final long LINGER_MS = 25;
+  private static final String CLEAR_KEY = "*";
+  private static final String DONE_KEY = "done:";
+  private static final long RETRY_MS = 250;
+  private static final long MAX_RETRY_MS = 10_000;
+  // Once shutdown is requested, a batch that keeps failing is given up after this many tries.
+  private static final int SHUTDOWN_ATTEMPTS = 3;
+
+  // The app reads and writes H2; JournalStorage is the append-only alternative (see StorageBenchmark).
+  private static final TaskStorage storage = new H2Storage();
+
+  private static final Object lock = new Object();
+  private static final LinkedHashMap<String, PendingWrite> pending = new LinkedHashMap<>();
+  private static int inFlight;
+  private static long callSeq;
+  private static String workspace = Task.DEFAULT_WORKSPACE; // the one reads and clears target; guarded by lock
+  private static boolean running = true;
+  private static volatile IntConsumer onPendingChanged = n -> {};
+
+  private static final Thread writer = new Thread(PersistenceQueue::runWriter, "persistence-writer");
+
+  static {
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  private PersistenceQueue() {}
+
+  /** Queues the new or dirty rows of a top-level task and its whole subtree. */
+  public static void save(Task task) {
+    synchronized (lock) {
+      enqueueIfChanged(task, null);
+      lock.notifyAll();
+    }
+    notifyPendingChanged();
+  }
+
+  /**
+   * Queues several top-level tasks under one lock hand-off, so the writer drains them together
+   * and they commit in a single transaction.
+   */
+  public static void saveAll(Collection<Task> tasks) {
+    synchronized (lock) {
+      for (Task task : tasks) {
+        enqueueIfChanged(task, null);
+      }
+      lock.notifyAll();
+    }
+    notifyPendingChanged();
+  }
+
+  /**
+   * Queues a subtree toggle of {@code task}, already applied in memory with
+   * {@link Task#setDoneWithSubtasks}: one statement marks the task and every descendant. Rows of
+   * the subtree that were never written are queued as inserts first, {@code task} itself under
+   * {@code parentId}.
+   */
+  public static void setDone(Task task, String parentId) {
+    synchronized (lock) {
+      markSubtree(task, parentId);
+      String key = DONE_KEY + task.getId();
+      // Re-append so the toggle runs after the inserts (and any earlier toggle) of this subtree.
+      pending.remove(key);
+      pending.put(key, new PendingWrite(PendingWrite.Kind.SET_DONE, task.getId(), TaskRow.of(task, parentId)));
+      lock.notifyAll();
+    }
+    notifyPendingChanged();
+  }
+
+  /** Queues deletion of a task and its whole subtree. */
+  public static void delete(String id) {
+    synchronized (lock) {
+      // Re-append so the delete runs after anything queued earlier (e.g. a pending child update).
+      pending.remove(id);
+      pending.put(id, new PendingWrite(PendingWrite.Kind.DELETE, id, null));
+      lock.notifyAll();
+    }
+    notifyPendingChanged();
+  }
+
+  /**
+   * Drops the queued upserts and toggles of the active workspace and wipes its rows on the next
+   * write. Other workspaces keep theirs.
+   */
+  public static void clearAll() {
+    synchronized (lock) {
+      String cleared = workspace;
+      pending.values().removeIf(w -> w.row() != null && cleared.equals(w.row().workspace()));
+      pending.put(CLEAR_KEY + cleared, new PendingWrite(PendingWrite.Kind.CLEAR, cleared, null));
+      lock.notifyAll();
+    }
+    notifyPendingChanged();
+  }
+
+  /**
+   * Makes {@code name} the workspace that reads and clears queued from now on target. The switch
+   * is queued like a call, so work queued before it still runs against the previous workspace;
+   * rows carry their own workspace, so pending upserts are unaffected either way.
+   */
+  public static CompletableFuture<Void> useWorkspace(String name) {
+    synchronized (lock) {
+      workspace = name;
+      return submit("db.useWorkspace", () -> {
+        storage.useWorkspace(name);
+        return null;
+      });
+    }
+  }
+
+  /**
+   * Runs {@code work} on the writer thread after every write queued before it, so reads see the
+   * caller's own writes and never block the FX thread on the connection.
+   */
+  public static <T> CompletableFuture<T> submit(Callable<T> work) {
+    return submit("db.call", work);
+  }
+
+  /** Like {@link #submit(Callable)}, timing the work under {@code operation} in {@link Metrics}. */
+  public static <T> CompletableFuture<T> submit(String operation, Callable<T> work) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    Runnable action = () -> {
+      long start = Metrics.start();
+      try {
+        result.complete(work.call());
+      } catch (Throwable t) {
+        result.completeExceptionally(t);
+      } finally {
+        Metrics.record(operation, start);
+      }
+    };
+    synchronized (lock) {
+      String key = "call#" + (callSeq++);
+      pending.put(key, new PendingWrite(PendingWrite.Kind.CALL, key, null, 0, action));
+      lock.notifyAll();
+    }
+    return result;
+  }
+
+  public static int pendingCount() {
+    synchronized (lock) {
+      return pending.size() + inFlight;
+    }
+  }
+
+  /** Invoked from whichever thread changed the count; UI callers must hop to their own thread. */
+  public static void setOnPendingChanged(IntConsumer listener) {
+    onPendingChanged = listener;
+  }
+
+  /** Blocks until every write queued before this call has been committed. */
+  public static void flush() {
+    synchronized (lock) {
+      while (!pending.isEmpty() || inFlight > 0) {
+        try {
+          lock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  /** Drains the queue and stops the writer. Called once from {@code Application.stop()}. */
+  public static void shutdown() {
+    synchronized (lock) {
+      running = false;
+      lock.notifyAll();
+    }
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void enqueueIfChanged(Task t, String parentId) {
+    if (!t.isPersisted() || t.isDirty()) {
+      // A written row only gets the columns that changed, so the write cannot undo a newer value
+      // of another column, such as one a sync pulled in meanwhile.
+      int fields = t.isPersisted() ? t.getDirtyFields() : SyncChange.ALL;
+      PendingWrite queued = pending.get(t.getId());
+      if (queued != null && queued.kind() == PendingWrite.Kind.UPSERT) fields |= queued.fields();
+      pending.put(t.getId(), new PendingWrite(PendingWrite.Kind.UPSERT, t.getId(), TaskRow.of(t, parentId), fields));
+      t.markClean();
+    }
+    for (Task sub : t.getSubTasks()) {
+      enqueueIfChanged(sub, t.getId());
+    }
+  }
+
+  /**
+   * Before a subtree toggle: unwritten rows are queued as inserts, written ones are only marked
+   * clean, since every other change is queued as soon as it is made and the toggle covers theirs.
+   */
+  private static void markSubtree(Task t, String parentId) {
+    if (!t.isPersisted()) {
+      enqueueIfChanged(t, parentId);
+      return;
+    }
+    t.markClean();
+    for (Task sub : t.getSubTasks()) {
+      markSubtree(sub, t.getId());
+    }
+  }
+
+  private static void runWriter() {
+    int failures = 0;
+    while (true) {
+      boolean linger;
+      synchronized (lock) {
+        try {
+          while (pending.isEmpty() && running) lock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        if (pending.isEmpty()) return;
+        // Reads are waited on by the UI, so only pure write batches linger.
+        linger = running && pending.values().stream().noneMatch(w -> w.kind() == PendingWrite.Kind.CALL);
+      }
+
+      // Give a burst of clicks a moment to coalesce before committing.
+      if (linger) {
+        try {
+          Thread.sleep(LINGER_MS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+
+      List<PendingWrite> batch;
+      synchronized (lock) {
+        batch = new ArrayList<>(pending.values());
+        pending.clear();
+        inFlight = batch.size();
+      }
+
+      // Once a group of writes fails, the drain stops: that group and everything after it, calls
+      // included, go back to the front of the queue in order, so no call sees a DB missing writes
+      // queued before it.
+      List<PendingWrite> writes = new ArrayList<>();
+      List<PendingWrite> failed = new ArrayList<>();
+      for (int i = 0; i < batch.size(); i++) {
+        PendingWrite w = batch.get(i);
+        if (w.kind() != PendingWrite.Kind.CALL) {
+          writes.add(w);
+          continue;
+        }
+        if (!writes.isEmpty() && !applyWrites(writes)) {
+          failed.addAll(writes);
+          failed.addAll(batch.subList(i, batch.size()));
+          writes.clear();
+          break;
+        }
+        writes.clear();
+        w.action().run();
+      }
+      if (!writes.isEmpty() && !applyWrites(writes)) failed.addAll(writes);
+
+      failures = failed.isEmpty() ? 0 : failures + 1;
+      List<PendingWrite> abandoned = List.of();
+      synchronized (lock) {
+        if (!failed.isEmpty()) {
+          if (running || failures < SHUTDOWN_ATTEMPTS) requeue(failed);
+          else abandoned = failed;
+        }
+        inFlight = 0;
+        lock.notifyAll();
+      }
+      // Shutting down with writes still failing: those are dropped, but the calls run so that
+      // nobody waits on them forever.
+      for (PendingWrite w : abandoned) {
+        if (w.kind() == PendingWrite.Kind.CALL) w.action().run();
+      }
+      notifyPendingChanged();
+
+      if (failures > 0) {
+        try {
+          Thread.sleep(Math.min(MAX_RETRY_MS, RETRY_MS << Math.min(failures - 1, 10)));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  /** Returns whether the storage committed {@code writes}. */
+  private static boolean applyWrites(List<PendingWrite> writes) {
+    long start = Metrics.start();
+    boolean committed = storage.apply(writes);
+    Metrics.record("db.applyWrites", start);
+    return committed;
+  }
+
+  /**
+   * Puts entries that did not run (a failed group of writes and every write and call after it)
+   * back in front of everything queued since, in order, except where a newer entry with the same
+   * key replaced them (the row's delete). A newer upsert of the row takes the failed one's place
+   * and also its fields, since it carries only its own. Caller holds lock.
+   */
+  private static void requeue(List<PendingWrite> failed) {
+    LinkedHashMap<String, PendingWrite> newer = new LinkedHashMap<>(pending);
+    pending.clear();
+    for (PendingWrite w : failed) {
+      String key = keyOf(w);
+      PendingWrite replacement = newer.get(key);
+      if (replacement == null) {
+        pending.put(key, w);
+      } else if (w.kind() == PendingWrite.Kind.UPSERT && replacement.kind() == PendingWrite.Kind.UPSERT) {
+        newer.remove(key);
+        pending.put(key, new PendingWrite(PendingWrite.Kind.UPSERT, w.id(), replacement.row(), w.fields() | replacement.fields()));
+      }
+    }
+    pending.putAll(newer);
+  }
+
+  /** The key a write is queued under, so a newer write of the same kind replaces it. */
+  private static String keyOf(PendingWrite w) {
+    return switch (w.kind()) {
+      case SET_DONE -> DONE_KEY + w.id();
+      case CLEAR -> CLEAR_KEY + w.id();
+      default -> w.id();
+    };
+  }
+
+  private static void notifyPendingChanged() {
+    int count = pendingCount();
+    Metrics.setGauge(Metrics.PENDING_WRITES, count);
+    onPendingChanged.accept(count);
+  }
+}
@@ -0,0 +1,109 @@
+package io.olmosjt.terminaltodo.backend;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Ordered, versioned schema changes. Each migration runs once per database file and its version
+ * is recorded in {@code schema_version}, so existing {@code ~/.daily_plan_db} files are upgraded in
+ * place. H2 commits DDL implicitly, so every step is written to be safe to re-run.
+ */
+final class SchemaMigrations {
+  private record Migration(int version, String description, String sql) {}
+
+  // Append only: never edit or reorder a migration that has shipped.
+  private static final List<Migration> MIGRATIONS = List.of(
+      new Migration(1, "baseline tasks and settings tables", """
+          CREATE TABLE IF NOT EXISTS tasks (
+              id VARCHAR(36) PRIMARY KEY,
+              text VARCHAR(255),
+              is_done BOOLEAN,
+              is_migrated BOOLEAN,
+              created_at TIMESTAMP,
+              completed_at TIMESTAMP,
+              priority VARCHAR(20),
+              parent_id VARCHAR(36)
+          );
+          CREATE TABLE IF NOT EXISTS settings (
+              conf_key VARCHAR(50) PRIMARY KEY,
+              conf_value VARCHAR(255)
+          );
+          """),
+      new Migration(2, "indexes for date ordering, subtask lookups and done filters", """
+          CREATE INDEX IF NOT EXISTS idx_tasks_created_at ON tasks(created_at);
+          CREATE INDEX IF NOT EXISTS idx_tasks_parent_id ON tasks(parent_id);
+          CREATE INDEX IF NOT EXISTS idx_tasks_done_created ON tasks(is_done, created_at);
+          """),
+      new Migration(3, "workspace column; existing rows land in the default workspace", """
+          ALTER TABLE tasks ADD COLUMN IF NOT EXISTS workspace VARCHAR(50) DEFAULT 'default' NOT NULL;
+          CREATE INDEX IF NOT EXISTS idx_tasks_workspace_created ON tasks(workspace, created_at);
+          """),
+      new Migration(4, "sync: per-row change versions, tombstones and last synced copies", """
+          CREATE SEQUENCE IF NOT EXISTS task_version_seq;
+          ALTER TABLE tasks ADD COLUMN IF NOT EXISTS sync_version BIGINT DEFAULT NEXT VALUE FOR task_version_seq NOT NULL;
+          UPDATE tasks SET sync_version = NEXT VALUE FOR task_version_seq;
+          CREATE INDEX IF NOT EXISTS idx_tasks_sync_version ON tasks(sync_version);
+          CREATE TABLE IF NOT EXISTS task_tombstones (
+              id VARCHAR(36) PRIMARY KEY,
+              sync_version BIGINT DEFAULT NEXT VALUE FOR task_version_seq NOT NULL
+          );
+          CREATE INDEX IF NOT EXISTS idx_tombstones_sync_version ON task_tombstones(sync_version);
+          CREATE TABLE IF NOT EXISTS sync_base (
+              id VARCHAR(36) PRIMARY KEY,
+              text VARCHAR(255),
+              is_done BOOLEAN,
+              is_migrated BOOLEAN,
+              created_at TIMESTAMP,
+              completed_at TIMESTAMP,
+              priority VARCHAR(20),
+              parent_id VARCHAR(36),
+              workspace VARCHAR(50)
+          );
+          """)
+  );
+
+  private SchemaMigrations() {}
+
+  static void migrate(Connection conn) throws SQLException {
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute("""
+          CREATE TABLE IF NOT EXISTS schema_version (
+              version INT PRIMARY KEY,
+              description VARCHAR(255),
+              applied_at TIMESTAMP
+          )""");
+    }
+
+    int current = currentVersion(conn);
+    for (Migration m : MIGRATIONS) {
+      if (m.version() <= current) continue;
+
+      conn.setAutoCommit(false);
+      try (Statement stmt = conn.createStatement();
+           PreparedStatement ps = conn.prepareStatement(
+               "INSERT INTO schema_version (version, description, applied_at) VALUES (?, ?, CURRENT_TIMESTAMP)")) {
+        stmt.execute(m.sql());
+        ps.setInt(1, m.version());
+        ps.setString(2, m.description());
+        ps.executeUpdate();
+        conn.commit();
+      } catch (SQLException e) {
+        conn.rollback();
+        throw e;
+      } finally {
+        conn.setAutoCommit(true);
+      }
+    }
+  }
+
+  private static int currentVersion(Connection conn) throws SQLException {
+    try (Statement stmt = conn.createStatement();
+         ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+      return rs.next() ? rs.getInt(1) : 0;
+    }
+  }
+}
@@ -0,0 +1,153 @@
+package io.olmosjt.terminaltodo.backend;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory inverted index over task and subtask text. Documents are top-level task ids: the
+ * words of a subtask at any depth point at its root, so a hit always resolves to a row the list
+ * can show.
+ * Queries intersect posting sets smallest-first and never touch the task list.
+ *
+ * <p>Bulk loading from the DB runs on the persistence thread while the FX thread keeps applying
+ * incremental updates; documents the UI touched during the load win over the (older) DB rows.
+ * A {@link #clear} supersedes every load asked for before it, so rows read before a clear (or
+ * before the table was emptied) never come back.
+ */
+public class SearchIndex {
+  public record Result(List<String> ids, int total) {}
+
+  private final Map<String, Set<String>> postings = new HashMap<>();
+  private final Map<String, Set<String>> docTokens = new HashMap<>();
+
+  private boolean bulkLoading;
+  private final Set<String> touchedDuringBulk = new HashSet<>();
+  private long generation; // bumped by clear()
+
+  /** Replaces the indexed words of a top-level task with its current text and its subtree's. */
+  public synchronized void reindex(Task task) {
+    Set<String> tokens = new HashSet<>();
+    tokenizeTree(task, tokens);
+    removeDoc(task.getId());
+    docTokens.put(task.getId(), tokens);
+    for (String token : tokens) {
+      postings.computeIfAbsent(token, k -> new HashSet<>()).add(task.getId());
+    }
+    if (bulkLoading) touchedDuringBulk.add(task.getId());
+  }
+
+  private static void tokenizeTree(Task task, Set<String> tokens) {
+    tokenize(task.getText(), tokens);
+    for (Task sub : task.getSubTasks()) {
+      tokenizeTree(sub, tokens);
+    }
+  }
+
+  public synchronized void remove(String id) {
+    removeDoc(id);
+    if (bulkLoading) touchedDuringBulk.add(id);
+  }
+
+  public synchronized void clear() {
+    postings.clear();
+    docTokens.clear();
+    touchedDuringBulk.clear();
+    generation++;
+  }
+
+  /** Taken when a bulk load is requested, on the thread that also clears; see {@link #beginBulkLoad}. */
+  public synchronized long generation() {
+    return generation;
+  }
+
+  /** Starts a bulk load requested at {@code generation}; false if a clear came in since. */
+  public synchronized boolean beginBulkLoad(long generation) {
+    if (generation != this.generation) return false;
+    bulkLoading = true;
+    return true;
+  }
+
+  /**
+   * Adds one DB row; a subtask row ({@code rootId != null}) is folded into its top-level task.
+   * Returns false, adding nothing, once a clear has superseded the load.
+   */
+  public synchronized boolean addBulkRow(long generation, String id, String text, String rootId) {
+    if (generation != this.generation) return false;
+    String doc = rootId != null ? rootId : id;
+    if (touchedDuringBulk.contains(doc)) return true;
+    Set<String> tokens = new HashSet<>();
+    tokenize(text, tokens);
+    Set<String> docSet = docTokens.computeIfAbsent(doc, k -> new HashSet<>());
+    for (String token : tokens) {
+      if (docSet.add(token)) postings.computeIfAbsent(token, k -> new HashSet<>()).add(doc);
+    }
+    return true;
+  }
+
+  public synchronized void endBulkLoad() {
+    bulkLoading = false;
+    touchedDuringBulk.clear();
+  }
+
+  /** Ids of the documents containing every word of {@code query}, at most {@code limit} of them. */
+  public synchronized Result search(String query, int limit) {
+    Set<String> terms = new HashSet<>();
+    tokenize(query, terms);
+    if (terms.isEmpty()) return new Result(List.of(), 0);
+
+    List<Set<String>> lists = new ArrayList<>();
+    for (String term : terms) {
+      Set<String> docs = postings.get(term);
+      if (docs == null) return new Result(List.of(), 0);
+      lists.add(docs);
+    }
+    lists.sort(Comparator.comparingInt(Set::size));
+
+    List<String> ids = new ArrayList<>();
+    int total = 0;
+    outer:
+    for (String doc : lists.get(0)) {
+      for (int i = 1; i < lists.size(); i++) {
+        if (!lists.get(i).contains(doc)) continue outer;
+      }
+      total++;
+      if (ids.size() < limit) ids.add(doc);
+    }
+    return new Result(Collections.unmodifiableList(ids), total);
+  }
+
+  public synchronized int documentCount() {
+    return docTokens.size();
+  }
+
+  private void removeDoc(String id) {
+    Set<String> old = docTokens.remove(id);
+    if (old == null) return;
+    for (String token : old) {
+      Set<String> docs = postings.get(token);
+      if (docs != null && docs.remove(id) && docs.isEmpty()) postings.remove(token);
+    }
+  }
+
+  /** Lower-cased runs of letters/digits; everything else separates words. */
+  static void tokenize(String text, Set<String> into) {
+    if (text == null) return;
+    int start = -1;
+    for (int i = 0; i <= text.length(); i++) {
+      boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+      if (wordChar && start < 0) {
+        start = i;
+      } else if (!wordChar && start >= 0) {
+        into.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+        start = -1;
+      }
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package io.olmosjt.terminaltodo.backend;
+
+import java.util.Objects;
+
+/**
+ * One row change exchanged with the sync server: a row state, or the deletion of a row.
+ * {@code version} is the sender's change counter for the row (the local {@code sync_version} when
+ * pushed, the server's sequence when pulled). {@code fields} says which fields the change carries
+ * as news; the rest of {@code row} is context. Merging is per field, so two machines editing
+ * different fields of one task both keep their edit; when both edited the same field, the one
+ * applied later wins.
+ */
+public record SyncChange(String id, long version, boolean deleted, int fields, TaskRow row) {
+  public static final int TEXT = 1, DONE = 2, MIGRATED = 4, PRIORITY = 8, PARENT = 16;
+  /** Every mergeable field; also what a row the other side has never seen carries. */
+  public static final int ALL = TEXT | DONE | MIGRATED | PRIORITY | PARENT;
+
+  public static SyncChange deletion(String id, long version) {
+    return new SyncChange(id, version, true, 0, null);
+  }
+
+  /** Fields of {@code row} that differ from {@code base}; {@link #ALL} without a base. */
+  public static int diff(TaskRow row, TaskRow base) {
+    if (base == null) return ALL;
+    int fields = 0;
+    if (!Objects.equals(row.text(), base.text())) fields |= TEXT;
+    if (row.done() != base.done() || !Objects.equals(row.completedAt(), base.completedAt())) fields |= DONE;
+    if (row.migrated() != base.migrated()) fields |= MIGRATED;
+    if (row.priority() != base.priority()) fields |= PRIORITY;
+    if (!Objects.equals(row.parentId(), base.parentId())) fields |= PARENT;
+    return fields;
+  }
+
+  /**
+   * {@code into} with the given fields taken from {@code from}. Id, creation time and workspace
+   * never change once written, so they stay as they are in {@code into}.
+   */
+  public static TaskRow merge(TaskRow into, TaskRow from, int fields) {
+    boolean done = (fields & DONE) != 0;
+    return new TaskRow(into.id(),
+        (fields & TEXT) != 0 ? from.text() : into.text(),
+        done ? from.done() : into.done(),
+        (fields & MIGRATED) != 0 ? from.migrated() : into.migrated(),
+        into.createdAt(),
+        done ? from.completedAt() : into.completedAt(),
+        (fields & PRIORITY) != 0 ? from.priority() : into.priority(),
+        (fields & PARENT) != 0 ? from.parentId() : into.parentId(),
+        into.workspace());
+  }
+}
@@ -1,5 +1,6 @@
 package io.olmosjt.terminaltodo.backend;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -12,6 +13,20 @@ import java.util.UUID;
 public class Task {
   public enum Priority { LOW, NORMAL, HIGH, CRITICAL }
 
+  /**
+   * Deepest subtask nesting (a top-level task is depth 0). New subtasks are refused past it and the
+   * recursive queries stop there, which also bounds them on a parent cycle from a bad import.
+   */
+  public static final int MAX_DEPTH = 32;
+
+  /** Workspace of rows written before workspaces existed, and of tasks nobody assigned one. */
+  public static final String DEFAULT_WORKSPACE = "default";
+
+  /** Whether {@code name} can name a workspace: 1-50 letters, digits, '-' or '_'. */
+  public static boolean isWorkspaceName(String name) {
+    return name.matches("[A-Za-z0-9_-]{1,50}");
+  }
+
   private String id;
   private String text;
   private boolean isDone;
@@ -20,13 +35,92 @@ public class Task {
   private LocalDateTime completedAt;
   private Priority priority = Priority.NORMAL;
   private List<Task> subTasks = new ArrayList<>();
+  // Named list the task belongs to; a subtask always shares its top-level task's. Fixed once written.
+  private String workspace = DEFAULT_WORKSPACE;
+
+  // Change tracking: a task is "persisted" once its row exists in the DB; dirtyFields holds the
+  // columns changed since the last write, as SyncChange field bits.
+  private boolean persisted;
+  @Setter(AccessLevel.NONE)
+  private int dirtyFields;
 
   public Task(String text, Priority priority) {
-    this.id = UUID.randomUUID().toString().substring(0, 8);
+    this.id = newId();
     this.text = text;
     this.priority = priority;
     this.isDone = false;
     this.isMigrated = false;
     this.createdAt = LocalDateTime.now();
   }
-}
\ No newline at end of file
+
+  /** 8 hex chars cut from a random UUID; see {@link IdPool} for collisions. */
+  public static String newId() {
+    return UUID.randomUUID().toString().substring(0, 8);
+  }
+
+  public void setText(String text) {
+    this.text = text;
+    this.dirtyFields |= SyncChange.TEXT;
+  }
+
+  public void setDone(boolean done) {
+    this.isDone = done;
+    this.dirtyFields |= SyncChange.DONE;
+  }
+
+  public void setMigrated(boolean migrated) {
+    this.isMigrated = migrated;
+    this.dirtyFields |= SyncChange.MIGRATED;
+  }
+
+  public void setCompletedAt(LocalDateTime completedAt) {
+    this.completedAt = completedAt;
+    this.dirtyFields |= SyncChange.DONE;
+  }
+
+  public void setPriority(Priority priority) {
+    this.priority = priority;
+    this.dirtyFields |= SyncChange.PRIORITY;
+  }
+
+  /** Whether a column changed since the last write. */
+  public boolean isDirty() {
+    return dirtyFields != 0;
+  }
+
+  /** Toggles the whole subtree: this task and every descendant become done at {@code at}, or open. */
+  public void setDoneWithSubtasks(boolean done, LocalDateTime at) {
+    setDone(done);
+    setCompletedAt(done ? at : null);
+    for (Task sub : subTasks) {
+      sub.setDoneWithSubtasks(done, at);
+    }
+  }
+
+  /** Records a migration the DB already holds, so no write is queued for it. */
+  public void migrated() {
+    this.isMigrated = true;
+    this.dirtyFields &= ~SyncChange.MIGRATED;
+  }
+
+  /**
+   * Takes the given {@link SyncChange} fields from {@code row}, a newer state of this task already
+   * in the DB, without marking them changed. Other pending changes stay marked.
+   */
+  public void applyRow(TaskRow row, int fields) {
+    if ((fields & SyncChange.TEXT) != 0) this.text = row.text();
+    if ((fields & SyncChange.DONE) != 0) {
+      this.isDone = row.done();
+      this.completedAt = row.completedAt();
+    }
+    if ((fields & SyncChange.MIGRATED) != 0) this.isMigrated = row.migrated();
+    if ((fields & SyncChange.PRIORITY) != 0) this.priority = row.priority();
+    this.dirtyFields &= ~fields;
+  }
+
+  /** Called after the row has been written (or read) so the task matches the DB. */
+  public void markClean() {
+    this.persisted = true;
+    this.dirtyFields = 0;
+  }
+}
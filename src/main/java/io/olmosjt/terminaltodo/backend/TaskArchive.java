@@ -0,0 +1,369 @@
+package io.olmosjt.terminaltodo.backend;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Cold tier for finished history. Archived tasks live in append-only segment files next to the
+ * H2 database: each segment holds one Deflate-compressed block per day plus a footer indexing the
+ * blocks by date, and is never modified once written. Reads map the segment and inflate straight
+ * from the mapped buffer, so a day is decoded without copying the file into the heap first.
+ *
+ * <p>Segment layout: {@code block* entry* count:int magic:int}, where an entry is
+ * {@code epochDay:long offset:long compressedLength:int rawLength:int}. Rows inside a block are in
+ * pre-order, each subtask right after its parent.
+ *
+ * <p>Since segments are never rewritten, deleting an archived task appends its id to
+ * {@code deleted.ids} (one {@code writeUTF} per id), and reads leave those rows and their
+ * subtrees out.
+ */
+public final class TaskArchive {
+  // Next to the database file; an in-memory database (tests) has none, so the working directory.
+  static final Path DIR = (Database.DB_PATH.startsWith("mem:")
+      ? Path.of("").toAbsolutePath()
+      : Path.of(Database.DB_PATH).toAbsolutePath().getParent()).resolve(".daily_plan_archive");
+
+  private static final int MAGIC = 0x54415243; // "TARC"
+  private static final int ENTRY_BYTES = 8 + 8 + 4 + 4;
+  private static final String SUFFIX = ".seg";
+  private static final String DELETED = "deleted.ids";
+  private static final Task.Priority[] PRIORITIES = Task.Priority.values();
+
+  private static final int FLAG_DONE = 1, FLAG_MIGRATED = 2, FLAG_COMPLETED = 4, FLAG_SUBTASK = 8;
+  // Set on rows two or more levels deep, followed by the depth byte. Older segments never set it.
+  private static final int FLAG_NESTED = 16;
+  // Set on top-level rows outside the default workspace, followed by its name; subtasks inherit it.
+  private static final int FLAG_WORKSPACE = 32;
+  // Set when each timestamp is followed by its nano-of-second; older segments kept whole seconds.
+  private static final int FLAG_NANOS = 64;
+
+  private record Block(MappedByteBuffer segment, long offset, int compressedLength, int rawLength) {}
+
+  // Day -> blocks, across all segments in write order; built on first use.
+  private static TreeMap<LocalDate, List<Block>> index;
+  private static int lastSegment;
+  // Ids deleted after they were archived; loaded with the index.
+  private static Set<String> deleted;
+
+  private TaskArchive() {}
+
+  /**
+   * Writes the given top-level tasks (with their subtasks) as a new segment, one block per
+   * creation day. The segment is forced to disk and renamed into place before this returns, so
+   * callers can delete the hot rows afterwards.
+   */
+  public static synchronized void append(List<Task> topLevel) throws IOException {
+    if (topLevel.isEmpty()) return;
+    ensureIndex();
+
+    Map<LocalDate, List<Task>> byDay = new TreeMap<>();
+    for (Task t : topLevel) {
+      byDay.computeIfAbsent(t.getCreatedAt().toLocalDate(), d -> new ArrayList<>()).add(t);
+    }
+
+    Files.createDirectories(DIR);
+    int number = lastSegment + 1;
+    Path target = DIR.resolve(String.format("segment-%06d%s", number, SUFFIX));
+    Path tmp = DIR.resolve(target.getFileName() + ".tmp");
+
+    ByteBuffer footer = ByteBuffer.allocate(byDay.size() * ENTRY_BYTES + 8).order(ByteOrder.BIG_ENDIAN);
+    Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+    try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      long offset = 0;
+      for (Map.Entry<LocalDate, List<Task>> day : byDay.entrySet()) {
+        byte[] raw = encode(day.getValue());
+        byte[] compressed = deflate(deflater, raw);
+        writeFully(ch, ByteBuffer.wrap(compressed));
+
+        footer.putLong(day.getKey().toEpochDay());
+        footer.putLong(offset);
+        footer.putInt(compressed.length);
+        footer.putInt(raw.length);
+        offset += compressed.length;
+      }
+      footer.putInt(byDay.size());
+      footer.putInt(MAGIC);
+      footer.flip();
+      writeFully(ch, footer);
+      ch.force(true);
+    } finally {
+      deflater.end();
+    }
+    Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+
+    lastSegment = number;
+    loadSegment(target);
+  }
+
+  /** Archived top-level tasks created on {@code day}, with their subtasks; later segments win on id. */
+  public static synchronized List<Task> readDay(LocalDate day) throws IOException {
+    ensureIndex();
+    List<Block> blocks = index.get(day);
+    if (blocks == null) return List.of();
+
+    Map<String, Task> byId = new LinkedHashMap<>();
+    Inflater inflater = new Inflater();
+    try {
+      for (Block b : blocks) {
+        for (Task t : decode(inflate(inflater, b))) {
+          byId.put(t.getId(), t);
+        }
+      }
+    } finally {
+      inflater.end();
+    }
+    List<Task> result = new ArrayList<>();
+    for (Task t : byId.values()) {
+      if (deleted.contains(t.getId())) continue;
+      dropDeleted(t);
+      result.add(t);
+    }
+    return result;
+  }
+
+  /**
+   * Records that the given rows were deleted, so reads stop returning them (and whatever sits
+   * below them) from segments already written. Forced to disk before this returns; a no-op while
+   * nothing is archived.
+   */
+  public static synchronized void markDeleted(Collection<String> ids) throws IOException {
+    ensureIndex();
+    if (index.isEmpty() || ids.isEmpty()) return;
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    for (String id : ids) {
+      out.writeUTF(id);
+    }
+    try (FileChannel ch = FileChannel.open(DIR.resolve(DELETED), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.APPEND)) {
+      writeFully(ch, ByteBuffer.wrap(bytes.toByteArray()));
+      ch.force(false);
+    }
+    deleted.addAll(ids);
+  }
+
+  private static void dropDeleted(Task t) {
+    t.getSubTasks().removeIf(sub -> deleted.contains(sub.getId()));
+    for (Task sub : t.getSubTasks()) {
+      dropDeleted(sub);
+    }
+  }
+
+  /** Days that have archived tasks, oldest first. */
+  public static synchronized List<LocalDate> days() throws IOException {
+    ensureIndex();
+    return new ArrayList<>(index.keySet());
+  }
+
+  private static void ensureIndex() throws IOException {
+    if (index != null) return;
+    index = new TreeMap<>();
+    deleted = new HashSet<>();
+    if (!Files.isDirectory(DIR)) return;
+
+    List<Path> segments = new ArrayList<>();
+    try (DirectoryStream<Path> dir = Files.newDirectoryStream(DIR, "segment-*" + SUFFIX)) {
+      dir.forEach(segments::add);
+    }
+    segments.sort(null);
+    for (Path segment : segments) {
+      String name = segment.getFileName().toString();
+      lastSegment = Math.max(lastSegment, Integer.parseInt(name.substring(8, name.length() - SUFFIX.length())));
+      try {
+        loadSegment(segment);
+      } catch (IOException e) {
+        e.printStackTrace(); // one damaged segment must not hide the others
+      }
+    }
+    loadDeleted();
+  }
+
+  /** Reads the deleted ids; a torn id at the end (a crash mid-append) is cut off. */
+  private static void loadDeleted() throws IOException {
+    Path file = DIR.resolve(DELETED);
+    if (!Files.exists(file)) return;
+    byte[] bytes = Files.readAllBytes(file);
+    ByteArrayInputStream raw = new ByteArrayInputStream(bytes);
+    DataInputStream in = new DataInputStream(raw);
+    int valid = 0;
+    while (raw.available() > 0) {
+      try {
+        deleted.add(in.readUTF());
+      } catch (IOException e) {
+        break;
+      }
+      valid = bytes.length - raw.available();
+    }
+    if (valid < bytes.length) {
+      try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+        ch.truncate(valid);
+      }
+    }
+  }
+
+  /** Maps a segment and registers its footer entries in the day index. */
+  private static void loadSegment(Path segment) throws IOException {
+    MappedByteBuffer map;
+    try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.READ)) {
+      map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+    }
+    int size = map.capacity();
+    if (size < 8 || map.getInt(size - 4) != MAGIC) {
+      throw new IOException("damaged archive segment " + segment);
+    }
+    int count = map.getInt(size - 8);
+    int entries = size - 8 - count * ENTRY_BYTES;
+    for (int i = 0; i < count; i++) {
+      int at = entries + i * ENTRY_BYTES;
+      LocalDate day = LocalDate.ofEpochDay(map.getLong(at));
+      Block block = new Block(map, map.getLong(at + 8), map.getInt(at + 16), map.getInt(at + 20));
+      index.computeIfAbsent(day, d -> new ArrayList<>()).add(block);
+    }
+  }
+
+  private static byte[] encode(List<Task> tasks) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    for (Task t : tasks) {
+      writeTree(out, t, 0);
+    }
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  private static void writeTree(DataOutputStream out, Task t, int depth) throws IOException {
+    writeRow(out, t, depth);
+    if (depth == Task.MAX_DEPTH) return;
+    for (Task sub : t.getSubTasks()) {
+      writeTree(out, sub, depth + 1);
+    }
+  }
+
+  private static void writeRow(DataOutputStream out, Task t, int depth) throws IOException {
+    int flags = (t.isDone() ? FLAG_DONE : 0) | (t.isMigrated() ? FLAG_MIGRATED : 0)
+        | (t.getCompletedAt() != null ? FLAG_COMPLETED : 0) | (depth > 0 ? FLAG_SUBTASK : 0)
+        | (depth > 1 ? FLAG_NESTED : 0) | FLAG_NANOS;
+    boolean otherWorkspace = depth == 0 && !Task.DEFAULT_WORKSPACE.equals(t.getWorkspace());
+    if (otherWorkspace) flags |= FLAG_WORKSPACE;
+    out.writeByte(flags);
+    if (depth > 1) out.writeByte(depth);
+    if (otherWorkspace) out.writeUTF(t.getWorkspace());
+    out.writeUTF(t.getId());
+    out.writeUTF(t.getText() != null ? t.getText() : "");
+    writeTime(out, t.getCreatedAt());
+    if (t.getCompletedAt() != null) writeTime(out, t.getCompletedAt());
+    out.writeByte(t.getPriority().ordinal());
+  }
+
+  private static List<Task> decode(byte[] raw) throws IOException {
+    List<Task> topLevel = new ArrayList<>();
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw));
+    // path[d] is the last row read at depth d, the parent of whatever comes next at d + 1.
+    Task[] path = new Task[Task.MAX_DEPTH + 1];
+    int top = -1;
+    while (in.available() > 0) {
+      int flags = in.readUnsignedByte();
+      int depth = (flags & FLAG_NESTED) != 0 ? in.readUnsignedByte() : (flags & FLAG_SUBTASK) != 0 ? 1 : 0;
+      Task t = new Task();
+      if ((flags & FLAG_WORKSPACE) != 0) t.setWorkspace(in.readUTF());
+      t.setId(in.readUTF());
+      t.setText(in.readUTF());
+      t.setDone((flags & FLAG_DONE) != 0);
+      t.setMigrated((flags & FLAG_MIGRATED) != 0);
+      boolean nanos = (flags & FLAG_NANOS) != 0;
+      t.setCreatedAt(readTime(in, nanos));
+      if ((flags & FLAG_COMPLETED) != 0) {
+        t.setCompletedAt(readTime(in, nanos));
+      }
+      t.setPriority(PRIORITIES[in.readUnsignedByte()]);
+      // Not marked clean: the row is not in the table, so saving it after an edit inserts it whole.
+
+      depth = Math.min(depth, top + 1);
+      if (depth > Task.MAX_DEPTH) throw new IOException("archive row nested too deep");
+      if (depth == 0) {
+        topLevel.add(t);
+      } else {
+        t.setWorkspace(path[0].getWorkspace());
+        path[depth - 1].getSubTasks().add(t);
+      }
+      path[depth] = t;
+      top = depth;
+    }
+    return topLevel;
+  }
+
+  private static void writeTime(DataOutputStream out, LocalDateTime t) throws IOException {
+    out.writeLong(t.toEpochSecond(ZoneOffset.UTC));
+    out.writeInt(t.getNano());
+  }
+
+  private static LocalDateTime readTime(DataInputStream in, boolean nanos) throws IOException {
+    long seconds = in.readLong();
+    return LocalDateTime.ofEpochSecond(seconds, nanos ? in.readInt() : 0, ZoneOffset.UTC);
+  }
+
+  private static byte[] deflate(Deflater deflater, byte[] raw) {
+    deflater.reset();
+    deflater.setInput(raw);
+    deflater.finish();
+    ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 64);
+    byte[] chunk = new byte[8192];
+    while (!deflater.finished()) {
+      out.write(chunk, 0, deflater.deflate(chunk));
+    }
+    return out.toByteArray();
+  }
+
+  /** Inflates a block directly from the mapped segment; only the decoded bytes land on the heap. */
+  private static byte[] inflate(Inflater inflater, Block b) throws IOException {
+    inflater.reset();
+    inflater.setInput(b.segment().slice((int) b.offset(), b.compressedLength()));
+    byte[] raw = new byte[b.rawLength()];
+    try {
+      int n = 0;
+      while (n < raw.length && !inflater.finished()) {
+        int r = inflater.inflate(raw, n, raw.length - n);
+        if (r == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IOException("truncated archive block");
+        }
+        n += r;
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("corrupt archive block", e);
+    }
+    return raw;
+  }
+
+  private static void writeFully(FileChannel ch, ByteBuffer buf) throws IOException {
+    while (buf.hasRemaining()) {
+      ch.write(buf);
+    }
+  }
+}
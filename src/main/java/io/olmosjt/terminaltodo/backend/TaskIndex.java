@@ -0,0 +1,97 @@
+package io.olmosjt.terminaltodo.backend;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Sorted id index over the loaded tasks and their subtasks, at any depth. Prefix lookups walk the
+ * {@link TreeMap} from the prefix onwards, so they cost O(log n + matches) instead of a scan,
+ * and they report every match so callers can reject ambiguous prefixes.
+ */
+public class TaskIndex {
+  private final NavigableMap<String, Task> byId = new TreeMap<>();
+  private final Map<Task, Task> parents = new IdentityHashMap<>();
+
+  /** Indexes a top-level task together with its whole subtree. */
+  public void add(Task task) {
+    byId.put(task.getId(), task);
+    for (Task sub : task.getSubTasks()) {
+      addSubTask(task, sub);
+    }
+  }
+
+  /** Indexes a subtask (and everything below it) under {@code parent}. */
+  public void addSubTask(Task parent, Task sub) {
+    byId.put(sub.getId(), sub);
+    parents.put(sub, parent);
+    for (Task child : sub.getSubTasks()) {
+      addSubTask(sub, child);
+    }
+  }
+
+  /** Removes a task (top-level or subtask) and its whole subtree. */
+  public void remove(Task task) {
+    byId.remove(task.getId(), task);
+    parents.remove(task);
+    for (Task sub : task.getSubTasks()) {
+      remove(sub);
+    }
+  }
+
+  public void clear() {
+    byId.clear();
+    parents.clear();
+  }
+
+  public Task get(String id) {
+    return byId.get(id);
+  }
+
+  /** Parent of an indexed subtask, or {@code null} for a top-level task. */
+  public Task parentOf(Task task) {
+    return parents.get(task);
+  }
+
+  /** The top-level task an indexed task sits under, or the task itself. */
+  public Task rootOf(Task task) {
+    for (Task p = parents.get(task); p != null; p = parents.get(p)) {
+      task = p;
+    }
+    return task;
+  }
+
+  /** Levels above an indexed task: 0 for top-level, 1 for its subtasks, and so on. */
+  public int depthOf(Task task) {
+    int depth = 0;
+    for (Task p = parents.get(task); p != null; p = parents.get(p)) {
+      depth++;
+    }
+    return depth;
+  }
+
+  /** Up to {@code limit} tasks whose id starts with {@code prefix}, in id order. */
+  public List<Task> findByPrefix(String prefix, int limit) {
+    List<Task> matches = new ArrayList<>();
+    for (Map.Entry<String, Task> e : byId.tailMap(prefix, true).entrySet()) {
+      if (!e.getKey().startsWith(prefix) || matches.size() == limit) break;
+      matches.add(e.getValue());
+    }
+    return matches;
+  }
+
+  /** Re-rolls the id of a freshly created task from {@code ids} until it does not collide with an indexed one. */
+  public void ensureUniqueId(Task task, Supplier<String> ids) {
+    while (byId.containsKey(task.getId())) {
+      task.setId(ids.get());
+    }
+  }
+
+  public int size() {
+    return byId.size();
+  }
+}
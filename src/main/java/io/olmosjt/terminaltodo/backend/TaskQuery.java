@@ -0,0 +1,62 @@
+package io.olmosjt.terminaltodo.backend;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A filter over task rows, compiled by {@link DataService#queryTasks} into one parameterized
+ * {@code WHERE} clause. Every field is optional ({@code null} or empty means "any") and the
+ * predicates are ANDed. Only which predicates are present shapes the SQL text; the values are
+ * bound as parameters, so repeated queries of the same shape reuse one prepared statement.
+ *
+ * @param priorities any of these priorities
+ * @param done       finished / unfinished
+ * @param since      created on or after this day
+ * @param until      created on or before this day
+ * @param parent     {@link #TOP_LEVEL}, {@link #ANY_PARENT}, or an id prefix of the parent
+ * @param words      each must occur in the text, case-insensitively
+ * @param limit      at most this many top-level tasks come back
+ */
+public record TaskQuery(Set<Task.Priority> priorities, Boolean done, LocalDate since, LocalDate until,
+                        String parent, List<String> words, int limit) {
+  /** {@code parent} value matching top-level rows only. */
+  public static final String TOP_LEVEL = "";
+  /** {@code parent} value matching subtasks only. */
+  public static final String ANY_PARENT = "*";
+
+  /** SQL conditions on one row of {@code tasks}, in the order {@link #bind} sets them. */
+  String where() {
+    StringBuilder sql = new StringBuilder("TRUE");
+    if (!priorities.isEmpty()) sql.append(" AND priority = ANY(?)");
+    if (done != null) sql.append(" AND COALESCE(is_done, FALSE) = ?");
+    if (since != null) sql.append(" AND created_at >= ?");
+    if (until != null) sql.append(" AND created_at < ?");
+    if (TOP_LEVEL.equals(parent)) sql.append(" AND parent_id IS NULL");
+    else if (ANY_PARENT.equals(parent)) sql.append(" AND parent_id IS NOT NULL");
+    else if (parent != null) sql.append(" AND parent_id LIKE ? ESCAPE '\\'");
+    for (int i = 0; i < words.size(); i++) sql.append(" AND LOWER(text) LIKE ? ESCAPE '\\'");
+    return sql.toString();
+  }
+
+  /** Binds the values of {@link #where()} starting at parameter 1; returns the next free index. */
+  int bind(PreparedStatement ps) throws SQLException {
+    int i = 1;
+    if (!priorities.isEmpty()) ps.setObject(i++, priorities.stream().map(Enum::name).toArray());
+    if (done != null) ps.setBoolean(i++, done);
+    if (since != null) ps.setTimestamp(i++, Timestamp.valueOf(since.atStartOfDay()));
+    if (until != null) ps.setTimestamp(i++, Timestamp.valueOf(until.plusDays(1).atStartOfDay()));
+    if (parent != null && !TOP_LEVEL.equals(parent) && !ANY_PARENT.equals(parent)) {
+      ps.setString(i++, escapeLike(parent) + "%");
+    }
+    for (String word : words) ps.setString(i++, "%" + escapeLike(word.toLowerCase()) + "%");
+    return i;
+  }
+
+  static String escapeLike(String s) {
+    return s.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+  }
+}
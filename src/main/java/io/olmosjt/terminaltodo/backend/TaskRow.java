@@ -0,0 +1,37 @@
+package io.olmosjt.terminaltodo.backend;
+
+import java.time.LocalDateTime;
+
+/**
+ * Immutable copy of one {@code tasks} row. Taken on the FX thread so background writers never
+ * read a {@link Task} while the UI is mutating it. {@code workspace} is only {@code null} for an
+ * imported record that did not name one.
+ */
+public record TaskRow(String id, String text, boolean done, boolean migrated,
+                      LocalDateTime createdAt, LocalDateTime completedAt,
+                      Task.Priority priority, String parentId, String workspace) {
+
+  public static TaskRow of(Task t, String parentId) {
+    return new TaskRow(t.getId(), t.getText(), t.isDone(), t.isMigrated(),
+        t.getCreatedAt(), t.getCompletedAt(), t.getPriority(), parentId, t.getWorkspace());
+  }
+
+  /** A task for this row as it is stored, with no subtasks attached. */
+  public Task toTask() {
+    Task t = new Task();
+    t.setId(id);
+    t.setText(text);
+    t.setDone(done);
+    t.setMigrated(migrated);
+    t.setCreatedAt(createdAt);
+    t.setCompletedAt(completedAt);
+    t.setPriority(priority);
+    t.setWorkspace(workspace);
+    t.markClean();
+    return t;
+  }
+
+  public TaskRow withWorkspace(String workspace) {
+    return new TaskRow(id, text, done, migrated, createdAt, completedAt, priority, parentId, workspace);
+  }
+}
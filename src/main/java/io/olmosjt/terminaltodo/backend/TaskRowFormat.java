@@ -0,0 +1,275 @@
+package io.olmosjt.terminaltodo.backend;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Line formats for {@code !export} / {@code !import}: one {@link TaskRow} per record, subtasks
+ * as their own rows pointing at the parent. Files written before workspaces existed have no
+ * workspace field and still parse; such rows are imported into the active workspace. Both codecs are hand-rolled and stream one record at
+ * a time, so neither side ever holds the whole file.
+ */
+enum TaskRowFormat {
+  /** One flat JSON object per line. */
+  JSONL {
+    @Override
+    String header() {
+      return null;
+    }
+
+    @Override
+    String format(TaskRow r) {
+      StringBuilder sb = new StringBuilder(128).append('{');
+      jsonField(sb, "id", r.id()).append(',');
+      jsonField(sb, "text", r.text()).append(',');
+      sb.append("\"done\":").append(r.done()).append(',');
+      sb.append("\"migrated\":").append(r.migrated()).append(',');
+      jsonField(sb, "createdAt", str(r.createdAt())).append(',');
+      jsonField(sb, "completedAt", str(r.completedAt())).append(',');
+      jsonField(sb, "priority", r.priority().name()).append(',');
+      jsonField(sb, "parentId", r.parentId()).append(',');
+      jsonField(sb, "workspace", r.workspace());
+      return sb.append('}').toString();
+    }
+
+    @Override
+    String readRecord(BufferedReader in) throws IOException {
+      String line;
+      do {
+        line = in.readLine();
+      } while (line != null && line.isBlank());
+      return line;
+    }
+
+    @Override
+    TaskRow parse(String record) {
+      Map<String, String> f = parseJsonObject(record);
+      return row(f.get("id"), f.get("text"), f.get("done"), f.get("migrated"),
+          f.get("createdAt"), f.get("completedAt"), f.get("priority"), f.get("parentId"), f.get("workspace"));
+    }
+  },
+
+  /** RFC 4180 CSV with a header row; quoted fields may span lines. */
+  CSV {
+    @Override
+    String header() {
+      return "id,text,done,migrated,created_at,completed_at,priority,parent_id,workspace";
+    }
+
+    @Override
+    String format(TaskRow r) {
+      return String.join(",", csv(r.id()), csv(r.text()), String.valueOf(r.done()), String.valueOf(r.migrated()),
+          csv(str(r.createdAt())), csv(str(r.completedAt())), r.priority().name(), csv(r.parentId()),
+          csv(r.workspace()));
+    }
+
+    @Override
+    String readRecord(BufferedReader in) throws IOException {
+      String line;
+      do {
+        line = in.readLine();
+      } while (line != null && line.isBlank());
+      if (line == null) return null;
+      StringBuilder record = new StringBuilder(line);
+      while (quoteCount(record) % 2 != 0) {
+        String next = in.readLine();
+        if (next == null) break;
+        record.append('\n').append(next);
+      }
+      if (record.toString().equals(header()) || record.toString().equals(LEGACY_CSV_HEADER)) return readRecord(in);
+      return record.toString();
+    }
+
+    @Override
+    TaskRow parse(String record) {
+      List<String> f = parseCsvRecord(record);
+      if (f.size() != 8 && f.size() != 9) throw new IllegalArgumentException("expected 9 fields, got " + f.size());
+      return row(f.get(0), f.get(1), f.get(2), f.get(3), f.get(4), f.get(5), f.get(6), f.get(7),
+          f.size() == 9 ? f.get(8) : null);
+    }
+  };
+
+  // Header of CSV exports from before the workspace column.
+  private static final String LEGACY_CSV_HEADER = "id,text,done,migrated,created_at,completed_at,priority,parent_id";
+
+  /** First line of the file, or {@code null} when the format has none. */
+  abstract String header();
+
+  abstract String format(TaskRow r);
+
+  /** Next raw record, or {@code null} at end of input. */
+  abstract String readRecord(BufferedReader in) throws IOException;
+
+  /** @throws IllegalArgumentException for a malformed record */
+  abstract TaskRow parse(String record);
+
+  static TaskRowFormat forFile(String fileName) {
+    return fileName.toLowerCase().endsWith(".csv") ? CSV : JSONL;
+  }
+
+  private static TaskRow row(String id, String text, String done, String migrated, String createdAt,
+                             String completedAt, String priority, String parentId, String workspace) {
+    if (id == null || id.isEmpty()) throw new IllegalArgumentException("missing id");
+    if (createdAt == null || createdAt.isEmpty()) throw new IllegalArgumentException("missing createdAt");
+    try {
+      return new TaskRow(id, text, Boolean.parseBoolean(done), Boolean.parseBoolean(migrated),
+          LocalDateTime.parse(createdAt),
+          completedAt == null || completedAt.isEmpty() ? null : LocalDateTime.parse(completedAt),
+          priority == null || priority.isEmpty() ? Task.Priority.NORMAL : Task.Priority.valueOf(priority),
+          parentId == null || parentId.isEmpty() ? null : parentId,
+          workspace == null || workspace.isEmpty() ? null : workspace);
+    } catch (RuntimeException e) {
+      throw new IllegalArgumentException(e.getMessage(), e);
+    }
+  }
+
+  private static String str(LocalDateTime t) {
+    return t != null ? t.toString() : null;
+  }
+
+  private static StringBuilder jsonField(StringBuilder sb, String name, String value) {
+    sb.append('"').append(name).append("\":");
+    if (value == null) return sb.append("null");
+    sb.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"' -> sb.append("\\\"");
+        case '\\' -> sb.append("\\\\");
+        case '\n' -> sb.append("\\n");
+        case '\r' -> sb.append("\\r");
+        case '\t' -> sb.append("\\t");
+        default -> {
+          if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+          else sb.append(c);
+        }
+      }
+    }
+    return sb.append('"');
+  }
+
+  /** Parses a flat object of string, boolean and null values; literals are returned as text. */
+  private static Map<String, String> parseJsonObject(String s) {
+    Map<String, String> fields = new HashMap<>();
+    int[] pos = {skipWs(s, 0)};
+    expect(s, pos, '{');
+    if (peek(s, pos) == '}') return fields;
+    while (true) {
+      String key = readJsonString(s, pos);
+      expect(s, pos, ':');
+      String value = peek(s, pos) == '"' ? readJsonString(s, pos) : readLiteral(s, pos);
+      fields.put(key, value);
+      char next = peek(s, pos);
+      pos[0]++;
+      if (next == '}') return fields;
+      if (next != ',') throw new IllegalArgumentException("expected ',' or '}' at " + (pos[0] - 1));
+    }
+  }
+
+  private static String readJsonString(String s, int[] pos) {
+    expect(s, pos, '"');
+    StringBuilder sb = new StringBuilder();
+    for (int i = pos[0]; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"') {
+        pos[0] = i + 1;
+        return sb.toString();
+      }
+      if (c != '\\') {
+        sb.append(c);
+        continue;
+      }
+      if (++i >= s.length()) break;
+      char e = s.charAt(i);
+      switch (e) {
+        case 'n' -> sb.append('\n');
+        case 'r' -> sb.append('\r');
+        case 't' -> sb.append('\t');
+        case 'b' -> sb.append('\b');
+        case 'f' -> sb.append('\f');
+        case 'u' -> {
+          if (i + 4 >= s.length()) throw new IllegalArgumentException("bad \\u escape");
+          sb.append((char) Integer.parseInt(s.substring(i + 1, i + 5), 16));
+          i += 4;
+        }
+        default -> sb.append(e);
+      }
+    }
+    throw new IllegalArgumentException("unterminated string");
+  }
+
+  private static String readLiteral(String s, int[] pos) {
+    int start = pos[0];
+    while (pos[0] < s.length() && ",} \t".indexOf(s.charAt(pos[0])) < 0) pos[0]++;
+    String literal = s.substring(start, pos[0]);
+    if (literal.isEmpty()) throw new IllegalArgumentException("missing value at " + start);
+    return literal.equals("null") ? null : literal;
+  }
+
+  private static void expect(String s, int[] pos, char c) {
+    if (peek(s, pos) != c) throw new IllegalArgumentException("expected '" + c + "' at " + pos[0]);
+    pos[0]++;
+  }
+
+  /** Skips whitespace and returns the next char without consuming it (0 at end of input). */
+  private static char peek(String s, int[] pos) {
+    pos[0] = skipWs(s, pos[0]);
+    return pos[0] < s.length() ? s.charAt(pos[0]) : 0;
+  }
+
+  private static int skipWs(String s, int i) {
+    while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+    return i;
+  }
+
+  /** Empty for null, so a null parent and an empty one both round-trip as "no parent". */
+  private static String csv(String value) {
+    if (value == null) return "";
+    if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+      return value;
+    }
+    return '"' + value.replace("\"", "\"\"") + '"';
+  }
+
+  private static List<String> parseCsvRecord(String record) {
+    List<String> fields = new ArrayList<>(8);
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < record.length(); i++) {
+      char c = record.charAt(i);
+      if (quoted) {
+        if (c != '"') {
+          field.append(c);
+        } else if (i + 1 < record.length() && record.charAt(i + 1) == '"') {
+          field.append('"');
+          i++;
+        } else {
+          quoted = false;
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    if (quoted) throw new IllegalArgumentException("unterminated quoted field");
+    fields.add(field.toString());
+    return fields;
+  }
+
+  private static int quoteCount(CharSequence s) {
+    int n = 0;
+    for (int i = 0; i < s.length(); i++) {
+      if (s.charAt(i) == '"') n++;
+    }
+    return n;
+  }
+}
@@ -0,0 +1,32 @@
+package io.olmosjt.terminaltodo.backend;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * What the {@link PersistenceQueue} needs from a storage engine: load a window of tasks, apply a
+ * drained batch of upserts and deletes, and keep settings. {@link H2Storage} backs the app;
+ * {@link JournalStorage} is the append-only alternative measured against it in
+ * {@code StorageBenchmark}. Like {@link DataService}, implementations log failures instead of
+ * throwing, so a bad write never kills the writer thread; {@link #apply} reports whether the batch
+ * committed, so the queue can retry one that did not.
+ */
+interface TaskStorage {
+  /** Same contract as {@link DataService#loadPage}: top-level tasks created in [from, to), with subtasks. */
+  List<Task> loadPage(LocalDate from, LocalDate to);
+
+  /** Scopes later loads and clears to one workspace, like {@link DataService#useWorkspace}. */
+  void useWorkspace(String name);
+
+  /**
+   * Applies the non-call entries of one queue batch, in order, as one unit. Returns false if the
+   * batch did not commit; none of it is then applied.
+   */
+  boolean apply(List<PendingWrite> writes);
+
+  String getSetting(String key, String defaultValue);
+
+  void setSetting(String key, String value);
+
+  void close();
+}
@@ -0,0 +1,228 @@
+package io.olmosjt.terminaltodo.command;
+
+import io.olmosjt.terminaltodo.backend.DataService;
+import io.olmosjt.terminaltodo.backend.PersistenceQueue;
+import io.olmosjt.terminaltodo.backend.Task;
+import io.olmosjt.terminaltodo.backend.TaskRow;
+import io.olmosjt.terminaltodo.metrics.Metrics;
+import io.olmosjt.terminaltodo.sync.SyncClient;
+import io.olmosjt.terminaltodo.sync.SyncServer;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Shell entry point: {@code app add "buy milk [high]"}, {@code app ls --today}, {@code app clear},
+ * each optionally prefixed by {@code --ws NAME} to work in a workspace other than the default, plus
+ * {@code app sync URL} for one sync run and {@code app serve} to run the sync server.
+ * Talks to {@link DataService} directly on the main thread and never loads a {@code javafx.*}
+ * class, so a hook pays for the JVM and the H2 open only.
+ */
+public final class HeadlessCli {
+  private static final Set<String> COMMANDS = Set.of("add", "ls", "clear", "sync", "serve");
+  private static final int DEFAULT_LS_DAYS = 7;
+
+  private HeadlessCli() {}
+
+  /** Whether the arguments name a headless command rather than starting the UI. */
+  public static boolean handles(String[] args) {
+    int command = args.length > 1 && args[0].equals("--ws") ? 2 : 0;
+    return args.length > command && COMMANDS.contains(args[command]);
+  }
+
+  /** @return process exit code */
+  public static int run(String[] args) {
+    PrintStream out = System.out;
+    try {
+      if (args[0].equals("--ws")) {
+        if (!Task.isWorkspaceName(args[1])) return usage();
+        DataService.useWorkspace(args[1]);
+        args = Arrays.copyOfRange(args, 2, args.length);
+      }
+      // One sample per command, seen by a Flight Recorder recording; serve only returns when killed.
+      long start = Metrics.start();
+      int code = switch (args[0]) {
+        case "add" -> add(String.join(" ", List.of(args).subList(1, args.length)).trim(), out);
+        case "ls" -> list(args, out);
+        case "clear" -> {
+          DataService.deleteAllTasks();
+          yield 0;
+        }
+        case "sync" -> args.length == 2 ? sync(args[1], out) : usage();
+        case "serve" -> serve(args);
+        default -> usage();
+      };
+      Metrics.record("cli." + args[0], start);
+      return code;
+    } finally {
+      DataService.shutdown();
+    }
+  }
+
+  private static int add(String line, PrintStream out) {
+    if (line.isEmpty()) return usage();
+    TaskCommand cmd = TaskCommand.parse(line);
+    if (cmd.text().isEmpty()) {
+      System.err.println("empty task text");
+      return 1;
+    }
+    if (cmd.parentPrefix() == null) {
+      Task task = newTask(cmd.text(), cmd.priority());
+      DataService.saveTasks(List.of(task));
+      out.println(task.getId());
+      return 0;
+    }
+
+    List<TaskRow> matches = DataService.findByIdPrefix(cmd.parentPrefix(), 5);
+    if (matches.size() > 1) {
+      System.err.println("ambiguous id '" + cmd.parentPrefix() + "': "
+          + String.join(", ", matches.stream().map(TaskRow::id).toList()) + (matches.size() == 5 ? ", ..." : ""));
+      return 1;
+    }
+    if (matches.isEmpty()) {
+      Task task = newTask(cmd.text() + " (Orphaned subtask)", Task.Priority.NORMAL);
+      DataService.saveTasks(List.of(task));
+      out.println(task.getId());
+      return 0;
+    }
+    if (matches.get(0).parentId() != null && DataService.depthOf(matches.get(0).id()) >= Task.MAX_DEPTH) {
+      System.err.println("'" + matches.get(0).id() + "' is " + Task.MAX_DEPTH + " levels deep; nest elsewhere");
+      return 1;
+    }
+
+    // Loads the parent with its own subtree; saving it inserts the new row under it at any depth.
+    Task parent = DataService.loadTasksByIds(List.of(matches.get(0).id())).get(0);
+    Task sub = newTask(cmd.text(), Task.Priority.NORMAL);
+    sub.setWorkspace(parent.getWorkspace());
+    parent.getSubTasks().add(sub);
+    DataService.saveTasks(List.of(parent));
+    out.println(sub.getId());
+    return 0;
+  }
+
+  /** {@code ls [--today | --days N]}: top-level tasks created in the window, each subtask level indented. */
+  private static int list(String[] args, PrintStream out) {
+    int days = DEFAULT_LS_DAYS;
+    for (int i = 1; i < args.length; i++) {
+      if (args[i].equals("--today")) {
+        days = 1;
+      } else if (args[i].equals("--days") && i + 1 < args.length) {
+        try {
+          days = Math.max(1, Integer.parseInt(args[++i]));
+        } catch (NumberFormatException e) {
+          return usage();
+        }
+      } else {
+        return usage();
+      }
+    }
+
+    LocalDate today = LocalDate.now();
+    for (Task t : DataService.loadPage(today.minusDays(days - 1), today.plusDays(1))) {
+      printTree(t, "", out);
+    }
+    return 0;
+  }
+
+  private static void printTree(Task t, String indent, PrintStream out) {
+    out.println(format(t, indent));
+    for (Task sub : t.getSubTasks()) {
+      printTree(sub, indent + "    ", out);
+    }
+  }
+
+  private static String format(Task t, String indent) {
+    String mark = t.isDone() ? "[x]" : t.isMigrated() ? "[>]" : "[ ]";
+    String priority = t.getPriority() == Task.Priority.NORMAL ? "" : " [" + t.getPriority().name().toLowerCase() + "]";
+    return indent + mark + " " + t.getId() + "  " + t.getText() + priority;
+  }
+
+  /** One push-then-pull run against the server at {@code url}; writes go through the persistence queue. */
+  private static int sync(String url, PrintStream out) {
+    try {
+      SyncClient.Result result = new SyncClient(url, SyncClient.DEFAULT_BATCH_SIZE).sync();
+      out.println("pushed " + result.pushed() + ", pulled " + result.pulled());
+      return 0;
+    } catch (IOException | IllegalArgumentException e) {
+      System.err.println("sync failed: " + e.getMessage());
+      return 1;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return 1;
+    } finally {
+      PersistenceQueue.shutdown();
+    }
+  }
+
+  /**
+   * {@code serve [--bind ADDR] [--port N] [--data FILE]}: runs the sync server until the process is
+   * killed. It listens on loopback unless {@code --bind} says otherwise, which needs a token in
+   * {@link SyncServer#TOKEN_ENV}.
+   */
+  private static int serve(String[] args) {
+    InetAddress bind = InetAddress.getLoopbackAddress();
+    int port = SyncServer.DEFAULT_PORT;
+    Path data = Path.of(System.getProperty("user.home"), ".daily_plan_sync");
+    for (int i = 1; i < args.length; i++) {
+      if (args[i].equals("--port") && i + 1 < args.length) {
+        try {
+          port = Integer.parseInt(args[++i]);
+        } catch (NumberFormatException e) {
+          return usage();
+        }
+      } else if (args[i].equals("--data") && i + 1 < args.length) {
+        data = Path.of(args[++i]);
+      } else if (args[i].equals("--bind") && i + 1 < args.length) {
+        try {
+          bind = InetAddress.getByName(args[++i]);
+        } catch (UnknownHostException e) {
+          return usage();
+        }
+      } else {
+        return usage();
+      }
+    }
+    try {
+      SyncServer server = new SyncServer(bind, port, data, System.getenv(SyncServer.TOKEN_ENV));
+      server.start();
+      Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+      System.out.println("sync server on " + server.address().getHostString() + ":" + server.port() + ", data in " + data);
+      Thread.currentThread().join();
+      return 0;
+    } catch (IOException | IllegalArgumentException e) {
+      System.err.println("serve failed: " + e.getMessage());
+      return 1;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return 1;
+    }
+  }
+
+  /** A task whose id no row of any workspace has yet; the UI draws from its IdPool, here the table is asked. */
+  private static Task newTask(String text, Task.Priority priority) {
+    Task task = new Task(text, priority);
+    task.setWorkspace(DataService.workspace());
+    List<String> fresh = DataService.unusedIds(1);
+    if (!fresh.isEmpty()) task.setId(fresh.get(0));
+    return task;
+  }
+
+  private static int usage() {
+    System.err.println("""
+        usage: app [--ws NAME] add "<text> [high|low|critical|sub:<id>]"
+               app [--ws NAME] ls [--today | --days N]
+               app [--ws NAME] clear
+               app sync http://host:8789
+               app serve [--bind ADDR] [--port N] [--data FILE]
+        sync and serve read the shared token from TERMINALTODO_SYNC_TOKEN;
+        serve requires one to bind beyond loopback.""");
+    return 2;
+  }
+}
@@ -0,0 +1,36 @@
+package io.olmosjt.terminaltodo.command;
+
+import io.olmosjt.terminaltodo.backend.Task;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One parsed task line: {@code "text"}, {@code "text [high]"} or {@code "text [sub:<id>]"}.
+ * Shared by the JavaFX prompt and the headless CLI, so it must not touch {@code javafx.*}.
+ */
+public record TaskCommand(String text, Task.Priority priority, String parentPrefix) {
+  private static final Pattern CMD_PATTERN = Pattern.compile("^(.*?)\\s+\\[([a-zA-Z0-9:]+)\\]$");
+
+  /** Splits "text [tag]" into the task text and what the tag asks for (priority or parent). */
+  public static TaskCommand parse(String input) {
+    Matcher matcher = CMD_PATTERN.matcher(input);
+    if (!matcher.find()) return new TaskCommand(input, Task.Priority.NORMAL, null);
+
+    String text = matcher.group(1).trim();
+    String tag = matcher.group(2).toLowerCase();
+    if (tag.startsWith("sub:")) return new TaskCommand(text, Task.Priority.NORMAL, tag.substring(4));
+    Task.Priority priority = switch (tag) {
+      case "high" -> Task.Priority.HIGH;
+      case "critical" -> Task.Priority.CRITICAL;
+      case "low" -> Task.Priority.LOW;
+      default -> Task.Priority.NORMAL;
+    };
+    return new TaskCommand(text, priority, null);
+  }
+
+  /** {@code clear} / {@code !clear}: delete every task. */
+  public static boolean isClear(String input) {
+    return input.equalsIgnoreCase("clear") || input.equalsIgnoreCase("!clear");
+  }
+}
@@ -0,0 +1,131 @@
+package io.olmosjt.terminaltodo.command;
+
+import io.olmosjt.terminaltodo.backend.Task;
+import io.olmosjt.terminaltodo.backend.TaskQuery;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The {@code !ls} filter grammar: whitespace-separated terms, all of which must hold.
+ * <pre>
+ *   priority:high,critical   (p: for short)
+ *   done:true|false          (yes|no too)
+ *   since:2024-01-31  until:today   (also yesterday, or 7d for seven days ago)
+ *   parent:none|any|&lt;id&gt;    (top-level only, subtasks only, subtasks of that task)
+ *   limit:50                 (default 200, at most 1000)
+ *   milk "whole grain"       (text contains; anything else, including unknown key:value)
+ * </pre>
+ * Must not touch {@code javafx.*}, like the rest of the package.
+ */
+public final class TaskFilter {
+  public static final int DEFAULT_LIMIT = 200;
+  public static final int MAX_LIMIT = 1000;
+
+  private TaskFilter() {}
+
+  /**
+   * @param today what {@code today} and relative days resolve against
+   * @throws IllegalArgumentException naming the first term that does not parse
+   */
+  public static TaskQuery parse(String input, LocalDate today) {
+    Set<Task.Priority> priorities = EnumSet.noneOf(Task.Priority.class);
+    Boolean done = null;
+    LocalDate since = null;
+    LocalDate until = null;
+    String parent = null;
+    List<String> words = new ArrayList<>();
+    int limit = DEFAULT_LIMIT;
+
+    for (String term : split(input)) {
+      int colon = term.indexOf(':');
+      String key = colon > 0 ? term.substring(0, colon).toLowerCase(Locale.ROOT) : "";
+      String value = term.substring(colon + 1);
+      switch (key) {
+        case "priority", "p" -> {
+          for (String name : value.split(",")) priorities.add(priority(name, term));
+        }
+        case "done" -> done = bool(value, term);
+        case "since" -> since = day(value, today, term);
+        case "until" -> until = day(value, today, term);
+        case "parent" -> parent = switch (value.toLowerCase(Locale.ROOT)) {
+          case "none" -> TaskQuery.TOP_LEVEL;
+          case "any" -> TaskQuery.ANY_PARENT;
+          case "" -> throw bad(term);
+          default -> value;
+        };
+        case "limit" -> {
+          try {
+            limit = Integer.parseInt(value);
+          } catch (NumberFormatException e) {
+            throw bad(term);
+          }
+          if (limit < 1 || limit > MAX_LIMIT) throw new IllegalArgumentException("limit must be 1.." + MAX_LIMIT);
+        }
+        default -> words.add(term);
+      }
+    }
+    if (since != null && until != null && since.isAfter(until)) {
+      throw new IllegalArgumentException("since:" + since + " is after until:" + until);
+    }
+    return new TaskQuery(priorities, done, since, until, parent, words, limit);
+  }
+
+  /** Splits on whitespace, keeping {@code "quoted phrases"} together (quotes dropped). */
+  private static List<String> split(String input) {
+    List<String> terms = new ArrayList<>();
+    StringBuilder current = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < input.length(); i++) {
+      char c = input.charAt(i);
+      if (c == '"') {
+        quoted = !quoted;
+      } else if (Character.isWhitespace(c) && !quoted) {
+        if (!current.isEmpty()) terms.add(current.toString());
+        current.setLength(0);
+      } else {
+        current.append(c);
+      }
+    }
+    if (quoted) throw new IllegalArgumentException("unterminated quote");
+    if (!current.isEmpty()) terms.add(current.toString());
+    return terms;
+  }
+
+  private static Task.Priority priority(String name, String term) {
+    try {
+      return Task.Priority.valueOf(name.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw bad(term);
+    }
+  }
+
+  private static boolean bool(String value, String term) {
+    return switch (value.toLowerCase(Locale.ROOT)) {
+      case "true", "yes" -> true;
+      case "false", "no" -> false;
+      default -> throw bad(term);
+    };
+  }
+
+  private static LocalDate day(String value, LocalDate today, String term) {
+    String v = value.toLowerCase(Locale.ROOT);
+    if (v.equals("today")) return today;
+    if (v.equals("yesterday")) return today.minusDays(1);
+    try {
+      if (v.endsWith("d")) return today.minusDays(Integer.parseInt(v.substring(0, v.length() - 1)));
+      return LocalDate.parse(v);
+    } catch (NumberFormatException | DateTimeParseException e) {
+      throw bad(term);
+    }
+  }
+
+  private static IllegalArgumentException bad(String term) {
+    return new IllegalArgumentException("cannot read '" + term + "'");
+  }
+}
@@ -0,0 +1,63 @@
+package io.olmosjt.terminaltodo.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram over nanoseconds. Buckets are log-linear (four per power of two),
+ * so recording is a couple of bit operations and one atomic increment, percentiles are accurate
+ * to within one bucket (about 19%), and memory is fixed whatever the sample count.
+ */
+public final class Histogram {
+  private static final int SUB_BUCKET_BITS = 2;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+  private final AtomicLong max = new AtomicLong();
+
+  public record Snapshot(long count, long p50, long p99, long max) {}
+
+  public void record(long nanos) {
+    long value = Math.max(1, nanos);
+    counts.incrementAndGet(bucketOf(value));
+    max.accumulateAndGet(value, Math::max);
+  }
+
+  public Snapshot snapshot() {
+    long[] copy = new long[counts.length()];
+    long total = 0;
+    for (int i = 0; i < copy.length; i++) {
+      copy[i] = counts.get(i);
+      total += copy[i];
+    }
+    return new Snapshot(total, percentile(copy, total, 0.50), percentile(copy, total, 0.99), max.get());
+  }
+
+  private static long percentile(long[] buckets, long total, double q) {
+    if (total == 0) return 0;
+    long rank = (long) Math.ceil(total * q);
+    long seen = 0;
+    for (int i = 0; i < buckets.length; i++) {
+      seen += buckets[i];
+      if (seen >= rank) return upperBound(i);
+    }
+    return upperBound(buckets.length - 1);
+  }
+
+  /** Octave from the highest set bit, sub-bucket from the next two bits below it. */
+  private static int bucketOf(long value) {
+    int octave = 63 - Long.numberOfLeadingZeros(value);
+    if (octave < SUB_BUCKET_BITS) return (int) value;
+    int sub = (int) (value >>> (octave - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return octave * SUB_BUCKETS + sub;
+  }
+
+  private static long upperBound(int bucket) {
+    int octave = bucket / SUB_BUCKETS;
+    int sub = bucket % SUB_BUCKETS;
+    if (octave < SUB_BUCKET_BITS) return bucket;
+    long base = 1L << octave;
+    long step = base >>> SUB_BUCKET_BITS;
+    return base + (sub + 1) * step - 1;
+  }
+}
@@ -0,0 +1,81 @@
+package io.olmosjt.terminaltodo.metrics;
+
+import jdk.jfr.FlightRecorder;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Always-on timing for named operations. Each sample lands in a per-name {@link Histogram} and,
+ * while a Flight Recorder recording is running, in an {@link OperationEvent}. Gauges hold the
+ * latest value of sampled quantities (node count, pending writes) for {@code !stats} and the
+ * periodic {@link RuntimeStatsEvent}.
+ *
+ * <pre>
+ *   long start = Metrics.start();
+ *   ...
+ *   Metrics.record("db.loadPage", start);
+ * </pre>
+ */
+public final class Metrics {
+  public static final String NODES = "fx.nodes";
+  public static final String PENDING_WRITES = "persistence.pending";
+
+  private static final Map<String, Histogram> timers = new ConcurrentHashMap<>();
+  private static final Map<String, AtomicLong> gauges = new ConcurrentHashMap<>();
+
+  static {
+    try {
+      FlightRecorder.addPeriodicEvent(RuntimeStatsEvent.class, Metrics::emitRuntimeStats);
+    } catch (RuntimeException | Error e) {
+      // No JFR in this runtime image; the histograms still work.
+    }
+  }
+
+  private Metrics() {}
+
+  public static long start() {
+    return System.nanoTime();
+  }
+
+  /** Records the time elapsed since {@code startNanos} (from {@link #start()}) under {@code operation}. */
+  public static void record(String operation, long startNanos) {
+    long elapsed = System.nanoTime() - startNanos;
+    timers.computeIfAbsent(operation, k -> new Histogram()).record(elapsed);
+
+    OperationEvent event = new OperationEvent();
+    if (event.isEnabled()) {
+      event.operation = operation;
+      event.elapsed = elapsed;
+      event.commit();
+    }
+  }
+
+  public static void setGauge(String name, long value) {
+    gauges.computeIfAbsent(name, k -> new AtomicLong()).set(value);
+  }
+
+  public static long gauge(String name) {
+    AtomicLong value = gauges.get(name);
+    return value != null ? value.get() : 0;
+  }
+
+  /** Current percentiles of every timer, by name. */
+  public static Map<String, Histogram.Snapshot> snapshot() {
+    Map<String, Histogram.Snapshot> result = new TreeMap<>();
+    timers.forEach((name, histogram) -> result.put(name, histogram.snapshot()));
+    return result;
+  }
+
+  private static void emitRuntimeStats() {
+    Runtime rt = Runtime.getRuntime();
+    RuntimeStatsEvent event = new RuntimeStatsEvent();
+    event.heapUsed = rt.totalMemory() - rt.freeMemory();
+    event.heapCommitted = rt.totalMemory();
+    event.sceneNodes = gauge(NODES);
+    event.pendingWrites = gauge(PENDING_WRITES);
+    event.commit();
+  }
+}
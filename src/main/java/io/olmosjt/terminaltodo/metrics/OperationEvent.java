@@ -0,0 +1,23 @@
+package io.olmosjt.terminaltodo.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("io.olmosjt.terminaltodo.Operation")
+@Label("TerminalTodo Operation")
+@Description("A timed DB call, command or list rebuild")
+@Category("TerminalTodo")
+@StackTrace(false)
+class OperationEvent extends Event {
+  @Label("Operation")
+  String operation;
+
+  @Label("Elapsed")
+  @Timespan(Timespan.NANOSECONDS)
+  long elapsed;
+}
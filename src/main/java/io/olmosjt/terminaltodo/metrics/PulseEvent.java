@@ -0,0 +1,17 @@
+package io.olmosjt.terminaltodo.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** One JavaFX pulse; the built-in event duration spans CSS and layout (begin/end by the caller). */
+@Name("io.olmosjt.terminaltodo.Pulse")
+@Label("JavaFX Pulse")
+@Description("CSS and layout pass of one JavaFX pulse")
+@Category("TerminalTodo")
+@StackTrace(false)
+public class PulseEvent extends Event {
+}
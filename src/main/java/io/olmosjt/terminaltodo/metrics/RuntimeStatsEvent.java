@@ -0,0 +1,30 @@
+package io.olmosjt.terminaltodo.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+@Name("io.olmosjt.terminaltodo.RuntimeStats")
+@Label("TerminalTodo Runtime Stats")
+@Category("TerminalTodo")
+@Period("1 s")
+@StackTrace(false)
+class RuntimeStatsEvent extends Event {
+  @Label("Heap Used")
+  @DataAmount
+  long heapUsed;
+
+  @Label("Heap Committed")
+  @DataAmount
+  long heapCommitted;
+
+  @Label("Scene Nodes")
+  long sceneNodes;
+
+  @Label("Pending Writes")
+  long pendingWrites;
+}
@@ -0,0 +1,162 @@
+package io.olmosjt.terminaltodo.sync;
+
+import io.olmosjt.terminaltodo.backend.DataService;
+import io.olmosjt.terminaltodo.backend.PersistenceQueue;
+import io.olmosjt.terminaltodo.backend.SyncChange;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Delta sync with a {@link SyncServer}: a run pushes the local changes past the pushed mark, then
+ * pulls the server's changes past the saved cursor, both in compressed batches of
+ * {@code batchSize} rows.
+ *
+ * <p>Runs happen on the client's own thread, and their DB work goes through the
+ * {@link PersistenceQueue} one batch at a time: the next batch is not read (or fetched) before the
+ * previous one was acknowledged (or applied). Memory stays bounded by one batch, and UI writes
+ * interleave between batches rather than waiting for the whole sync. A request made while a run
+ * is in progress folds into one follow-up run.
+ */
+public final class SyncClient {
+  public static final int DEFAULT_BATCH_SIZE = 500;
+  // A run that pulls more rows than this reports only their count.
+  private static final int MAX_REPORTED_CHANGES = 10_000;
+  private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+  /**
+   * Rows sent to the server, and local rows a pull inserted, changed or deleted. {@code changes}
+   * holds those rows' new local state (see {@link DataService#applyPulled}), or is {@code null} when
+   * there were too many to keep; the caller then reloads instead of patching.
+   */
+  public record Result(int pushed, int pulled, List<SyncChange> changes) {}
+
+  private final String baseUrl;
+  private final int batchSize;
+  private final String authorization; // null without a token
+  private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread t = new Thread(r, "sync-client");
+    t.setDaemon(true);
+    return t;
+  });
+  private CompletableFuture<Result> queued; // a run requested but not started yet; guarded by this
+
+  /** A client sending the token from {@link SyncServer#TOKEN_ENV}, if that is set. */
+  public SyncClient(String baseUrl, int batchSize) {
+    this(baseUrl, batchSize, System.getenv(SyncServer.TOKEN_ENV));
+  }
+
+  /**
+   * @param baseUrl server address such as {@code http://host:8789}
+   * @param token the server's shared token, or {@code null} for a server without one
+   */
+  public SyncClient(String baseUrl, int batchSize, String token) {
+    this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    this.batchSize = Math.min(batchSize, SyncCodec.MAX_CHANGES);
+    this.authorization = token != null && !token.isBlank() ? "Bearer " + token : null;
+  }
+
+  /** Schedules a run, or joins the one already waiting to start. */
+  public synchronized CompletableFuture<Result> requestSync() {
+    if (queued == null) {
+      CompletableFuture<Result> run = new CompletableFuture<>();
+      queued = run;
+      executor.execute(() -> {
+        synchronized (this) {
+          queued = null;
+        }
+        try {
+          run.complete(sync());
+        } catch (Exception e) {
+          run.completeExceptionally(e);
+        }
+      });
+    }
+    return queued;
+  }
+
+  /** Requests a run every {@code interval}; {@code onDone} hears how each went. */
+  public void syncEvery(Duration interval, BiConsumer<Result, Throwable> onDone) {
+    long ms = interval.toMillis();
+    executor.scheduleWithFixedDelay(() -> requestSync().whenComplete(onDone), ms, ms, TimeUnit.MILLISECONDS);
+  }
+
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  /** One push-then-pull run on the calling thread; {@link #requestSync()} is the asynchronous way in. */
+  public Result sync() throws IOException, InterruptedException {
+    int pushed = 0;
+    DataService.SyncBatch batch;
+    do {
+      batch = db("sync.pendingChanges", () -> DataService.pendingChanges(batchSize));
+      if (!batch.changes().isEmpty()) {
+        byte[] body = SyncCodec.encode(new SyncCodec.Frame(0, false, batch.changes()));
+        HttpResponse<Void> response = http.send(request("/push")
+            .header("Content-Type", SyncCodec.CONTENT_TYPE)
+            .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+            .build(), HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() / 100 != 2) throw new IOException("push failed: HTTP " + response.statusCode());
+        pushed += batch.changes().size();
+      }
+      long upTo = batch.upTo();
+      db("sync.markPushed", () -> {
+        DataService.markPushed(upTo);
+        return null;
+      });
+    } while (batch.more());
+
+    int pulled = 0;
+    List<SyncChange> changes = new ArrayList<>();
+    long cursor = db("sync.cursor", DataService::syncCursor);
+    SyncCodec.Frame frame;
+    do {
+      HttpResponse<InputStream> response = http.send(
+          request("/pull?since=" + cursor + "&limit=" + batchSize)
+              .GET()
+              .build(), HttpResponse.BodyHandlers.ofInputStream());
+      try (InputStream in = response.body()) {
+        if (response.statusCode() != 200) throw new IOException("pull failed: HTTP " + response.statusCode());
+        frame = SyncCodec.decode(in);
+      }
+      SyncCodec.Frame page = frame;
+      List<SyncChange> applied = db("sync.applyPulled", () -> DataService.applyPulled(page.changes(), page.cursor()));
+      pulled += applied.size();
+      if (changes != null && pulled <= MAX_REPORTED_CHANGES) changes.addAll(applied);
+      else changes = null;
+      cursor = frame.cursor();
+    } while (frame.more());
+    return new Result(pushed, pulled, changes);
+  }
+
+  private HttpRequest.Builder request(String path) {
+    HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(TIMEOUT);
+    if (authorization != null) builder.header("Authorization", authorization);
+    return builder;
+  }
+
+  /** Runs {@code work} on the persistence thread and waits for it. */
+  private static <T> T db(String operation, Callable<T> work) throws IOException {
+    try {
+      return PersistenceQueue.submit(operation, work).join();
+    } catch (CompletionException e) {
+      throw new IOException(operation + " failed", e.getCause());
+    }
+  }
+}
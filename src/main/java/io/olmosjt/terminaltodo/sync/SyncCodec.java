@@ -0,0 +1,119 @@
+package io.olmosjt.terminaltodo.sync;
+
+import io.olmosjt.terminaltodo.backend.SyncChange;
+import io.olmosjt.terminaltodo.backend.Task;
+import io.olmosjt.terminaltodo.backend.TaskRow;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Wire format of the sync protocol, shared by pushes, pulls and the server's data file: one gzip
+ * stream holding {@code magic:int cursor:long more:boolean count:int} and then {@code count}
+ * changes, each {@code id:utf version:long deleted:boolean} followed, for a row, by
+ * {@code fields:byte} and the row itself. A push leaves {@code cursor} and {@code more} unset.
+ */
+final class SyncCodec {
+  static final String CONTENT_TYPE = "application/x-terminaltodo-sync";
+  /** Most changes one frame may hold; a server never has to buffer more than this per request. */
+  static final int MAX_CHANGES = 10_000;
+
+  private static final int MAGIC = 0x5453594e; // "TSYN"
+  private static final Task.Priority[] PRIORITIES = Task.Priority.values();
+
+  record Frame(long cursor, boolean more, List<SyncChange> changes) {}
+
+  private SyncCodec() {}
+
+  static byte[] encode(Frame frame) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes, 1 << 16))) {
+      out.writeInt(MAGIC);
+      out.writeLong(frame.cursor());
+      out.writeBoolean(frame.more());
+      out.writeInt(frame.changes().size());
+      for (SyncChange c : frame.changes()) {
+        out.writeUTF(c.id());
+        out.writeLong(c.version());
+        out.writeBoolean(c.deleted());
+        if (c.deleted()) continue;
+        out.writeByte(c.fields());
+        writeRow(out, c.row());
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  static Frame decode(InputStream raw) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(raw, 1 << 16)));
+    if (in.readInt() != MAGIC) throw new IOException("not a sync frame");
+    long cursor = in.readLong();
+    boolean more = in.readBoolean();
+    int count = in.readInt();
+    if (count < 0 || count > MAX_CHANGES) throw new IOException("sync frame holds " + count + " changes");
+    List<SyncChange> changes = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      String id = in.readUTF();
+      long version = in.readLong();
+      if (in.readBoolean()) {
+        changes.add(SyncChange.deletion(id, version));
+      } else {
+        int fields = in.readUnsignedByte();
+        changes.add(new SyncChange(id, version, false, fields, readRow(in, id)));
+      }
+    }
+    return new Frame(cursor, more, changes);
+  }
+
+  private static void writeRow(DataOutputStream out, TaskRow r) throws IOException {
+    writeString(out, r.text());
+    out.writeBoolean(r.done());
+    out.writeBoolean(r.migrated());
+    writeTime(out, r.createdAt());
+    writeTime(out, r.completedAt());
+    out.writeByte(r.priority().ordinal());
+    writeString(out, r.parentId());
+    out.writeUTF(r.workspace());
+  }
+
+  private static TaskRow readRow(DataInputStream in, String id) throws IOException {
+    String text = readString(in);
+    boolean done = in.readBoolean();
+    boolean migrated = in.readBoolean();
+    LocalDateTime createdAt = readTime(in);
+    LocalDateTime completedAt = readTime(in);
+    int priority = in.readUnsignedByte();
+    if (priority >= PRIORITIES.length) throw new IOException("unknown priority " + priority);
+    return new TaskRow(id, text, done, migrated, createdAt, completedAt, PRIORITIES[priority], readString(in), in.readUTF());
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    out.writeBoolean(s != null);
+    if (s != null) out.writeUTF(s);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static void writeTime(DataOutputStream out, LocalDateTime t) throws IOException {
+    out.writeBoolean(t != null);
+    if (t == null) return;
+    out.writeLong(t.toEpochSecond(ZoneOffset.UTC));
+    out.writeInt(t.getNano());
+  }
+
+  private static LocalDateTime readTime(DataInputStream in) throws IOException {
+    return in.readBoolean() ? LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC) : null;
+  }
+}
@@ -0,0 +1,278 @@
+package io.olmosjt.terminaltodo.sync;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.olmosjt.terminaltodo.backend.SyncChange;
+import io.olmosjt.terminaltodo.backend.TaskRow;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Small sync server for {@link SyncClient}, built on the JDK's {@link HttpServer}. It holds the
+ * merged state of every row any client pushed, each stamped with a version from one server-wide
+ * counter, and an index of rows by version, so a pull is a range read however large the table.
+ * <ul>
+ *   <li>{@code POST /push} merges a frame of client changes field by field (see {@link SyncChange})</li>
+ *   <li>{@code GET /pull?since=V&limit=N} returns the rows changed after version {@code V}, oldest first</li>
+ * </ul>
+ * Deletions win: a deleted row ignores later edits, and its tombstone is kept so every client
+ * hears of it. With a data file, each accepted push is appended to it as one frame and replayed on
+ * start; without one the state lives as long as the process, which is what tests want. Requests
+ * are handled one at a time.
+ *
+ * <p>The server binds to the loopback address unless told otherwise. With a shared token, every
+ * request must carry {@code Authorization: Bearer <token>}; binding to any other address requires
+ * one. The token is read from {@link #TOKEN_ENV} on both ends, so it stays out of command lines.
+ * Plain HTTP does not hide it on the wire: across machines, put the server behind TLS.
+ */
+public final class SyncServer {
+  public static final int DEFAULT_PORT = 8789;
+  public static final String TOKEN_ENV = "TERMINALTODO_SYNC_TOKEN";
+  private static final int MAX_PULL = 5000;
+  private static final int MAX_FRAME_BYTES = 64 << 20;
+
+  private record Entry(long version, boolean deleted, TaskRow row) {}
+
+  private final Map<String, Entry> rows = new HashMap<>();
+  private final NavigableMap<Long, String> byVersion = new TreeMap<>();
+  private long version;
+  private final HttpServer http;
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "sync-server"));
+  private final FileChannel data; // null without a data file
+  private final byte[] authorization; // expected Authorization header; null without a token
+
+  /** A server on the loopback address only, without a token. */
+  public SyncServer(int port, Path dataFile) throws IOException {
+    this(InetAddress.getLoopbackAddress(), port, dataFile, null);
+  }
+
+  /**
+   * @param dataFile where accepted pushes are kept, or {@code null} to keep them in memory only
+   * @param token shared secret clients must send, or {@code null}; required unless {@code bind} is a loopback address
+   */
+  public SyncServer(InetAddress bind, int port, Path dataFile, String token) throws IOException {
+    boolean hasToken = token != null && !token.isBlank();
+    if (!hasToken && !bind.isLoopbackAddress()) {
+      throw new IllegalArgumentException("a sync token (" + TOKEN_ENV + ") is required to listen on " + bind.getHostAddress());
+    }
+    authorization = hasToken ? ("Bearer " + token).getBytes(StandardCharsets.UTF_8) : null;
+    data = dataFile != null ? FileChannel.open(dataFile,
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE) : null;
+    if (data != null) replay();
+    http = HttpServer.create(new InetSocketAddress(bind, port), 0);
+    http.createContext("/push", this::handlePush);
+    http.createContext("/pull", this::handlePull);
+    http.setExecutor(executor);
+  }
+
+  public void start() {
+    http.start();
+  }
+
+  public void stop() {
+    http.stop(0);
+    executor.shutdown();
+    if (data != null) {
+      try {
+        data.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  /** The bound address. */
+  public InetSocketAddress address() {
+    return http.getAddress();
+  }
+
+  /** The bound port; differs from the requested one when that was 0. */
+  public int port() {
+    return http.getAddress().getPort();
+  }
+
+  /** Merges pushed changes; returns the rows that changed, with their new server versions. */
+  synchronized List<SyncChange> push(List<SyncChange> changes) {
+    List<SyncChange> accepted = new ArrayList<>();
+    for (SyncChange c : changes) {
+      Entry current = rows.get(c.id());
+      if (current != null && current.deleted()) continue;
+      Entry next;
+      if (c.deleted()) {
+        if (current == null) continue;
+        next = new Entry(version + 1, true, null);
+      } else if (current == null) {
+        next = new Entry(version + 1, false, c.row());
+      } else {
+        TaskRow merged = SyncChange.merge(current.row(), c.row(), c.fields());
+        if (merged.equals(current.row())) continue;
+        next = new Entry(version + 1, false, merged);
+      }
+      put(c.id(), next);
+      accepted.add(toChange(c.id(), next));
+    }
+    return accepted;
+  }
+
+  /** Up to {@code limit} rows changed after {@code since}; the frame's cursor is the last one's version. */
+  synchronized SyncCodec.Frame pull(long since, int limit) {
+    List<SyncChange> changes = new ArrayList<>();
+    long cursor = since;
+    for (Map.Entry<Long, String> e : byVersion.tailMap(since, false).entrySet()) {
+      if (changes.size() == limit) return new SyncCodec.Frame(cursor, true, changes);
+      changes.add(toChange(e.getValue(), rows.get(e.getValue())));
+      cursor = e.getKey();
+    }
+    return new SyncCodec.Frame(cursor, false, changes);
+  }
+
+  private void put(String id, Entry entry) {
+    Entry previous = rows.put(id, entry);
+    if (previous != null) byVersion.remove(previous.version());
+    byVersion.put(entry.version(), id);
+    version = Math.max(version, entry.version());
+  }
+
+  private static SyncChange toChange(String id, Entry e) {
+    return e.deleted() ? SyncChange.deletion(id, e.version()) : new SyncChange(id, e.version(), false, SyncChange.ALL, e.row());
+  }
+
+  private void handlePush(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      if (!authorized(exchange)) {
+        refuse(exchange);
+        return;
+      }
+      if (!exchange.getRequestMethod().equals("POST")) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      SyncCodec.Frame frame;
+      try (InputStream in = exchange.getRequestBody()) {
+        frame = SyncCodec.decode(in);
+      } catch (IOException | RuntimeException e) {
+        exchange.sendResponseHeaders(400, -1);
+        return;
+      }
+      synchronized (this) {
+        List<SyncChange> accepted = push(frame.changes());
+        if (data != null && !accepted.isEmpty()) append(SyncCodec.encode(new SyncCodec.Frame(0, false, accepted)));
+      }
+      exchange.sendResponseHeaders(204, -1);
+    }
+  }
+
+  private void handlePull(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      if (!authorized(exchange)) {
+        refuse(exchange);
+        return;
+      }
+      if (!exchange.getRequestMethod().equals("GET")) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      long since;
+      int limit;
+      try {
+        Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+        since = Long.parseLong(query.getOrDefault("since", "0"));
+        limit = Math.min(MAX_PULL, Math.max(1, Integer.parseInt(query.getOrDefault("limit", "500"))));
+      } catch (NumberFormatException e) {
+        exchange.sendResponseHeaders(400, -1);
+        return;
+      }
+      byte[] body = SyncCodec.encode(pull(since, limit));
+      exchange.getResponseHeaders().set("Content-Type", SyncCodec.CONTENT_TYPE);
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    }
+  }
+
+  /**
+   * Answers 401 and drops the connection, whose request body may be unread, so the client does not
+   * send its next request down a socket the server is closing.
+   */
+  private static void refuse(HttpExchange exchange) throws IOException {
+    exchange.getResponseHeaders().set("Connection", "close");
+    exchange.sendResponseHeaders(401, -1);
+  }
+
+  /** Whether the request carries the token; compared in constant time. */
+  private boolean authorized(HttpExchange exchange) {
+    if (authorization == null) return true;
+    String header = exchange.getRequestHeaders().getFirst("Authorization");
+    return header != null && MessageDigest.isEqual(authorization, header.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static Map<String, String> query(String raw) {
+    Map<String, String> params = new HashMap<>();
+    if (raw == null) return params;
+    for (String pair : raw.split("&")) {
+      int eq = pair.indexOf('=');
+      if (eq > 0) params.put(pair.substring(0, eq), pair.substring(eq + 1));
+    }
+    return params;
+  }
+
+  /** Appends one frame as {@code length:int frame}, forced to disk before the push is acknowledged. */
+  private void append(byte[] frame) throws IOException {
+    DataOutputStream out = new DataOutputStream(Channels.newOutputStream(data.position(data.size())));
+    out.writeInt(frame.length);
+    out.write(frame);
+    out.flush();
+    data.force(false);
+  }
+
+  /** Rebuilds the state from the data file; a torn frame at the end (a crash mid-append) is cut off. */
+  private void replay() throws IOException {
+    long valid = 0;
+    DataInputStream in = new DataInputStream(Channels.newInputStream(data.position(0)));
+    while (true) {
+      byte[] frame;
+      try {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_FRAME_BYTES) break;
+        frame = in.readNBytes(length);
+        if (frame.length < length) break;
+      } catch (EOFException e) {
+        break;
+      }
+      SyncCodec.Frame decoded;
+      try {
+        decoded = SyncCodec.decode(new ByteArrayInputStream(frame));
+      } catch (IOException | RuntimeException e) {
+        break;
+      }
+      for (SyncChange c : decoded.changes()) {
+        put(c.id(), new Entry(c.version(), c.deleted(), c.row()));
+      }
+      valid += 4 + frame.length;
+    }
+    data.truncate(valid);
+  }
+}
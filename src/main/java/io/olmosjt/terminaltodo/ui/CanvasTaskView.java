@@ -0,0 +1,559 @@
+package io.olmosjt.terminaltodo.ui;
+
+import io.olmosjt.terminaltodo.backend.Task;
+import io.olmosjt.terminaltodo.ui.TaskListPanel.DateHeader;
+import io.olmosjt.terminaltodo.ui.TaskListPanel.Entry;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.geometry.Orientation;
+import javafx.geometry.VPos;
+import javafx.scene.Cursor;
+import javafx.scene.Group;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Label;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.control.TextField;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Alternative to the node-based view of {@link TaskListPanel}: draws the same rows as a monospaced
+ * text grid on a single {@link Canvas}, so a frame costs a few dozen {@code fillText} calls instead
+ * of CSS and layout over per-row nodes. Colours and fonts still come from the stylesheet, read off
+ * a few hidden probe labels, and all row actions go back through the panel.
+ *
+ * <p>Rows become lines (a date header is a gap plus its title, a task is one line plus one per
+ * visible subtask, nested ones only under an unfolded parent) tracked by a prefix sum of line
+ * offsets, rebuilt at most once per pulse. Repaints are
+ * limited to what changed: a toggle or hover repaints its line, a scroll or a row change above
+ * the last visible row repaints the viewport, and a change below it repaints nothing.
+ */
+final class CanvasTaskView extends Region {
+  private static final int SUB_INDENT = 8;
+  private static final int MARK_COLS = 3;
+  private static final int RM_COLS = 4;
+  private static final double LINE_PADDING = 6;
+
+  private record Style(Paint fill, Font font, boolean strikethrough, boolean underline) {}
+  /** A visible subtask line: {@code task} under {@code owner}, {@code depth} levels below the row's task. */
+  private record SubLine(Task task, Task owner, int depth) {}
+
+  private final TaskListPanel panel;
+  private final Canvas canvas = new Canvas();
+  private final ScrollBar scrollBar = new ScrollBar();
+  private final TextField editor = new TextField();
+
+  // Styled by the stylesheet like the node view's labels; never shown.
+  private final Group probes = new Group();
+  private final Label bracketProbe = probe("bracket");
+  private final Label stampProbe = probe("time-stamp");
+  private final Label headerProbe = probe("date-separator");
+  private final Label rmProbe = probe("rm-btn");
+  private final Label textProbe = probe("task-text");
+  private final Label completedProbe = probe("task-text", "completed");
+  private final Label migratedProbe = probe("task-text", "migrated");
+  private final Label[] priorityProbes = new Label[Task.Priority.values().length];
+  private Style bracketStyle, stampStyle, headerStyle, rmStyle, textStyle, completedStyle, migratedStyle;
+  private final Style[] priorityStyles = new Style[Task.Priority.values().length];
+  private boolean stylesDirty = true;
+
+  // Glyph metrics of the grid font, measured once per font.
+  private Font measuredFont;
+  private double charWidth = 8;
+  private double lineHeight = 20;
+
+  private ObservableList<Entry> items;
+  private final ListChangeListener<Entry> itemsListener = this::itemsChanged;
+  private int[] lineOffsets = new int[1]; // first line of entry i; lineOffsets[entryCount] = total
+  private int entryCount;
+  private boolean layoutDirty = true;
+  private boolean paintDirty = true;
+  // Flattened visible subtasks of the row last painted or hit; dropped whenever line counts change.
+  private Task subLinesOf;
+  private final List<SubLine> subLines = new ArrayList<>();
+
+  private double scrollY;
+  // The entry at the top of the viewport and how far into it we are, kept across row changes.
+  private int topEntry;
+  private double topEntryOffset;
+  private int lastPaintedEntry = -1;
+  private boolean viewportFilled;
+  private boolean adjustingScrollBar;
+
+  private int hoverLine = -1;
+  private Task editing;
+  private int editingLine = -1;
+  private int editingCol;
+
+  CanvasTaskView(TaskListPanel panel) {
+    this.panel = panel;
+    getStyleClass().add("task-list-container");
+
+    for (Task.Priority p : Task.Priority.values()) {
+      priorityProbes[p.ordinal()] = probe("task-text", "priority-" + p.name().toLowerCase());
+    }
+    probes.setOpacity(0);
+    probes.setManaged(false);
+    probes.setMouseTransparent(true);
+
+    scrollBar.setOrientation(Orientation.VERTICAL);
+    scrollBar.valueProperty().addListener((obs, old, value) -> {
+      if (!adjustingScrollBar) setScrollY(value.doubleValue());
+    });
+
+    editor.getStyleClass().add("cmd-input");
+    editor.setVisible(false);
+    editor.setManaged(false);
+    editor.setOnAction(e -> commitEdit());
+    editor.setOnKeyPressed(e -> {
+      if (e.getCode() == KeyCode.ESCAPE) stopEdit();
+    });
+    editor.focusedProperty().addListener((obs, was, focused) -> {
+      if (!focused) stopEdit();
+    });
+
+    getChildren().addAll(probes, canvas, scrollBar, editor);
+
+    canvas.setOnMouseMoved(this::mouseMoved);
+    canvas.setOnMouseExited(e -> setHover(-1));
+    canvas.setOnMouseClicked(this::mouseClicked);
+    addEventHandler(ScrollEvent.SCROLL, e -> {
+      // Same trigger as the list view: scrolling up past the first row asks for older history.
+      if (e.getDeltaY() > 0 && scrollY <= 0) panel.requestOlderHistory();
+      setScrollY(scrollY - e.getDeltaY());
+      e.consume();
+    });
+
+    setItems(panel.getItems());
+    panel.itemsProperty().addListener((obs, old, now) -> setItems(now));
+    panel.addRenderListener(this::invalidateRows);
+    sceneProperty().addListener((obs, old, scene) -> {
+      stylesDirty = true;
+      if (scene != null) scene.getRoot().getStyleClass().addListener((ListChangeListener<String>) c -> {
+        stylesDirty = true;
+        invalidateRows();
+      });
+    });
+  }
+
+  /** Scrolls so that row {@code index} is at the top; used by the render benchmark. */
+  void scrollToEntry(int index) {
+    if (layoutDirty) relayoutLines();
+    if (index >= 0 && index < entryCount) setScrollY(lineOffsets[index] * lineHeight);
+  }
+
+  @Override
+  protected void layoutChildren() {
+    double sbWidth = scrollBar.prefWidth(-1);
+    double width = Math.max(0, getWidth() - sbWidth);
+    double height = getHeight();
+    scrollBar.resizeRelocate(width, 0, sbWidth, height);
+    if (canvas.getWidth() != width || canvas.getHeight() != height) {
+      canvas.setWidth(width);
+      canvas.setHeight(height);
+      paintDirty = true;
+    }
+    if (stylesDirty) readStyles();
+    if (layoutDirty) relayoutLines();
+    clampScroll();
+    syncScrollBar();
+    if (paintDirty) paintAll();
+    if (editing != null) positionEditor();
+  }
+
+  private void setItems(ObservableList<Entry> newItems) {
+    if (items != null) items.removeListener(itemsListener);
+    items = newItems;
+    items.addListener(itemsListener);
+    stopEdit();
+    scrollY = 0;
+    topEntry = 0;
+    topEntryOffset = 0;
+    hoverLine = -1;
+    invalidateRows();
+  }
+
+  private void itemsChanged(ListChangeListener.Change<? extends Entry> c) {
+    while (c.next()) {
+      int from = c.getFrom();
+      if (from <= lastPaintedEntry || !viewportFilled) paintDirty = true;
+      if (c.wasPermutated()) continue;
+      int removed = c.getRemovedSize();
+      if (from + removed <= topEntry) {
+        topEntry += c.getAddedSize() - removed;
+      } else if (from <= topEntry) {
+        // The top row itself went away: continue from whatever took its place.
+        topEntry = from;
+        topEntryOffset = 0;
+      }
+    }
+    stopEdit();
+    if (paintDirty) hoverLine = -1;
+    subLinesOf = null;
+    layoutDirty = true;
+    requestLayout();
+  }
+
+  /** Line counts changed without a row change (subtask added or removed, task edited elsewhere). */
+  private void invalidateRows() {
+    subLinesOf = null;
+    layoutDirty = true;
+    paintDirty = true;
+    requestLayout();
+  }
+
+  private void relayoutLines() {
+    int n = items.size();
+    if (lineOffsets.length < n + 1) lineOffsets = new int[Math.max(n + 1, lineOffsets.length * 2)];
+    int line = 0;
+    for (int i = 0; i < n; i++) {
+      lineOffsets[i] = line;
+      Entry e = items.get(i);
+      line += e instanceof DateHeader ? (i == 0 ? 1 : 2) : 1 + panel.subLineCount(e);
+    }
+    lineOffsets[n] = line;
+    entryCount = n;
+    layoutDirty = false;
+    if (topEntry >= n) {
+      topEntry = Math.max(0, n - 1);
+      topEntryOffset = 0;
+    }
+    scrollY = n == 0 ? 0 : lineOffsets[topEntry] * lineHeight + topEntryOffset;
+  }
+
+  private int totalLines() {
+    return lineOffsets[entryCount];
+  }
+
+  /** Entry holding {@code line}: the last entry whose first line is at or before it. */
+  private int entryAtLine(int line) {
+    int lo = 0, hi = entryCount - 1;
+    while (lo < hi) {
+      int mid = (lo + hi + 1) >>> 1;
+      if (lineOffsets[mid] <= line) lo = mid;
+      else hi = mid - 1;
+    }
+    return lo;
+  }
+
+  /** The {@code k}-th visible subtask line (from 1) of {@code task}'s row, or {@code null}. */
+  private SubLine subLine(Task task, int k) {
+    if (subLinesOf != task) {
+      subLines.clear();
+      flatten(task, 1);
+      subLinesOf = task;
+    }
+    return k >= 1 && k <= subLines.size() ? subLines.get(k - 1) : null;
+  }
+
+  private void flatten(Task owner, int depth) {
+    for (Task sub : owner.getSubTasks()) {
+      subLines.add(new SubLine(sub, owner, depth));
+      if (panel.isExpanded(sub)) flatten(sub, depth + 1);
+    }
+  }
+
+  private int lineAt(double y) {
+    int line = (int) ((y + scrollY) / lineHeight);
+    return line >= 0 && line < totalLines() ? line : -1;
+  }
+
+  private int columns() {
+    return (int) (canvas.getWidth() / charWidth);
+  }
+
+  private double maxScroll() {
+    return Math.max(0, totalLines() * lineHeight - canvas.getHeight());
+  }
+
+  private void setScrollY(double y) {
+    if (layoutDirty) relayoutLines();
+    y = Math.max(0, Math.min(y, maxScroll()));
+    if (y == scrollY) return;
+    stopEdit();
+    scrollY = y;
+    rememberTop();
+    paintDirty = true;
+    requestLayout();
+  }
+
+  private void clampScroll() {
+    double clamped = Math.max(0, Math.min(scrollY, maxScroll()));
+    if (clamped != scrollY) {
+      scrollY = clamped;
+      rememberTop();
+      paintDirty = true;
+    }
+  }
+
+  private void rememberTop() {
+    if (entryCount == 0) return;
+    topEntry = entryAtLine((int) (scrollY / lineHeight));
+    topEntryOffset = scrollY - lineOffsets[topEntry] * lineHeight;
+  }
+
+  private void syncScrollBar() {
+    adjustingScrollBar = true;
+    scrollBar.setMin(0);
+    scrollBar.setMax(maxScroll());
+    scrollBar.setVisibleAmount(canvas.getHeight());
+    scrollBar.setUnitIncrement(lineHeight * 3);
+    scrollBar.setBlockIncrement(Math.max(lineHeight, canvas.getHeight() - lineHeight));
+    scrollBar.setValue(scrollY);
+    adjustingScrollBar = false;
+  }
+
+  // --- painting -----------------------------------------------------------------------------
+
+  private void paintAll() {
+    GraphicsContext gc = canvas.getGraphicsContext2D();
+    gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+    gc.setTextBaseline(VPos.TOP);
+    int first = (int) (scrollY / lineHeight);
+    int last = Math.min(totalLines(), (int) Math.ceil((scrollY + canvas.getHeight()) / lineHeight));
+    for (int line = first; line < last; line++) {
+      paintLine(gc, line);
+    }
+    lastPaintedEntry = last > 0 ? entryAtLine(last - 1) : -1;
+    viewportFilled = totalLines() * lineHeight - scrollY >= canvas.getHeight();
+    paintDirty = false;
+  }
+
+  /** Repaints one line in place; a pending full repaint covers it otherwise. */
+  private void repaintLine(int line) {
+    if (line < 0 || line >= totalLines() || layoutDirty || paintDirty) return;
+    double y = line * lineHeight - scrollY;
+    if (y + lineHeight <= 0 || y >= canvas.getHeight()) return;
+    GraphicsContext gc = canvas.getGraphicsContext2D();
+    gc.clearRect(0, y, canvas.getWidth(), lineHeight);
+    gc.setTextBaseline(VPos.TOP);
+    paintLine(gc, line);
+  }
+
+  private void paintLine(GraphicsContext gc, int line) {
+    double y = line * lineHeight - scrollY + LINE_PADDING / 2;
+    int index = entryAtLine(line);
+    int k = line - lineOffsets[index];
+    Entry entry = items.get(index);
+    int cols = columns();
+
+    if (entry instanceof DateHeader h) {
+      if (k == 0 && index > 0) return; // gap above the header
+      String title = TaskListPanel.headerText(h.date());
+      put(gc, title, Math.max(0, (cols - title.length()) / 2), y, headerStyle);
+      return;
+    }
+
+    Task task = panel.taskOf(entry);
+    Task shown = task;
+    int depth = 0;
+    if (k > 0) {
+      SubLine sub = subLine(task, k);
+      if (sub == null) return;
+      shown = sub.task();
+      depth = sub.depth();
+    }
+    int indent = depth * SUB_INDENT;
+
+    if (depth > 0 && !shown.getSubTasks().isEmpty()) {
+      put(gc, panel.isExpanded(shown) ? "-" : "+", indent - 2, y, bracketStyle);
+    }
+    put(gc, TaskContainer.statusMark(shown), indent, y, bracketStyle);
+    if (k == 0) put(gc, TaskContainer.stamp(shown), indent + MARK_COLS + 1, y, stampStyle);
+    int textCol = textColumn(shown, depth);
+    if (line != editingLine) {
+      put(gc, fit(shown.getText(), cols - RM_COLS - 1 - textCol), textCol, y, styleOf(shown, k == 0));
+    }
+    if (line == hoverLine) put(gc, "[rm]", cols - RM_COLS, y, rmStyle);
+  }
+
+  private static int textColumn(Task shown, int depth) {
+    return depth == 0 ? MARK_COLS + 1 + TaskContainer.stamp(shown).length() + 1 : depth * SUB_INDENT + MARK_COLS + 1;
+  }
+
+  private Style styleOf(Task t, boolean topLevel) {
+    if (t.isDone()) return completedStyle;
+    if (t.isMigrated()) return migratedStyle;
+    return topLevel ? priorityStyles[t.getPriority().ordinal()] : textStyle;
+  }
+
+  private void put(GraphicsContext gc, String s, int col, double y, Style style) {
+    if (s.isEmpty()) return;
+    double x = col * charWidth;
+    gc.setFont(style.font());
+    gc.setFill(style.fill());
+    gc.fillText(s, x, y);
+    if (style.strikethrough() || style.underline()) {
+      double glyphHeight = lineHeight - LINE_PADDING;
+      double lineY = Math.round(style.strikethrough() ? y + glyphHeight * 0.55 : y + glyphHeight - 1) + 0.5;
+      gc.setStroke(style.fill());
+      gc.setLineWidth(1);
+      gc.strokeLine(x, lineY, x + s.length() * charWidth, lineY);
+    }
+  }
+
+  /** Single-line text cut to {@code room} columns, with an ellipsis when cut. */
+  private static String fit(String text, int room) {
+    if (text == null || room <= 0) return "";
+    String flat = text.replace('\n', ' ');
+    if (flat.length() <= room) return flat;
+    return flat.substring(0, room - 1) + "…";
+  }
+
+  // --- styles and metrics ---------------------------------------------------------------------
+
+  private Label probe(String... styleClasses) {
+    Label label = new Label("M");
+    label.getStyleClass().addAll(styleClasses);
+    probes.getChildren().add(label);
+    return label;
+  }
+
+  private void readStyles() {
+    if (getScene() == null) return;
+    probes.applyCss();
+    bracketStyle = style(bracketProbe, false, true);
+    stampStyle = style(stampProbe, false, true);
+    headerStyle = style(headerProbe, false, true);
+    rmStyle = style(rmProbe, false, false); // its CSS opacity is the hover trick; we draw on hover
+    textStyle = style(textProbe, false, true);
+    completedStyle = style(completedProbe, true, true);
+    migratedStyle = style(migratedProbe, false, true);
+    for (int i = 0; i < priorityProbes.length; i++) {
+      priorityStyles[i] = style(priorityProbes[i], false, true);
+    }
+    measure(textProbe.getFont());
+    stylesDirty = false;
+    paintDirty = true;
+  }
+
+  private static Style style(Label probe, boolean strikethrough, boolean useOpacity) {
+    Paint fill = probe.getTextFill();
+    if (useOpacity && probe.getOpacity() < 1 && fill instanceof Color c) {
+      fill = c.deriveColor(0, 1, 1, probe.getOpacity());
+    }
+    return new Style(fill, probe.getFont(), strikethrough, probe.isUnderline());
+  }
+
+  private void measure(Font font) {
+    if (font.equals(measuredFont)) return;
+    Text sample = new Text("MMMMMMMMMM");
+    sample.setFont(font);
+    charWidth = sample.getLayoutBounds().getWidth() / 10;
+    lineHeight = Math.ceil(sample.getLayoutBounds().getHeight() + LINE_PADDING);
+    measuredFont = font;
+    layoutDirty = true;
+  }
+
+  // --- hit testing ----------------------------------------------------------------------------
+
+  private void mouseMoved(MouseEvent e) {
+    int line = lineAt(e.getY());
+    setHover(line);
+    int col = (int) (e.getX() / charWidth);
+    boolean clickable = false;
+    if (line >= 0 && !(items.get(entryAtLine(line)) instanceof DateHeader)) {
+      int index = entryAtLine(line);
+      int k = line - lineOffsets[index];
+      SubLine sub = k > 0 ? subLine(panel.taskOf(items.get(index)), k) : null;
+      int indent = sub != null ? sub.depth() * SUB_INDENT : 0;
+      boolean onFold = sub != null && !sub.task().getSubTasks().isEmpty() && col >= indent - 2 && col < indent - 1;
+      clickable = onFold || (col >= indent && col < indent + MARK_COLS) || col >= columns() - RM_COLS;
+    }
+    canvas.setCursor(clickable ? Cursor.HAND : Cursor.DEFAULT);
+  }
+
+  private void setHover(int line) {
+    if (line == hoverLine) return;
+    int old = hoverLine;
+    hoverLine = line;
+    repaintLine(old);
+    repaintLine(line);
+  }
+
+  private void mouseClicked(MouseEvent e) {
+    if (e.getButton() != MouseButton.PRIMARY) return;
+    int line = lineAt(e.getY());
+    if (line < 0) return;
+    int index = entryAtLine(line);
+    Entry entry = items.get(index);
+    if (entry instanceof DateHeader) return;
+
+    Task task = panel.taskOf(entry);
+    int k = line - lineOffsets[index];
+    SubLine sub = k > 0 ? subLine(task, k) : null;
+    if (k > 0 && sub == null) return;
+    Task node = sub != null ? sub.task() : task;
+    int col = (int) (e.getX() / charWidth);
+    int indent = sub != null ? sub.depth() * SUB_INDENT : 0;
+
+    if (sub != null && !node.getSubTasks().isEmpty() && col >= indent - 2 && col < indent - 1) {
+      panel.toggleExpanded(task, node); // re-renders, which invalidates the lines
+    } else if (col >= indent && col < indent + MARK_COLS) {
+      panel.toggleFromRow(task, node);
+      if (node.getSubTasks().isEmpty()) {
+        repaintLine(line);
+      } else {
+        paintDirty = true;
+        requestLayout();
+      }
+    } else if (col >= columns() - RM_COLS) {
+      if (sub != null) {
+        sub.owner().getSubTasks().remove(node);
+        panel.deleteFromRow(entry, task, node);
+        invalidateRows();
+      } else {
+        panel.deleteFromRow(entry, task, task);
+      }
+    } else if (sub == null && e.getClickCount() == 2 && col >= textColumn(task, 0)) {
+      startEdit(task, line);
+    }
+  }
+
+  // --- inline edit ----------------------------------------------------------------------------
+
+  private void startEdit(Task task, int line) {
+    editing = task;
+    editingLine = line;
+    editingCol = textColumn(task, 0);
+    editor.setText(task.getText());
+    editor.setVisible(true);
+    positionEditor();
+    editor.requestFocus();
+    repaintLine(line);
+  }
+
+  private void positionEditor() {
+    double x = editingCol * charWidth;
+    double width = Math.max(charWidth, (columns() - RM_COLS - 1) * charWidth - x);
+    editor.resizeRelocate(x, editingLine * lineHeight - scrollY, width, lineHeight);
+  }
+
+  private void commitEdit() {
+    if (editing == null) return;
+    Task task = editing;
+    task.setText(editor.getText());
+    stopEdit();
+    panel.saveFromRow(task);
+  }
+
+  private void stopEdit() {
+    if (editing == null) return;
+    int line = editingLine;
+    editing = null;
+    editingLine = -1;
+    editor.setVisible(false);
+    repaintLine(line);
+  }
+}
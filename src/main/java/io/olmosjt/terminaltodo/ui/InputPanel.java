@@ -3,13 +3,18 @@ package io.olmosjt.terminaltodo.ui;
 import javafx.geometry.Pos;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
+import javafx.scene.input.Clipboard;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
+import java.util.List;
 import java.util.function.Consumer;
 
 public class InputPanel extends HBox {
   private final TextField inputField;
+  private final Label messageLabel = new Label();
+  private final Label pendingLabel = new Label();
   private final Consumer<String> onCommand;
+  private Consumer<List<String>> onBatch = lines -> lines.forEach(this::acceptLine);
 
   public InputPanel(Consumer<String> onCommand) {
     this.onCommand = onCommand;
@@ -21,25 +26,63 @@ public class InputPanel extends HBox {
     Label promptChar = new Label("$");
     promptChar.getStyleClass().add("prompt");
 
-    inputField = new TextField();
+    // A multi-line paste would be flattened into one line by the TextField; run it as a batch instead.
+    // Overriding paste() covers the shortcut and the context menu alike.
+    inputField = new TextField() {
+      @Override
+      public void paste() {
+        String pasted = Clipboard.getSystemClipboard().getString();
+        if (pasted == null || pasted.indexOf('\n') < 0) {
+          super.paste();
+          return;
+        }
+        messageLabel.setText("");
+        onBatch.accept(pasted.lines().toList());
+      }
+    };
     inputField.getStyleClass().add("cmd-input");
     inputField.setPromptText("type your new task here...");
 
     inputField.setOnAction(e -> handleInput());
 
+    messageLabel.getStyleClass().add("status-message");
+
+    pendingLabel.getStyleClass().add("pending-writes");
+    pendingLabel.setVisible(false);
+
     HBox.setHgrow(inputField, Priority.ALWAYS);
-    this.getChildren().addAll(promptChar, inputField);
+    this.getChildren().addAll(promptChar, inputField, messageLabel, pendingLabel);
   }
 
   private void handleInput() {
     String text = inputField.getText().trim();
     if (!text.isEmpty()) {
+      messageLabel.setText("");
       onCommand.accept(text);
       inputField.clear();
     }
   }
 
+  private void acceptLine(String line) {
+    if (!line.isBlank()) onCommand.accept(line.trim());
+  }
+
+  /** Receives the lines of a multi-line paste; by default they are run one by one as commands. */
+  public void setOnBatch(Consumer<List<String>> onBatch) {
+    this.onBatch = onBatch;
+  }
+
   public void requestFocusOnInput() {
     inputField.requestFocus();
   }
+
+  /** One-line feedback next to the prompt; cleared when the next command is entered. */
+  public void showMessage(String message) {
+    messageLabel.setText(message);
+  }
+
+  public void setPendingWrites(int count) {
+    pendingLabel.setText("[sync " + count + "]");
+    pendingLabel.setVisible(count > 0);
+  }
 }
\ No newline at end of file
@@ -1,9 +1,12 @@
 package io.olmosjt.terminaltodo.ui;
 
-import io.olmosjt.terminaltodo.backend.DataService; // Import added
 import io.olmosjt.terminaltodo.backend.Task;
 import javafx.beans.binding.Bindings;
+import javafx.collections.ObservableList;
+import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.scene.Cursor;
+import javafx.scene.Node;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
 import javafx.scene.input.KeyCode;
@@ -11,33 +14,79 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 
-import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * One task row with its subtasks. Direct subtasks are always shown; deeper levels are built only
+ * when their parent is unfolded ({@code [+N]} / {@code [-]}), so a large folded tree costs no
+ * nodes.
+ */
 public class TaskContainer extends VBox {
   private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("HH:mm");
 
-  private final Task task;
-  private final Runnable onSave;
-  private final Runnable onDelete;
-
-  private final HBox rowLayout = new HBox(10);
-  private final Label bracketLabel = new Label();
-  private final Label timeLabel = new Label();
-  private final Label textLabel = new Label();
-  private final TextField editField = new TextField();
-  private final Label rmLabel = new Label("[rm]");
-  private final VBox subTaskContainer = new VBox(2);
-
-  public TaskContainer(Task task, Runnable onSave, Runnable onDelete) {
-    this.task = task;
+  // Scene-graph nodes created by all task rows; only touched on the FX thread.
+  private static long nodeAllocations;
+
+  private static final double NESTED_INDENT = 24;
+
+  private final Consumer<Task> onSave;
+  private final Consumer<Task> onToggle;
+  private final Consumer<Task> onDelete;
+  private final Set<Task> expanded;
+  private Task task;
+
+  private final HBox rowLayout = counted(new HBox(10));
+  private final Label bracketLabel = counted(new Label());
+  private final Label timeLabel = counted(new Label());
+  private final Label textLabel = counted(new Label());
+  private final TextField editField = counted(new TextField());
+  private final Label rmLabel = counted(new Label("[rm]"));
+  private final VBox subTaskContainer = counted(new VBox(2));
+
+  /**
+   * Creates an unbound row; list cells reuse one instance and rebind it via {@link #setTask(Task)}.
+   *
+   * @param onToggle flips the done state of the given task or subtask (with its subtree) and saves it
+   * @param expanded subtasks whose own subtasks are unfolded; read and updated by the fold markers
+   */
+  public TaskContainer(Consumer<Task> onSave, Consumer<Task> onToggle, Consumer<Task> onDelete, Set<Task> expanded) {
+    counted(this);
     this.onSave = onSave;
+    this.onToggle = onToggle;
     this.onDelete = onDelete;
+    this.expanded = expanded;
 
     this.getStyleClass().add("task-row");
 
     setupUI();
-    refreshData();
+  }
+
+  public void setTask(Task task) {
+    if (this.task != task) cancelEdit();
+    this.task = task;
+    refreshRow();
+    syncSubTasks();
+  }
+
+  /**
+   * Total number of nodes allocated by task rows so far. Sample it before and after an operation
+   * to see how many nodes that operation created.
+   */
+  public static long getNodeAllocations() {
+    return nodeAllocations;
+  }
+
+  private static <T extends Node> T counted(T node) {
+    nodeAllocations++;
+    return node;
   }
 
   private void setupUI() {
@@ -47,7 +96,7 @@ public class TaskContainer extends VBox {
     rowLayout.getStyleClass().add("task-line");
 
     bracketLabel.getStyleClass().add("bracket");
-    bracketLabel.setCursor(javafx.scene.Cursor.HAND);
+    bracketLabel.setCursor(Cursor.HAND);
     bracketLabel.setOnMouseClicked(e -> toggleStatus());
 
     timeLabel.getStyleClass().add("time-stamp");
@@ -71,11 +120,11 @@ public class TaskContainer extends VBox {
     });
 
     rmLabel.getStyleClass().add("rm-btn");
-    rmLabel.setOnMouseClicked(e -> onDelete.run());
+    rmLabel.setOnMouseClicked(e -> onDelete.accept(task));
 
     rowLayout.getChildren().addAll(bracketLabel, timeLabel, textLabel, editField, rmLabel);
 
-    subTaskContainer.setPadding(new javafx.geometry.Insets(0, 0, 5, 65));
+    subTaskContainer.setPadding(new Insets(0, 0, 5, 65));
 
     this.getChildren().addAll(rowLayout, subTaskContainer);
 
@@ -84,65 +133,78 @@ public class TaskContainer extends VBox {
     ));
   }
 
-  private void refreshData() {
+  private void refreshRow() {
     textLabel.setText(task.getText());
-    textLabel.getStyleClass().removeAll("completed", "priority-low", "priority-normal", "priority-high", "priority-critical");
+    textLabel.getStyleClass().removeAll("completed", "migrated", "priority-low", "priority-normal", "priority-high", "priority-critical");
 
-    if (!task.isDone()) {
-      textLabel.getStyleClass().add("priority-" + task.getPriority().name().toLowerCase());
-    } else {
+    if (task.isDone()) {
       textLabel.getStyleClass().add("completed");
+    } else if (task.isMigrated()) {
+      textLabel.getStyleClass().add("migrated");
+    } else {
+      textLabel.getStyleClass().add("priority-" + task.getPriority().name().toLowerCase());
     }
 
-    bracketLabel.setText(task.isDone() ? "[x]" : "[ ]");
+    bracketLabel.setText(statusMark(task));
 
-    String idPart = task.getId().substring(0, 4);
-    String startPart = task.getCreatedAt().format(TIME_FMT);
-    String endPart = (task.isDone() && task.getCompletedAt() != null)
-        ? " -- " + task.getCompletedAt().format(TIME_FMT)
-        : "";
-    timeLabel.setText(String.format("[%s][%s%s]", idPart, startPart, endPart));
-
-    subTaskContainer.getChildren().clear();
-    for (Task sub : task.getSubTasks()) {
-      HBox subRow = new HBox(10);
-      subRow.setAlignment(Pos.CENTER_LEFT);
-      // CHANGED: Add specific class for hover logic
-      subRow.getStyleClass().add("task-line");
-
-      Label sb = new Label(sub.isDone() ? "[x]" : "[ ]");
-      sb.getStyleClass().add("bracket");
-      sb.setOnMouseClicked(e -> {
-        sub.setDone(!sub.isDone());
-        onSave.run();
-        refreshData();
-      });
-
-      Label st = new Label(sub.getText());
-      st.getStyleClass().add("task-text");
-      if (sub.isDone()) st.getStyleClass().add("completed");
+    timeLabel.setText(stamp(task));
+  }
 
-      HBox.setHgrow(st, Priority.ALWAYS);
+  private void syncSubTasks() {
+    syncRows(subTaskContainer, task);
+  }
 
-      Label subRm = new Label("[rm]");
-      subRm.getStyleClass().add("rm-btn");
-      subRm.setOnMouseClicked(e -> {
-        task.getSubTasks().remove(sub);
-        new Thread(() -> DataService.deleteTask(sub.getId())).start();
-        onSave.run();
-        refreshData();
-      });
+  /**
+   * Patches the rows for {@code owner}'s subtasks in place. Rows are matched to subtasks by id, so
+   * an insert or delete moves the rows after it (unfolded children included) instead of rebinding
+   * each to its neighbour's task; rows left over are rebound to the rest, and only a shortfall is
+   * created.
+   */
+  private void syncRows(VBox box, Task owner) {
+    ObservableList<Node> rows = box.getChildren();
+    List<Task> subs = owner.getSubTasks();
+    Map<String, SubTaskRow> byId = new HashMap<>();
+    Deque<SubTaskRow> spare = new ArrayDeque<>();
+    for (Node node : rows) {
+      SubTaskRow row = (SubTaskRow) node;
+      if (byId.putIfAbsent(row.sub.getId(), row) != null) spare.add(row);
+    }
 
-      subRow.getChildren().addAll(sb, st, subRm);
-      subTaskContainer.getChildren().add(subRow);
+    SubTaskRow[] ordered = new SubTaskRow[subs.size()];
+    for (int i = 0; i < ordered.length; i++) {
+      ordered[i] = byId.remove(subs.get(i).getId());
     }
+    spare.addAll(byId.values());
+    for (int i = 0; i < ordered.length; i++) {
+      Task sub = subs.get(i);
+      if (ordered[i] == null) ordered[i] = spare.poll();
+      if (ordered[i] != null) ordered[i].bind(owner, sub);
+      else ordered[i] = new SubTaskRow(box, owner, sub);
+    }
+    List<SubTaskRow> wanted = Arrays.asList(ordered);
+    if (!rows.equals(wanted)) rows.setAll(wanted);
+  }
+
+  /** Bullet-journal marks: done, migrated forward to a later day, or open. */
+  static String statusMark(Task t) {
+    if (t.isDone()) return "[x]";
+    return t.isMigrated() ? "[>]" : "[ ]";
+  }
+
+  /** {@code [id][start -- end]}: short id, creation time and, once done, completion time. */
+  static String stamp(Task t) {
+    String idPart = t.getId().substring(0, 4);
+    String startPart = t.getCreatedAt().format(TIME_FMT);
+    String endPart = (t.isDone() && t.getCompletedAt() != null)
+        ? " -- " + t.getCompletedAt().format(TIME_FMT)
+        : "";
+    return String.format("[%s][%s%s]", idPart, startPart, endPart);
   }
 
   private void toggleStatus() {
-    task.setDone(!task.isDone());
-    task.setCompletedAt(task.isDone() ? LocalDateTime.now() : null);
-    onSave.run();
-    refreshData();
+    onToggle.accept(task);
+    refreshRow();
+    syncSubTasks();
   }
 
   private void enableEditMode() {
@@ -157,8 +219,8 @@ public class TaskContainer extends VBox {
   private void commitEdit() {
     task.setText(editField.getText());
     cancelEdit(); // Revert UI
-    onSave.run();
-    refreshData();
+    onSave.accept(task);
+    refreshRow();
   }
 
   private void cancelEdit() {
@@ -167,4 +229,101 @@ public class TaskContainer extends VBox {
     textLabel.setVisible(true);
     textLabel.setManaged(true);
   }
-}
\ No newline at end of file
+
+  /** A subtask line, plus the rows of its own subtasks once it has been unfolded. */
+  private final class SubTaskRow extends VBox {
+    private final HBox line = counted(new HBox(10));
+    private final Label bracket = counted(new Label());
+    private final Label fold = counted(new Label());
+    private final Label text = counted(new Label());
+    private final Label rm = counted(new Label("[rm]"));
+    private final VBox parentBox;
+    private VBox children; // created on first unfold
+    private Task owner;
+    private Task sub;
+    private String shownText;
+    private String shownBracket;
+
+    SubTaskRow(VBox parentBox, Task owner, Task sub) {
+      super(2);
+      counted(this);
+      this.parentBox = parentBox;
+      line.setAlignment(Pos.CENTER_LEFT);
+      line.getStyleClass().add("task-line");
+
+      bracket.getStyleClass().add("bracket");
+      bracket.setOnMouseClicked(e -> {
+        onToggle.accept(this.sub);
+        refresh();
+      });
+
+      fold.getStyleClass().add("bracket");
+      fold.setCursor(Cursor.HAND);
+      fold.setOnMouseClicked(e -> {
+        if (!expanded.remove(this.sub)) expanded.add(this.sub);
+        refresh();
+      });
+
+      text.getStyleClass().add("task-text");
+      HBox.setHgrow(text, Priority.ALWAYS);
+
+      rm.getStyleClass().add("rm-btn");
+      rm.setOnMouseClicked(e -> {
+        this.owner.getSubTasks().remove(this.sub);
+        onDelete.accept(this.sub);
+        this.parentBox.getChildren().remove(this);
+        if (this.parentBox != subTaskContainer) refreshOwnerFold();
+      });
+
+      line.getChildren().addAll(bracket, fold, text, rm);
+      getChildren().add(line);
+      bind(owner, sub);
+    }
+
+    void bind(Task owner, Task sub) {
+      this.owner = owner;
+      this.sub = sub;
+      refresh();
+    }
+
+    /** Touches only the labels whose content actually changed; rebuilds children only if unfolded. */
+    private void refresh() {
+      if (!sub.getText().equals(shownText)) {
+        text.setText(sub.getText());
+        shownText = sub.getText();
+      }
+      String mark = statusMark(sub);
+      if (!mark.equals(shownBracket)) {
+        bracket.setText(mark);
+        text.getStyleClass().removeAll("completed", "migrated");
+        if (sub.isDone()) text.getStyleClass().add("completed");
+        else if (sub.isMigrated()) text.getStyleClass().add("migrated");
+        shownBracket = mark;
+      }
+
+      int nested = sub.getSubTasks().size();
+      boolean open = nested > 0 && expanded.contains(sub);
+      fold.setText(nested == 0 ? "" : open ? "[-]" : "[+" + nested + "]");
+      fold.setVisible(nested > 0);
+      fold.setManaged(nested > 0);
+      if (open) {
+        if (children == null) {
+          children = counted(new VBox(2));
+          children.setPadding(new Insets(0, 0, 0, NESTED_INDENT));
+          getChildren().add(children);
+        }
+        children.setVisible(true);
+        children.setManaged(true);
+        syncRows(children, sub);
+      } else if (children != null) {
+        children.setVisible(false);
+        children.setManaged(false);
+      }
+    }
+
+    /** After a nested delete: the row that owns {@link #parentBox} may have nothing left to unfold. */
+    private void refreshOwnerFold() {
+      if (parentBox.getParent() instanceof SubTaskRow ownerRow) ownerRow.refresh();
+    }
+  }
+}
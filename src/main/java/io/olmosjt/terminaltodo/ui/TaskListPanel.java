@@ -1,39 +1,103 @@
 package io.olmosjt.terminaltodo.ui;
 
-import io.olmosjt.terminaltodo.backend.DataService;
+import io.olmosjt.terminaltodo.backend.CompactTaskStore;
 import io.olmosjt.terminaltodo.backend.Task;
+import io.olmosjt.terminaltodo.metrics.Metrics;
+import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
-import javafx.geometry.Insets;
 import javafx.geometry.Pos;
-import javafx.scene.Node;
 import javafx.scene.control.Label;
-import javafx.scene.control.ScrollPane;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.skin.VirtualFlow;
+import javafx.scene.input.ScrollEvent;
 import javafx.scene.layout.VBox;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
-public class TaskListPanel extends ScrollPane {
+/**
+ * Virtualized task list. The tasks are flattened into lightweight {@link Entry} rows (date headers
+ * and tasks) and the {@link ListView} only creates enough cells to fill the viewport, recycling
+ * them while scrolling, so the node count does not grow with the number of tasks.
+ *
+ * <p>The live rows are kept sorted by creation time, one header per day. A sorted date → header
+ * map and a task → row map, plus binary search over the rows, place and find a task's row in
+ * O(log n) instead of scanning the list. The add or remove itself still shifts the ListView's
+ * backing array, O(n) but a single array copy, and the ListView sees a one-row change, not a
+ * rebuild.
+ *
+ * <p>Older history scrolled in on demand is not kept as {@link Task} objects: it lives in a
+ * {@link CompactTaskStore} and is shown through {@link HistoryEntry} rows that materialize their
+ * task only when a cell binds them. History rows always precede the rows of the live task list.
+ *
+ * <p>Subtasks nest to any depth. A row shows its task's direct subtasks; anything deeper stays
+ * folded, and is not even built into nodes or lines, until the user opens its parent.
+ */
+public class TaskListPanel extends ListView<TaskListPanel.Entry> {
   private static final DateTimeFormatter DATE_HEADER_FMT = DateTimeFormatter.ofPattern("MMM dd");
+  // Sort rank within equal timestamps: a day's header sorts before a task created at midnight.
+  private static final int HEADER_RANK = 0, TASK_RANK = 1;
+  // Removing more rows than this in one change is done as a rebuild, not row by row.
+  private static final int REBUILD_THRESHOLD = 64;
+
+  sealed interface Entry permits DateHeader, TaskEntry, HistoryEntry {}
+  record DateHeader(LocalDate date) implements Entry {}
+  record TaskEntry(Task task) implements Entry {}
+  record HistoryEntry(int row) implements Entry {}
 
-  private final VBox listContainer;
   private final ObservableList<Task> tasks;
-  private final VBox placeholder;
+  private final CompactTaskStore history;
+  private final Consumer<Task> onSave;
+  private final Consumer<Task> onDelete;
+  private final ObservableList<Entry> rows = FXCollections.observableArrayList();
+  // Rows of the filtered view (e.g. search hits); the main rows keep tracking the task list meanwhile.
+  private final ObservableList<Entry> resultRows = FXCollections.observableArrayList();
+  // Number of leading entries in rows (headers included) that come from the history store.
+  private int historyEntries;
+  // Index over the live rows (those after the history prefix).
+  private final TreeMap<LocalDate, DateHeader> liveHeaders = new TreeMap<>();
+  private final Map<Task, TaskEntry> liveEntries = new IdentityHashMap<>();
+  private int createdCells;
+  // Cells the flow still holds; weak, since refresh() and resizes drop cells without telling us.
+  private final Set<TaskCell> cells = Collections.newSetFromMap(new WeakHashMap<>());
+  private Runnable onScrolledToTop = () -> {};
+  private final List<Runnable> renderListeners = new ArrayList<>();
+  // Subtasks whose own subtasks are unfolded; by identity, like the rest of the view state.
+  private final Set<Task> expanded = Collections.newSetFromMap(new IdentityHashMap<>());
+  private BiConsumer<Task, Task> onToggle;
 
-  public TaskListPanel(ObservableList<Task> tasks) {
+  /**
+   * @param onSave   called after a row changed a task (edit; toggles too, unless {@link #setOnToggle} is set)
+   * @param onDelete called for a removed task or subtask; it owns the list and DB removal
+   */
+  public TaskListPanel(ObservableList<Task> tasks, CompactTaskStore history,
+                       Consumer<Task> onSave, Consumer<Task> onDelete) {
     this.tasks = tasks;
+    this.history = history;
+    this.onSave = onSave;
+    this.onDelete = onDelete;
+    this.onToggle = (shown, node) -> onSave.accept(shown);
 
-    listContainer = new VBox(5);
-    listContainer.setPadding(new Insets(10));
-    listContainer.getStyleClass().add("task-list-container");
-
-    this.setContent(listContainer);
-    this.setFitToWidth(true);
-    this.setHbarPolicy(ScrollBarPolicy.NEVER);
-    this.getStyleClass().add("task-scroll-pane");
+    this.setItems(rows);
+    this.setCellFactory(lv -> new TaskCell());
+    this.setFocusTraversable(false);
+    this.getStyleClass().addAll("task-scroll-pane", "task-list-container");
 
-    placeholder = new VBox();
+    VBox placeholder = new VBox();
     placeholder.setAlignment(Pos.CENTER);
     Label art = new Label("""
             > SYSTEM STATUS: IDLE
@@ -47,111 +111,413 @@ public class TaskListPanel extends ScrollPane {
             """);
     art.getStyleClass().add("placeholder-text");
     placeholder.getChildren().add(art);
+    this.setPlaceholder(placeholder);
 
     rebuildAll();
 
+    // Scrolling up past the first row asks for older history (works even before a scrollbar exists).
+    this.addEventFilter(ScrollEvent.SCROLL, e -> {
+      if (e.getDeltaY() > 0 && !isShowingResults() && firstVisibleIndex() == 0) onScrolledToTop.run();
+    });
+
     tasks.addListener((ListChangeListener<Task>) c -> {
       while (c.next()) {
-        if (c.wasPermutated()) {
+        if (c.wasPermutated() || c.getRemovedSize() > REBUILD_THRESHOLD) {
+          // Rows follow creation time, not list order; large replaces (reload, clear) are a rebuild.
           rebuildAll();
+          return;
         } else if (c.wasUpdated()) {
         } else {
           for (Task rem : c.getRemoved()) {
-            removeTaskNode(rem);
-          }
-          for (Task add : c.getAddedSubList()) {
-            addTaskNode(add);
+            removeLive(rem);
           }
+          if (c.wasAdded()) addTaskNodes(c.getAddedSubList());
         }
       }
-      checkPlaceholder();
     });
   }
 
-  private void checkPlaceholder() {
-    if (tasks.isEmpty()) {
-      if (!listContainer.getChildren().contains(placeholder)) {
-        listContainer.getChildren().clear();
-        listContainer.getChildren().add(placeholder);
+  /** Re-binds the visible cells, e.g. after a subtask was added to an existing task. */
+  public void render() {
+    refresh();
+    renderListeners.forEach(Runnable::run);
+  }
+
+  /**
+   * Re-binds only the visible rows showing a task whose id is in {@code ids}, e.g. after those tasks
+   * were marked migrated in place; the rest of the list and its cells are left alone.
+   */
+  public void refreshTasks(Set<String> ids) {
+    for (TaskCell cell : cells) {
+      if (cell.shown != null && !cell.isEmpty() && ids.contains(cell.shown.getId())) cell.row.setTask(cell.shown);
+    }
+    renderListeners.forEach(Runnable::run);
+  }
+
+  /**
+   * Prepends an older page of history rows (top-level rows of {@link #history}, oldest first),
+   * keeping the row the user was looking at in place.
+   */
+  public void prependHistory(List<Integer> historyRows) {
+    long start = Metrics.start();
+    List<Entry> built = new ArrayList<>(historyRows.size() + 8);
+    LocalDate lastDate = null;
+    for (int row : historyRows) {
+      LocalDate date = history.createdAt(row).toLocalDate();
+      if (lastDate == null || !date.isEqual(lastDate)) {
+        built.add(new DateHeader(date));
+        lastDate = date;
       }
-    } else {
-      listContainer.getChildren().remove(placeholder);
+      built.add(new HistoryEntry(row));
     }
+    int anchor = firstVisibleIndex();
+    rows.addAll(0, built);
+    historyEntries += built.size();
+    if (!isShowingResults() && !rows.isEmpty()) scrollTo(Math.min(anchor + built.size(), rows.size() - 1));
+    Metrics.record("ui.prependHistory", start);
   }
 
-  public void render() {
-    rebuildAll();
+  /** Drops every history row along with the store backing them. */
+  public void clearHistory() {
+    rows.remove(0, historyEntries);
+    historyEntries = 0;
+    history.clear();
   }
 
-  private void rebuildAll() {
-    listContainer.getChildren().clear();
+  /** Switches to a filtered view of {@code results}, grouped by date like the main list. */
+  public void showResults(List<Task> results) {
+    long start = Metrics.start();
+    buildRows(results, resultRows);
+    Metrics.record("ui.showResults", start);
+    setItems(resultRows);
+    scrollTo(0);
+  }
+
+  /** Back to the full list. */
+  public void clearResults() {
+    resultRows.clear();
+    setItems(rows);
+  }
+
+  public boolean isShowingResults() {
+    return getItems() == resultRows;
+  }
+
+  public void setOnScrolledToTop(Runnable onScrolledToTop) {
+    this.onScrolledToTop = onScrolledToTop;
+  }
+
+  /**
+   * What persists a done toggle of {@code node}, somewhere in the tree of the row's task
+   * {@code shown}; the node and its subtree are already flipped. Defaults to saving {@code shown}.
+   */
+  public void setOnToggle(BiConsumer<Task, Task> onToggle) {
+    this.onToggle = onToggle;
+  }
+
+  /** Unfolds the subtasks of {@code task}, e.g. after one was added to it; shows on the next {@link #render()}. */
+  public void expand(Task task) {
+    expanded.add(task);
+  }
+
+  /** Number of cells the list has ever created; bounded by the viewport, not by the task count. */
+  public int getCreatedCellCount() {
+    return createdCells;
+  }
+
+  /** Runs after every {@link #render()}, for views that draw these rows themselves. */
+  void addRenderListener(Runnable listener) {
+    renderListeners.add(listener);
+  }
+
+  /** What scrolling up past the first row does; for views other than this list. */
+  void requestOlderHistory() {
+    if (!isShowingResults()) onScrolledToTop.run();
+  }
 
-    if (tasks.isEmpty()) {
-      listContainer.getChildren().add(placeholder);
-      return;
+  /** The task behind a task row, materializing history rows like a cell does. */
+  Task taskOf(Entry entry) {
+    return entry instanceof HistoryEntry h ? history.materialize(h.row()) : ((TaskEntry) entry).task();
+  }
+
+  /**
+   * Lines a task row shows below its own: its direct subtasks plus whatever is unfolded under them.
+   * History rows that are not materialized have nothing unfolded and are counted in the store.
+   */
+  int subLineCount(Entry entry) {
+    Task task = entry instanceof TaskEntry e ? e.task() : history.materialized(((HistoryEntry) entry).row());
+    if (task == null) return history.subTaskCount(((HistoryEntry) entry).row());
+    return visibleBelow(task);
+  }
+
+  private int visibleBelow(Task task) {
+    int lines = 0;
+    for (Task sub : task.getSubTasks()) {
+      lines += 1 + (expanded.contains(sub) ? visibleBelow(sub) : 0);
+    }
+    return lines;
+  }
+
+  boolean isExpanded(Task task) {
+    return expanded.contains(task);
+  }
+
+  /** Folds or unfolds {@code node} in the row of {@code shown}. */
+  void toggleExpanded(Task shown, Task node) {
+    if (!expanded.remove(node)) {
+      expanded.add(node);
+      // A history task has to stay the same instance for the unfolded state to stick.
+      history.pin(shown);
     }
+    render();
+  }
+
+  /** A row changed {@code task} (edit). */
+  void saveFromRow(Task task) {
+    onSave.accept(task);
+  }
+
+  /** A row flipped the done state of {@code node} (the task {@code shown} itself, or below it). */
+  void toggleFromRow(Task shown, Task node) {
+    node.setDoneWithSubtasks(!node.isDone(), LocalDateTime.now());
+    onToggle.accept(shown, node);
+  }
 
+  /**
+   * A row removed {@code task}: the task {@code shown} in row {@code item} itself, or one of its
+   * subtasks (already detached from {@code shown}).
+   */
+  void deleteFromRow(Entry item, Task shown, Task task) {
+    expanded.remove(task);
+    removeEntry(resultRows, task);
+    onDelete.accept(task);
+    if (item instanceof HistoryEntry h) {
+      // History tasks are not in the live list: drop the row here, or save the parent whose subtask went.
+      if (task == shown) removeHistoryEntry(h);
+      else onSave.accept(shown);
+    }
+  }
+
+  /** Drops history rows whose task was deleted elsewhere (a sync pull). */
+  void removeHistoryRows(List<Integer> historyRows) {
+    for (int row : historyRows) {
+      removeHistoryEntry(new HistoryEntry(row));
+    }
+  }
+
+  private int firstVisibleIndex() {
+    VirtualFlow<?> flow = (VirtualFlow<?>) lookup(".virtual-flow");
+    if (flow == null || flow.getFirstVisibleCell() == null) return 0;
+    return Math.max(0, flow.getFirstVisibleCell().getIndex());
+  }
+
+  private void rebuildAll() {
+    long start = Metrics.start();
+    List<Entry> built = new ArrayList<>(rows.subList(0, historyEntries));
+    liveHeaders.clear();
+    liveEntries.clear();
+    List<Task> sorted = new ArrayList<>(tasks);
+    sorted.sort(Comparator.comparing(Task::getCreatedAt));
+    for (Task task : sorted) {
+      LocalDate day = task.getCreatedAt().toLocalDate();
+      if (!liveHeaders.containsKey(day)) {
+        DateHeader header = new DateHeader(day);
+        liveHeaders.put(day, header);
+        built.add(header);
+      }
+      TaskEntry entry = new TaskEntry(task);
+      liveEntries.put(task, entry);
+      built.add(entry);
+    }
+    rows.setAll(built);
+    Metrics.record("ui.rebuildRows", start);
+  }
+
+  private static void buildRows(List<Task> source, ObservableList<Entry> into) {
+    List<Entry> built = new ArrayList<>(source.size() + 16);
+    appendRows(source, built);
+    into.setAll(built);
+  }
+
+  private static void appendRows(List<Task> source, List<Entry> built) {
     LocalDate lastDate = null;
-    for (Task task : tasks) {
+    for (Task task : source) {
       LocalDate taskDate = task.getCreatedAt().toLocalDate();
       if (lastDate == null || !taskDate.isEqual(lastDate)) {
-        addDateHeader(taskDate);
+        built.add(new DateHeader(taskDate));
         lastDate = taskDate;
       }
-      addTaskRow(task);
+      built.add(new TaskEntry(task));
     }
   }
 
-  private void addDateHeader(LocalDate date) {
-    Label dateSep = new Label();
-    dateSep.getStyleClass().add("date-separator");
-    dateSep.setMaxWidth(Double.MAX_VALUE);
-    dateSep.setAlignment(Pos.CENTER);
-
-    if (date.isEqual(LocalDate.now())) {
-      dateSep.setText("--- Today ---");
-    } else {
-      dateSep.setText("--- " + date.format(DATE_HEADER_FMT) + " ---");
+  /**
+   * Adds rows for new tasks. Tasks newer than every live row (the usual case) are appended as a
+   * single change to {@link #rows}; older ones are placed by binary search, keeping the viewport.
+   */
+  private void addTaskNodes(List<? extends Task> added) {
+    long start = Metrics.start();
+    List<Entry> tail = new ArrayList<>(added.size() + 1);
+    LocalDateTime newest = rows.size() > historyEntries ? keyTime(rows.get(rows.size() - 1)) : null;
+    Entry anchor = null;
+    for (Task task : added) {
+      LocalDateTime at = task.getCreatedAt();
+      if (newest != null && at.isBefore(newest)) {
+        rows.addAll(tail);
+        tail.clear();
+        if (anchor == null && !rows.isEmpty()) anchor = rows.get(Math.min(firstVisibleIndex(), rows.size() - 1));
+        insertLive(task);
+        continue;
+      }
+      LocalDate day = at.toLocalDate();
+      if (!liveHeaders.containsKey(day)) {
+        DateHeader header = new DateHeader(day);
+        liveHeaders.put(day, header);
+        tail.add(header);
+      }
+      TaskEntry entry = new TaskEntry(task);
+      liveEntries.put(task, entry);
+      tail.add(entry);
+      newest = at;
+    }
+    rows.addAll(tail);
+    if (anchor != null && !isShowingResults()) {
+      int i = rows.indexOf(anchor);
+      if (i > 0) scrollTo(i);
     }
-    dateSep.setUserData("DATE_HEADER_" + date.toString());
-    listContainer.getChildren().add(dateSep);
+    Metrics.record("ui.appendRows", start);
   }
 
-  private void addTaskRow(Task task) {
-    TaskContainer row = new TaskContainer(
-        task,
-        () -> new Thread(() -> DataService.updateTask(task)).start(),
-        () -> {
-          tasks.remove(task);
-          new Thread(() -> DataService.deleteTask(task.getId())).start();
-        }
-    );
-    row.setUserData(task);
-    listContainer.getChildren().add(row);
+  /** Inserts one live task at its sorted position, adding its day's header if it is the first. */
+  private void insertLive(Task task) {
+    LocalDateTime at = task.getCreatedAt();
+    LocalDate day = at.toLocalDate();
+    if (!liveHeaders.containsKey(day)) {
+      DateHeader header = new DateHeader(day);
+      liveHeaders.put(day, header);
+      rows.add(search(day.atStartOfDay(), HEADER_RANK, false), header);
+    }
+    TaskEntry entry = new TaskEntry(task);
+    liveEntries.put(task, entry);
+    rows.add(search(at, TASK_RANK, true), entry);
   }
 
+  private void removeLive(Task task) {
+    TaskEntry entry = liveEntries.remove(task);
+    if (entry == null) return;
+    int i = indexOfLive(entry);
+    if (i < 0) return;
+    Entry above = rows.get(i - 1);
+    if (removeAt(rows, i) == 2 && above instanceof DateHeader h) liveHeaders.remove(h.date());
+  }
 
-  private void addTaskNode(Task task) {
-    boolean todayHeaderExists = listContainer.getChildren().stream()
-        .anyMatch(n -> n instanceof Label && "--- Today ---".equals(((Label)n).getText()));
+  /** Row index of a live entry: binary search to its timestamp, then past any equal timestamps. */
+  private int indexOfLive(TaskEntry entry) {
+    LocalDateTime at = entry.task().getCreatedAt();
+    for (int i = search(at, TASK_RANK, false); i < rows.size() && compareKey(rows.get(i), at, TASK_RANK) == 0; i++) {
+      if (rows.get(i) == entry) return i;
+    }
+    // createdAt changed after the row was placed; not expected, but stay correct.
+    for (int i = historyEntries; i < rows.size(); i++) {
+      if (rows.get(i) == entry) return i;
+    }
+    return -1;
+  }
 
-    if (!todayHeaderExists) {
-      addDateHeader(LocalDate.now());
+  /** First live row whose key is at least (or, when {@code after}, greater than) the given key. */
+  private int search(LocalDateTime time, int rank, boolean after) {
+    int lo = historyEntries, hi = rows.size();
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      int c = compareKey(rows.get(mid), time, rank);
+      if (c < 0 || (after && c == 0)) lo = mid + 1;
+      else hi = mid;
     }
-    addTaskRow(task);
+    return lo;
   }
 
-  private void removeTaskNode(Task task) {
-    Node nodeToRemove = null;
-    for (Node n : listContainer.getChildren()) {
-      if (n instanceof TaskContainer && task.equals(n.getUserData())) {
-        nodeToRemove = n;
-        break;
+  private static int compareKey(Entry e, LocalDateTime time, int rank) {
+    int c = keyTime(e).compareTo(time);
+    return c != 0 ? c : Integer.compare(e instanceof DateHeader ? HEADER_RANK : TASK_RANK, rank);
+  }
+
+  private static LocalDateTime keyTime(Entry e) {
+    return e instanceof DateHeader h ? h.date().atStartOfDay() : ((TaskEntry) e).task().getCreatedAt();
+  }
+
+  private static void removeEntry(ObservableList<Entry> rows, Task task) {
+    for (int i = 0; i < rows.size(); i++) {
+      if (rows.get(i) instanceof TaskEntry e && e.task() == task) {
+        removeAt(rows, i);
+        return;
       }
     }
+  }
+
+  private void removeHistoryEntry(HistoryEntry entry) {
+    int i = rows.indexOf(entry);
+    if (i >= 0) historyEntries -= removeAt(rows, i);
+    history.remove(entry.row());
+  }
+
+  /** Removes the row at {@code i}, and its date header if that was the last task of its day; returns the count removed. */
+  private static int removeAt(List<Entry> rows, int i) {
+    rows.remove(i);
+    boolean headerAbove = i > 0 && rows.get(i - 1) instanceof DateHeader;
+    boolean taskBelow = i < rows.size() && !(rows.get(i) instanceof DateHeader);
+    if (headerAbove && !taskBelow) {
+      rows.remove(i - 1);
+      return 2;
+    }
+    return 1;
+  }
+
+  static String headerText(LocalDate date) {
+    if (date.isEqual(LocalDate.now())) {
+      return "--- Today ---";
+    }
+    return "--- " + date.format(DATE_HEADER_FMT) + " ---";
+  }
 
-    if (nodeToRemove != null) {
-      listContainer.getChildren().remove(nodeToRemove);
+  private final class TaskCell extends ListCell<Entry> {
+    private final Label dateSep = new Label();
+    private Task shown;
+    private final TaskContainer row = new TaskContainer(onSave, node -> toggleFromRow(shown, node),
+        task -> deleteFromRow(getItem(), shown, task), expanded);
+
+    TaskCell() {
+      createdCells++;
+      cells.add(this);
+      // Let the flow size cells to the viewport instead of the widest row.
+      setPrefWidth(0);
+
+      dateSep.getStyleClass().add("date-separator");
+      dateSep.setMaxWidth(Double.MAX_VALUE);
+      dateSep.setAlignment(Pos.CENTER);
+      dateSep.prefWidthProperty().bind(widthProperty());
+      row.prefWidthProperty().bind(widthProperty());
+    }
+
+    @Override
+    protected void updateItem(Entry item, boolean empty) {
+      super.updateItem(item, empty);
+      setText(null);
+      if (empty || item == null) {
+        shown = null;
+        setGraphic(null);
+      } else if (item instanceof DateHeader h) {
+        shown = null;
+        dateSep.setText(headerText(h.date()));
+        setGraphic(dateSep);
+      } else if (item instanceof TaskEntry e) {
+        shown = e.task();
+        row.setTask(shown);
+        setGraphic(row);
+      } else if (item instanceof HistoryEntry h) {
+        shown = history.materialize(h.row());
+        row.setTask(shown);
+        setGraphic(row);
+      }
     }
   }
-}
\ No newline at end of file
+}
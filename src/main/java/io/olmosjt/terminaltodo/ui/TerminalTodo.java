@@ -1,27 +1,116 @@
 package io.olmosjt.terminaltodo.ui;
 
 import io.olmosjt.terminaltodo.backend.DataService;
+import io.olmosjt.terminaltodo.backend.IdPool;
+import io.olmosjt.terminaltodo.backend.PersistenceQueue;
+import io.olmosjt.terminaltodo.backend.SearchIndex;
+import io.olmosjt.terminaltodo.backend.SyncChange;
 import io.olmosjt.terminaltodo.backend.Task;
+import io.olmosjt.terminaltodo.backend.TaskIndex;
+import io.olmosjt.terminaltodo.backend.TaskQuery;
+import io.olmosjt.terminaltodo.backend.TaskRow;
+import io.olmosjt.terminaltodo.command.TaskCommand;
+import io.olmosjt.terminaltodo.command.TaskFilter;
+import io.olmosjt.terminaltodo.metrics.Metrics;
+import io.olmosjt.terminaltodo.metrics.PulseEvent;
+import io.olmosjt.terminaltodo.sync.SyncClient;
 import javafx.application.Application;
 import javafx.application.Platform;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import javafx.scene.Node;
+import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.TextArea;
 import javafx.scene.layout.BorderPane;
 import javafx.stage.Stage;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 
 public class TerminalTodo extends Application {
-  private ObservableList<Task> tasks;
   private BorderPane root;
-  private TaskListPanel taskListPanel;
+  private InputPanel inputPanel;
   private Stage primaryStage;
+  private boolean canvasMode;
 
-  private static final Pattern CMD_PATTERN = Pattern.compile("^(.*?)\\s+\\[([a-zA-Z0-9:]+)\\]$");
+  // The workspace on screen, and the most recently used ones (it included) kept loaded in access
+  // order; the eldest past the cache size is dropped, and coming back to it loads it again.
+  private WorkspaceView ws;
+  private final Map<String, WorkspaceView> views = new LinkedHashMap<>(8, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, WorkspaceView> eldest) {
+      return size() > workspaceCacheSize;
+    }
+  };
+  private int workspaceCacheSize = DEFAULT_WORKSPACE_CACHE;
+
+  // Ids are unique across workspaces, so one pool serves them all.
+  private final IdPool idPool = new IdPool();
+
+  // Set once a sync server is configured; syncs in the background every syncIntervalSeconds.
+  private SyncClient syncClient;
+  private int syncIntervalSeconds = DEFAULT_SYNC_INTERVAL;
+
+  // Commands typed before the initial load finished; replayed in order once it has.
+  private boolean loaded;
+  private final List<String> queuedCommands = new ArrayList<>();
+
+
+  // Pulse instrumentation; the node count is sampled at most once per NODE_SAMPLE_NANOS.
+  private long pulseStart;
+  private PulseEvent pulseEvent;
+  private long lastNodeSample;
+  private static final long NODE_SAMPLE_NANOS = 1_000_000_000L;
+
+  private static final String WINDOW_DAYS_KEY = "load_window_days";
+  private static final int DEFAULT_WINDOW_DAYS = 7;
+  private static final String ARCHIVE_DAYS_KEY = "archive_after_days";
+  private static final int DEFAULT_ARCHIVE_DAYS = 30;
+  private static final String VIEW_KEY = "render_mode";
+  private static final String IMPORT_BATCH_KEY = "import_batch_size";
+  private static final int DEFAULT_IMPORT_BATCH = 1000;
+  private static final String WORKSPACE_KEY = "workspace";
+  private static final String WORKSPACE_CACHE_KEY = "workspace_cache_size";
+  private static final int DEFAULT_WORKSPACE_CACHE = 3;
+  private static final String SYNC_URL_KEY = "sync_url";
+  private static final String SYNC_INTERVAL_KEY = "sync_interval_seconds";
+  private static final int DEFAULT_SYNC_INTERVAL = 300;
+  private static final int HISTORY_PAGE_DAYS = 7;
+  private static final int FIND_LIMIT = 500;
+
+  private static final Set<String> BATCH_REJECTED = Set.of("exit", "clear", "help");
+
+  // Script files are read here: the persistence thread is for the DB only.
+  private static final ExecutorService FILE_READER = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "file-reader");
+    t.setDaemon(true);
+    return t;
+  });
+
+  private record HistoryPage(LocalDate start, List<Task> tasks) {}
+  private record InitialLoad(String workspace, int cacheSize, HistoryPage page) {}
+  private record SyncSettings(String url, int intervalSeconds) {}
+  private record ParentLookup(Task parent, String error) {}
 
   public static void main(String[] args) { launch(args); }
 
@@ -29,30 +118,395 @@ public class TerminalTodo extends Application {
   public void start(Stage primaryStage) {
     this.primaryStage = primaryStage;
 
-    tasks = FXCollections.observableArrayList();
-    DataService.loadTasks(tasks);
-
     root = new BorderPane();
     String currentTheme = "theme-dark";
     root.getStyleClass().addAll("terminal-window", currentTheme);
 
-    taskListPanel = new TaskListPanel(tasks);
-    InputPanel inputPanel = new InputPanel(this::handleCommand);
+    inputPanel = new InputPanel(this::handleCommand);
+    inputPanel.setOnBatch(lines -> runBatch(lines, "paste"));
+    PersistenceQueue.setOnPendingChanged(n -> Platform.runLater(() -> inputPanel.setPendingWrites(n)));
 
-    root.setCenter(taskListPanel);
     root.setBottom(inputPanel);
+    // The saved workspace is only known once the DB is open; until then this one holds the place.
+    showView(newView(Task.DEFAULT_WORKSPACE));
 
     Scene scene = new Scene(root, 750, 500);
     scene.getStylesheets().add(getClass().getResource("style.css").toExternalForm());
 
-    primaryStage.setTitle("user@linux:~/todo");
     primaryStage.setScene(scene);
+
+    Runnable firstFrame = new Runnable() {
+      @Override
+      public void run() {
+        scene.removePostLayoutPulseListener(this);
+        recordSinceJvmStart("startup.firstFrame");
+      }
+    };
+    scene.addPostLayoutPulseListener(firstFrame);
+    instrumentPulses(scene);
     primaryStage.show();
 
     inputPanel.requestFocusOnInput();
+    loadInitialTasks();
+    idPool.reserve(0); // the first ids are fetched while the window loads
+  }
+
+  /**
+   * Opens the DB (schema migrations included) and loads the recent window of the last used
+   * workspace off the FX thread.
+   */
+  private void loadInitialTasks() {
+    inputPanel.showMessage("loading...");
+    PersistenceQueue.submit("db.loadInitial", () -> {
+      DataService.init();
+      String name = DataService.getSetting(WORKSPACE_KEY, Task.DEFAULT_WORKSPACE);
+      if (!Task.isWorkspaceName(name)) name = Task.DEFAULT_WORKSPACE;
+      DataService.useWorkspace(name);
+      LocalDate start = LocalDate.now().minusDays(loadWindowDays() - 1);
+      return new InitialLoad(name, intSetting(WORKSPACE_CACHE_KEY, DEFAULT_WORKSPACE_CACHE),
+          new HistoryPage(start, DataService.loadPage(start, DataService.END_OF_TIME)));
+    }).whenComplete((init, error) -> Platform.runLater(() -> {
+      if (error != null) {
+        error.printStackTrace();
+        ws.historyCursor = LocalDate.now();
+      } else {
+        workspaceCacheSize = init.cacheSize();
+        if (!init.workspace().equals(ws.name)) {
+          views.remove(ws.name);
+          PersistenceQueue.useWorkspace(init.workspace());
+          showView(newView(init.workspace()));
+        }
+        ws.historyCursor = init.page().start();
+        ws.tasks.addAll(init.page().tasks());
+      }
+      // Streams in behind the initial page; !find works on what is indexed so far until it completes.
+      loadSearchIndex(ws);
+      loaded = true;
+      recordSinceJvmStart("startup.tasksLoaded");
+
+      inputPanel.showMessage("");
+      List<String> replay = new ArrayList<>(queuedCommands);
+      queuedCommands.clear();
+      replay.forEach(this::handleCommand);
+    }));
+
+    // First start of the day: roll unfinished tasks from earlier days forward.
+    PersistenceQueue.submit("db.migrate", () -> DataService.migrateIfDue(LocalDate.now()))
+        .whenComplete((result, error) -> Platform.runLater(() -> applyMigration(result, error)));
+
+    // Finished tasks past the archive age move to the cold tier. The cutoff never reaches into the
+    // loaded window, so nothing on screen disappears.
+    PersistenceQueue.submit("db.archive", () -> {
+      int days = Math.max(intSetting(ARCHIVE_DAYS_KEY, DEFAULT_ARCHIVE_DAYS), loadWindowDays());
+      return DataService.archiveBefore(LocalDate.now().minusDays(days));
+    }).whenComplete((ids, error) -> {
+      if (error != null) error.printStackTrace();
+    });
+
+    PersistenceQueue.submit("db.loadSettings", () -> DataService.getSetting(VIEW_KEY, "nodes"))
+        .whenComplete((mode, error) -> Platform.runLater(() -> {
+          if (error == null) setViewMode(mode, false);
+        }));
+
+    PersistenceQueue.submit("db.loadSyncSettings", () -> new SyncSettings(
+            DataService.getSetting(SYNC_URL_KEY, ""), intSetting(SYNC_INTERVAL_KEY, DEFAULT_SYNC_INTERVAL)))
+        .whenComplete((settings, error) -> Platform.runLater(() -> {
+          if (error != null) return;
+          syncIntervalSeconds = settings.intervalSeconds();
+          if (!settings.url().isEmpty()) sync(settings.url(), false);
+        }));
+  }
+
+  /**
+   * Fills the full-history search index of {@code w}; runs while the DB is scoped to it. A clear
+   * of the index before the job finishes cancels it.
+   */
+  private void loadSearchIndex(WorkspaceView w) {
+    long generation = w.searchIndex.generation();
+    PersistenceQueue.submit("db.loadSearchIndex", () -> {
+      DataService.loadSearchIndex(w.searchIndex, generation);
+      return null;
+    });
+  }
+
+  private WorkspaceView newView(String name) {
+    WorkspaceView w = new WorkspaceView(name, this::saveTask, this::deleteTask);
+    w.panel.setOnScrolledToTop(this::loadOlderHistory);
+    w.panel.setOnToggle(this::toggleTask);
+    views.put(name, w);
+    return w;
+  }
+
+  private void showView(WorkspaceView w) {
+    ws = w;
+    root.setCenter(w.view(canvasMode));
+    primaryStage.setTitle("user@linux:~/todo" + (w.name.equals(Task.DEFAULT_WORKSPACE) ? "" : "/" + w.name));
+  }
+
+  /**
+   * Switches to workspace {@code name}. A cached one is put back on screen as it was; any other
+   * gets a new view whose recent window and search index load on the persistence thread, after the
+   * DB has been scoped to it.
+   */
+  private void switchWorkspace(String name) {
+    if (name.equals(ws.name)) {
+      inputPanel.showMessage("already in workspace " + name);
+      return;
+    }
+    PersistenceQueue.useWorkspace(name);
+    WorkspaceView cached = views.get(name);
+    if (cached != null) {
+      showView(cached);
+      inputPanel.showMessage("workspace: " + name);
+    } else {
+      showView(newView(name));
+      inputPanel.showMessage("workspace: " + name + " (new view)");
+      loadWindow(ws);
+    }
+    PersistenceQueue.submit("db.saveSetting", () -> {
+      DataService.setSetting(WORKSPACE_KEY, name);
+      return null;
+    });
+  }
+
+  /** The current workspace, the cached ones and every workspace that has rows, with its task count. */
+  private void showWorkspaces() {
+    String cached = String.join(", ", views.keySet());
+    PersistenceQueue.submit("db.listWorkspaces", DataService::listWorkspaces)
+        .whenComplete((all, error) -> Platform.runLater(() -> {
+          if (error != null) {
+            error.printStackTrace();
+            return;
+          }
+          String stored = all.stream().map(w -> w.name() + " (" + w.tasks() + ")").collect(Collectors.joining(", "));
+          inputPanel.showMessage("workspace: " + ws.name + " - cached: " + cached
+              + (stored.isEmpty() ? "" : " - stored: " + stored));
+        }));
+  }
+
+  /** Loads the recent window of {@code w} from scratch, then its search index. */
+  private void loadWindow(WorkspaceView w) {
+    PersistenceQueue.submit("db.loadWindow", () -> {
+      LocalDate start = LocalDate.now().minusDays(loadWindowDays() - 1);
+      return new HistoryPage(start, DataService.loadPage(start, DataService.END_OF_TIME));
+    }).whenComplete((page, error) -> Platform.runLater(() -> {
+      if (error != null) {
+        error.printStackTrace();
+        return;
+      }
+      w.panel.clearResults();
+      w.panel.clearHistory();
+      w.searchIndex.clear();
+      w.tasks.setAll(page.tasks());
+      w.historyCursor = page.start();
+      w.historyExhausted = false;
+      loadSearchIndex(w); // after the clear, or the clear would cancel it
+    }));
+  }
+
+  /**
+   * Reloads the recent window from scratch (after an import changed rows behind our back). Other
+   * cached workspaces may be stale too, so they are dropped and load again when next opened.
+   */
+  private void reloadWindow() {
+    views.keySet().removeIf(name -> !name.equals(ws.name));
+    loadWindow(ws);
+  }
+
+  /**
+   * Runs a sync now. A non-empty {@code url} first points the client at that server and starts
+   * the periodic background sync; {@code remember} also saves it for the next start.
+   */
+  private void sync(String url, boolean remember) {
+    if (!url.isEmpty()) {
+      if (syncClient != null) syncClient.close();
+      syncClient = new SyncClient(url, SyncClient.DEFAULT_BATCH_SIZE);
+      syncClient.syncEvery(Duration.ofSeconds(syncIntervalSeconds),
+          (result, error) -> Platform.runLater(() -> showSyncResult(result, error, false)));
+      if (remember) {
+        PersistenceQueue.submit("db.saveSetting", () -> {
+          DataService.setSetting(SYNC_URL_KEY, url);
+          return null;
+        });
+      }
+    }
+    inputPanel.showMessage("syncing...");
+    syncClient.requestSync().whenComplete((result, error) -> Platform.runLater(() -> showSyncResult(result, error, true)));
+  }
+
+  /** Patches in what a sync changed; background runs that changed nothing stay quiet. */
+  private void showSyncResult(SyncClient.Result result, Throwable error, boolean requested) {
+    if (error != null) {
+      inputPanel.showMessage("sync failed: " + rootMessage(error));
+      return;
+    }
+    if (result.changes() == null) {
+      reloadWindow();
+    } else if (!result.changes().isEmpty()) {
+      views.values().forEach(w -> applyPulled(w, result.changes()));
+    }
+    if (requested || result.pushed() + result.pulled() > 0) {
+      inputPanel.showMessage("sync: pushed " + result.pushed() + ", pulled " + result.pulled());
+    }
+  }
+
+  /**
+   * Brings the tasks {@code w} holds up to date with rows a pull changed, in place: loaded tasks
+   * take the changed fields, deleted ones go, and new rows join when their parent (or, for a
+   * top-level row, their day) is loaded. Scroll position, expanded rows and history stay as they are.
+   */
+  private void applyPulled(WorkspaceView w, List<SyncChange> changes) {
+    Set<Task> roots = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (SyncChange c : changes) {
+      Task loaded = w.taskIndex.get(c.id());
+      if (c.deleted()) {
+        if (loaded != null) dropPulled(w, loaded, roots);
+        continue;
+      }
+      TaskRow row = c.row();
+      if (!w.name.equals(row.workspace())) continue;
+      if (loaded != null) {
+        loaded.applyRow(row, c.fields());
+        Task parent = w.taskIndex.parentOf(loaded);
+        if (Objects.equals(parent != null ? parent.getId() : null, row.parentId())) {
+          roots.add(w.taskIndex.rootOf(loaded));
+          continue;
+        }
+        dropPulled(w, loaded, roots); // moved to another parent
+      }
+      Task task = loaded != null ? loaded : row.toTask();
+      if (row.parentId() == null) {
+        if (w.historyCursor != null && !row.createdAt().toLocalDate().isBefore(w.historyCursor)) w.tasks.add(task);
+        continue;
+      }
+      Task parent = w.taskIndex.get(row.parentId());
+      if (parent != null) {
+        parent.getSubTasks().add(task);
+        w.taskIndex.addSubTask(parent, task);
+        roots.add(w.taskIndex.rootOf(parent));
+      }
+    }
+    for (Task root : roots) {
+      if (w.taskIndex.get(root.getId()) == root) w.searchIndex.reindex(root);
+    }
+    w.panel.removeHistoryRows(w.historyStore.applyPulled(changes));
+    w.panel.render();
+  }
+
+  /** Takes a loaded task (with its subtree) out of {@code w} for a pulled delete or move. */
+  private static void dropPulled(WorkspaceView w, Task task, Set<Task> roots) {
+    Task parent = w.taskIndex.parentOf(task);
+    if (parent == null) {
+      w.tasks.remove(task);
+      return;
+    }
+    parent.getSubTasks().remove(task);
+    w.taskIndex.remove(task);
+    w.searchIndex.remove(task.getId());
+    roots.add(w.taskIndex.rootOf(parent));
+  }
+
+  /** Times the CSS/layout part of every pulse and keeps the live node count gauge fresh. */
+  private void instrumentPulses(Scene scene) {
+    scene.addPreLayoutPulseListener(() -> {
+      pulseStart = Metrics.start();
+      pulseEvent = new PulseEvent();
+      pulseEvent.begin();
+    });
+    scene.addPostLayoutPulseListener(() -> {
+      if (pulseEvent == null) return;
+      pulseEvent.commit();
+      pulseEvent = null;
+      Metrics.record("fx.pulse", pulseStart);
+      if (pulseStart - lastNodeSample >= NODE_SAMPLE_NANOS) {
+        lastNodeSample = pulseStart;
+        Metrics.setGauge(Metrics.NODES, countNodes(scene.getRoot()));
+      }
+    });
+  }
+
+  private static long countNodes(Node node) {
+    long count = 1;
+    if (node instanceof Parent parent) {
+      for (Node child : parent.getChildrenUnmodifiable()) {
+        count += countNodes(child);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Times a startup milestone from JVM start, so it shows in {@code !stats} and, under a Flight
+   * Recorder recording, as an Operation event. Skipped where the OS does not report the start.
+   */
+  private static void recordSinceJvmStart(String operation) {
+    ProcessHandle.current().info().startInstant().ifPresent(start ->
+        Metrics.record(operation, System.nanoTime() - Duration.between(start, Instant.now()).toNanos()));
+  }
+
+  @Override
+  public void stop() {
+    if (syncClient != null) syncClient.close();
+    PersistenceQueue.shutdown();
+    DataService.shutdown();
+  }
+
+  private static int loadWindowDays() {
+    return intSetting(WINDOW_DAYS_KEY, DEFAULT_WINDOW_DAYS);
+  }
+
+  /**
+   * A positive integer setting, or {@code defaultValue} when unset or malformed. Call it from a
+   * persistence job, never the FX thread: the read waits on the DataService lock.
+   */
+  private static int intSetting(String key, int defaultValue) {
+    try {
+      return Math.max(1, Integer.parseInt(DataService.getSetting(key, String.valueOf(defaultValue))));
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Prepends the next page of older date buckets; reads run on the persistence thread. The page
+   * goes into the compact history store, so its tasks are only materialized when shown.
+   */
+  private void loadOlderHistory() {
+    WorkspaceView w = ws;
+    if (!loaded || w.historyCursor == null || w.loadingHistory || w.historyExhausted) return;
+    w.loadingHistory = true;
+
+    LocalDate before = w.historyCursor;
+    PersistenceQueue.submit("db.loadHistoryPage", () -> {
+      LocalDate start = DataService.olderPageStart(before, HISTORY_PAGE_DAYS);
+      return start == null ? null : new HistoryPage(start, DataService.loadPage(start, before));
+    }).whenComplete((page, error) -> Platform.runLater(() -> {
+      w.loadingHistory = false;
+      if (error != null) {
+        error.printStackTrace();
+      } else if (page == null) {
+        w.historyExhausted = true;
+      } else {
+        w.historyCursor = page.start();
+        List<Integer> rows = new ArrayList<>(page.tasks().size());
+        for (Task task : page.tasks()) {
+          rows.add(w.historyStore.append(task));
+        }
+        w.panel.prependHistory(rows);
+      }
+    }));
   }
 
   private void handleCommand(String input) {
+    long start = Metrics.start();
+    try {
+      dispatchCommand(input);
+    } finally {
+      Metrics.record("ui.command", start);
+    }
+  }
+
+  private void dispatchCommand(String input) {
     String cleanInput = input.trim();
     if (cleanInput.isEmpty()) return;
 
@@ -60,9 +514,83 @@ public class TerminalTodo extends Application {
       Platform.exit();
       return;
     }
-    if (cleanInput.equalsIgnoreCase("clear") || cleanInput.equalsIgnoreCase("!clear")) {
-      tasks.clear();
-      DataService.saveTasks(tasks);
+    if (!loaded) {
+      queuedCommands.add(cleanInput);
+      inputPanel.showMessage("loading... " + queuedCommands.size() + " command(s) queued");
+      return;
+    }
+    if (TaskCommand.isClear(cleanInput)) {
+      ws.tasks.clear();
+      ws.panel.clearHistory();
+      PersistenceQueue.clearAll();
+      ws.searchIndex.clear();
+      ws.panel.clearResults();
+      ws.historyExhausted = true;
+      return;
+    }
+    if (cleanInput.equalsIgnoreCase("!ws") || cleanInput.toLowerCase().startsWith("!ws ")) {
+      String name = cleanInput.substring(3).trim();
+      if (name.isEmpty()) {
+        showWorkspaces();
+      } else if (Task.isWorkspaceName(name)) {
+        switchWorkspace(name);
+      } else {
+        inputPanel.showMessage("usage: !ws <name> (1-50 letters, digits, '-' or '_')");
+      }
+      return;
+    }
+    if (cleanInput.equalsIgnoreCase("!migrate")) {
+      PersistenceQueue.submit("db.migrate", () -> DataService.migrateUnfinished(LocalDate.now()))
+          .whenComplete((result, error) -> Platform.runLater(() -> applyMigration(result, error)));
+      return;
+    }
+    if (cleanInput.equalsIgnoreCase("!history") || cleanInput.toLowerCase().startsWith("!history ")) {
+      showHistoryDay(cleanInput.substring(8).trim());
+      return;
+    }
+    if (cleanInput.toLowerCase().startsWith("!source ")) {
+      sourceScript(resolvePath(cleanInput.substring(8).trim()));
+      return;
+    }
+    if (cleanInput.toLowerCase().startsWith("!export ")) {
+      exportTasks(resolvePath(cleanInput.substring(8).trim()));
+      return;
+    }
+    if (cleanInput.toLowerCase().startsWith("!import ")) {
+      importTasks(resolvePath(cleanInput.substring(8).trim()));
+      return;
+    }
+    if (cleanInput.equalsIgnoreCase("!find") || cleanInput.toLowerCase().startsWith("!find ")) {
+      find(cleanInput.substring(5).trim());
+      return;
+    }
+    if (cleanInput.equalsIgnoreCase("!ls") || cleanInput.toLowerCase().startsWith("!ls ")) {
+      list(cleanInput.substring(3).trim());
+      return;
+    }
+    if (cleanInput.equalsIgnoreCase("!view") || cleanInput.toLowerCase().startsWith("!view ")) {
+      String mode = cleanInput.substring(5).trim().toLowerCase();
+      if (mode.equals("canvas") || mode.equals("nodes")) {
+        setViewMode(mode, true);
+        inputPanel.showMessage("view: " + mode);
+      } else {
+        inputPanel.showMessage("usage: !view canvas|nodes (now " + (canvasMode ? "canvas" : "nodes") + ")");
+      }
+      return;
+    }
+    if (cleanInput.equalsIgnoreCase("!sync") || cleanInput.toLowerCase().startsWith("!sync ")) {
+      String url = cleanInput.substring(5).trim();
+      if (!url.isEmpty() && !url.startsWith("http://") && !url.startsWith("https://")) {
+        inputPanel.showMessage("usage: !sync http://host:8789 (or !sync alone to sync now)");
+      } else if (url.isEmpty() && syncClient == null) {
+        inputPanel.showMessage("no sync server yet: !sync http://host:8789");
+      } else {
+        sync(url, true);
+      }
+      return;
+    }
+    if (cleanInput.equalsIgnoreCase("!stats")) {
+      showStats();
       return;
     }
     if (cleanInput.equalsIgnoreCase("help") || cleanInput.equalsIgnoreCase("!help")) {
@@ -70,57 +598,453 @@ public class TerminalTodo extends Application {
       return;
     }
 
-    Matcher matcher = CMD_PATTERN.matcher(cleanInput);
-    String taskText = cleanInput;
-    String tag = null;
+    TaskCommand cmd = TaskCommand.parse(cleanInput);
+    if (cmd.parentPrefix() != null) {
+      createSubTask(cmd.parentPrefix(), cmd.text());
+    } else {
+      createTask(cmd.text(), cmd.priority());
+    }
+  }
+
+  private void createTask(String text, Task.Priority priority) {
+    Task task = new Task(text, priority);
+    task.setWorkspace(ws.name);
+    assignId(task);
+    ws.tasks.add(task);
+    PersistenceQueue.save(task);
+  }
+
+  private void createSubTask(String parentIdPrefix, String text) {
+    ParentLookup lookup = resolveParent(parentIdPrefix);
+    if (lookup.error() != null) {
+      inputPanel.showMessage(lookup.error());
+      return;
+    }
+    if (lookup.parent() == null) {
+      createTask(text + " (Orphaned subtask)", Task.Priority.NORMAL);
+      return;
+    }
+
+    Task parent = lookup.parent();
+    Task sub = new Task(text, Task.Priority.NORMAL);
+    sub.setWorkspace(ws.name);
+    assignId(sub);
+    parent.getSubTasks().add(sub);
+    ws.taskIndex.addSubTask(parent, sub);
+    saveTask(ws.taskIndex.rootOf(parent));
+    ws.panel.expand(parent);
+    ws.panel.render();
+  }
 
-    if (matcher.find()) {
-      taskText = matcher.group(1).trim();
-      tag = matcher.group(2).toLowerCase();
+  /** The single task (at any depth) an id prefix names; no parent and no error means nothing matched. */
+  private ParentLookup resolveParent(String parentIdPrefix) {
+    List<Task> matches = new ArrayList<>(ws.taskIndex.findByPrefix(parentIdPrefix, 5));
+    for (int row : ws.historyStore.findByPrefix(parentIdPrefix, 5 - matches.size())) {
+      matches.add(ws.historyStore.materialize(row));
+    }
+    if (matches.isEmpty()) return new ParentLookup(null, null);
+    if (matches.size() > 1) {
+      return new ParentLookup(null, "ambiguous id '" + parentIdPrefix + "': "
+          + String.join(", ", matches.stream().map(Task::getId).toList())
+          + (matches.size() == 5 ? ", ..." : ""));
     }
+    Task parent = matches.get(0);
+    if (ws.taskIndex.depthOf(parent) >= Task.MAX_DEPTH) {
+      return new ParentLookup(null, "'" + parent.getId() + "' is " + Task.MAX_DEPTH + " levels deep; nest elsewhere");
+    }
+    return new ParentLookup(parent, null);
+  }
 
-    processTask(taskText, tag);
+  /**
+   * Runs a pasted block or a sourced script. Every line is parsed and resolved first; only then
+   * are the results applied, as one list change, one render pass and one queued transaction.
+   * Lines that are not task lines, or whose parent cannot be resolved, are reported by number.
+   */
+  private void runBatch(List<String> lines, String origin) {
+    if (!loaded) {
+      inputPanel.showMessage("still loading; run the batch again in a moment");
+      return;
+    }
+    // Checked ids for every line are fetched first, off the FX thread, so the batch never waits on the DB.
+    idPool.reserve(lines.size()).thenRun(() -> Platform.runLater(() -> applyBatch(lines, origin)));
   }
 
-  private void processTask(String text, String tag) {
-    Task.Priority priority = Task.Priority.NORMAL;
-    String parentId = null;
+  private void applyBatch(List<String> lines, String origin) {
+    List<Task> created = new ArrayList<>();
+    List<Task[]> subTasks = new ArrayList<>(); // {parent, sub}
+    Set<String> batchIds = new HashSet<>();
+    List<String> errors = new ArrayList<>();
+    for (int i = 0; i < lines.size(); i++) {
+      String line = lines.get(i).trim();
+      if (line.isEmpty() || line.startsWith("#")) continue;
+      if (line.startsWith("!") || BATCH_REJECTED.contains(line.toLowerCase())) {
+        errors.add("line " + (i + 1) + ": commands are not allowed in a batch: " + line);
+        continue;
+      }
 
-    if (tag != null) {
-      if (tag.startsWith("sub:")) {
-        parentId = tag.substring(4);
+      TaskCommand cmd = TaskCommand.parse(line);
+      if (cmd.text().isEmpty()) {
+        errors.add("line " + (i + 1) + ": empty task text");
+        continue;
+      }
+      if (cmd.parentPrefix() == null) {
+        created.add(newBatchTask(cmd.text(), cmd.priority(), batchIds));
+        continue;
+      }
+      ParentLookup lookup = resolveParent(cmd.parentPrefix());
+      if (lookup.error() != null) {
+        errors.add("line " + (i + 1) + ": " + lookup.error());
+      } else if (lookup.parent() == null) {
+        created.add(newBatchTask(cmd.text() + " (Orphaned subtask)", Task.Priority.NORMAL, batchIds));
       } else {
-        switch (tag) {
-          case "high" -> priority = Task.Priority.HIGH;
-          case "critical" -> priority = Task.Priority.CRITICAL;
-          case "low" -> priority = Task.Priority.LOW;
-        }
+        subTasks.add(new Task[] {lookup.parent(), newBatchTask(cmd.text(), Task.Priority.NORMAL, batchIds)});
       }
     }
 
-    if (parentId != null) {
-      createSubTask(parentId, text);
+    // Changed top-level tasks; a nested parent is saved and reindexed through its root.
+    Set<Task> roots = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (Task[] pair : subTasks) {
+      pair[0].getSubTasks().add(pair[1]);
+      ws.taskIndex.addSubTask(pair[0], pair[1]);
+      ws.panel.expand(pair[0]);
+      roots.add(ws.taskIndex.rootOf(pair[0]));
+    }
+    ws.tasks.addAll(created);
+    for (Task root : roots) {
+      ws.historyStore.pin(root);
+      ws.searchIndex.reindex(root);
+    }
+    List<Task> toSave = new ArrayList<>(created);
+    toSave.addAll(roots);
+    PersistenceQueue.saveAll(toSave);
+    if (!roots.isEmpty()) ws.panel.render();
+
+    inputPanel.showMessage(origin + ": " + created.size() + " task(s), " + subTasks.size() + " subtask(s)"
+        + (errors.isEmpty() ? "" : ", " + errors.size() + " error(s)"));
+    if (!errors.isEmpty()) showBatchErrors(origin, errors);
+  }
+
+  private Task newBatchTask(String text, Task.Priority priority, Set<String> batchIds) {
+    Task task = new Task(text, priority);
+    task.setWorkspace(ws.name);
+    assignId(task);
+    while (!batchIds.add(task.getId())) {
+      task.setId(idPool.next());
+      ws.taskIndex.ensureUniqueId(task, idPool::next);
+    }
+    return task;
+  }
+
+  /**
+   * Gives a new task an id none of the loaded tasks has and, unless the pool ran dry, no row in the
+   * table has either (see {@link IdPool}). Inserts are upserts, so a reused id would overwrite an
+   * older row; batches reserve their ids up front for that reason.
+   */
+  private void assignId(Task task) {
+    task.setId(idPool.next());
+    ws.taskIndex.ensureUniqueId(task, idPool::next);
+  }
+
+  /** Reads a script off the FX thread, and off the DB writer, and runs it as one batch. */
+  private void sourceScript(Path file) {
+    CompletableFuture.supplyAsync(() -> {
+          try {
+            return Files.readAllLines(file);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }, FILE_READER)
+        .whenComplete((lines, error) -> Platform.runLater(() -> {
+          if (error != null) {
+            inputPanel.showMessage("source failed: " + rootMessage(error));
+          } else {
+            runBatch(lines, file.getFileName().toString());
+          }
+        }));
+  }
+
+  private void showBatchErrors(String origin, List<String> errors) {
+    Alert alert = new Alert(Alert.AlertType.WARNING);
+    alert.initOwner(primaryStage);
+    alert.setResizable(true);
+    alert.setTitle("TerminalTodo Batch");
+    alert.setHeaderText(origin + ": " + errors.size() + " line(s) skipped");
+
+    TextArea area = new TextArea(String.join("\n", errors));
+    area.setEditable(false);
+    area.setWrapText(true);
+    area.getStyleClass().add("help-console");
+
+    var dialogPane = alert.getDialogPane();
+    dialogPane.setContent(area);
+    dialogPane.getStylesheets().add(getClass().getResource("style.css").toExternalForm());
+    dialogPane.getStyleClass().addAll("terminal-window", "theme-dark");
+    alert.show();
+  }
+
+  /** Persists a changed top-level task and refreshes its search entry (text or subtasks may differ). */
+  private void saveTask(Task task) {
+    ws.historyStore.pin(task);
+    PersistenceQueue.save(task);
+    ws.searchIndex.reindex(task);
+  }
+
+  /**
+   * Persists a done toggle of {@code node} (with its subtree) in the row of {@code shown}, as one
+   * set-based update instead of a save of every row under it.
+   */
+  private void toggleTask(Task shown, Task node) {
+    ws.historyStore.pin(shown);
+    Task parent = ws.taskIndex.parentOf(node);
+    PersistenceQueue.setDone(node, parent != null ? parent.getId() : null);
+  }
+
+  /** Removes a task or a subtask at any depth (already detached from its parent by the row), with its subtree. */
+  private void deleteTask(Task task) {
+    TaskIndex index = ws.taskIndex.get(task.getId()) == task ? ws.taskIndex : ws.resultIndex;
+    Task parent = index.parentOf(task);
+    Task root = parent != null ? index.rootOf(parent) : null;
+    ws.tasks.remove(task);
+    ws.taskIndex.remove(task);
+    ws.resultIndex.remove(task);
+    PersistenceQueue.delete(task.getId());
+    if (root != null) {
+      ws.searchIndex.reindex(root);
     } else {
-      createTask(text, priority);
+      ws.searchIndex.remove(task.getId());
     }
   }
 
-  private void createTask(String text, Task.Priority priority) {
-    tasks.add(new Task(text, priority));
-    DataService.saveTasks(tasks);
+  /** Writes every task of every workspace to {@code file} (JSONL, or CSV for a .csv name) on the persistence thread. */
+  private void exportTasks(Path file) {
+    inputPanel.showMessage("exporting to " + file + "...");
+    PersistenceQueue.submit("db.export", () -> DataService.exportTasks(file))
+        .whenComplete((result, error) -> Platform.runLater(() -> inputPanel.showMessage(error != null
+            ? "export failed: " + rootMessage(error)
+            : "exported " + result.rows() + " row(s) to " + file)));
   }
 
-  private void createSubTask(String parentIdPrefix, String text) {
-    tasks.stream()
-        .filter(t -> t.getId().startsWith(parentIdPrefix))
-        .findFirst()
-        .ifPresentOrElse(parent -> {
-          parent.getSubTasks().add(new Task(text, Task.Priority.NORMAL));
-          DataService.saveTasks(tasks);
-          taskListPanel.render();
-        }, () -> {
-          createTask(text + " (Orphaned subtask)", Task.Priority.NORMAL);
-        });
+  /** Upserts the rows of an exported file in batches, then reloads what is on screen. */
+  private void importTasks(Path file) {
+    inputPanel.showMessage("importing " + file + "...");
+    PersistenceQueue.submit("db.import",
+            () -> DataService.importTasks(file, intSetting(IMPORT_BATCH_KEY, DEFAULT_IMPORT_BATCH)))
+        .whenComplete((result, error) -> Platform.runLater(() -> {
+          if (error != null) {
+            inputPanel.showMessage("import failed: " + rootMessage(error));
+            return;
+          }
+          inputPanel.showMessage("imported " + result.rows() + " row(s)"
+              + (result.rejected() > 0 ? ", rejected " + result.rejected() + " (" + result.firstError() + ")" : ""));
+          reloadWindow();
+        }));
+  }
+
+  private static Path resolvePath(String arg) {
+    if (arg.startsWith("~/")) return Path.of(System.getProperty("user.home"), arg.substring(2));
+    return Path.of(arg);
+  }
+
+  private static String rootMessage(Throwable error) {
+    Throwable t = error;
+    while (t.getCause() != null) t = t.getCause();
+    return t.getMessage() != null ? t.getMessage() : t.toString();
+  }
+
+  /**
+   * Reflects a finished migration in memory: originals that are loaded (live or in history, in any
+   * cached workspace) get their migrated mark and only their visible rows are re-bound, and the
+   * copies are appended to today's bucket of their workspace without a rebuild. Copies for
+   * workspaces not cached show up when those load.
+   *
+   * <p>The rollover covers every workspace, not just the one it was started from: it is the daily
+   * step recorded once per day for the whole database, so a per-workspace run would leave the
+   * other workspaces' unfinished tasks behind until the next day.
+   */
+  private void applyMigration(DataService.MigrationResult result, Throwable error) {
+    if (error != null) {
+      error.printStackTrace();
+      return;
+    }
+    if (result == null) return;
+
+    Set<String> migrated = new HashSet<>(result.migratedIds());
+    for (WorkspaceView w : views.values()) {
+      for (String id : migrated) {
+        Task original = w.taskIndex.get(id);
+        if (original != null) original.migrated();
+      }
+      w.historyStore.markMigrated(result.migratedIds());
+      w.tasks.addAll(result.carried().stream().filter(t -> t.getWorkspace().equals(w.name)).toList());
+      w.panel.refreshTasks(migrated);
+    }
+    if (!result.carried().isEmpty()) {
+      inputPanel.showMessage("migrated " + result.carried().size() + " unfinished task(s) to today");
+    }
+  }
+
+  /**
+   * Shows the tasks matching every word of {@code query} as a filtered view. Hits outside the
+   * loaded window are fetched by id; an empty query goes back to the full list.
+   */
+  private void find(String query) {
+    if (query.isEmpty()) {
+      ws.panel.clearResults();
+      return;
+    }
+
+    SearchIndex.Result result = ws.searchIndex.search(query, FIND_LIMIT);
+    String summary = "find '" + query + "': " + result.total() + " match(es)"
+        + (result.total() > FIND_LIMIT ? ", showing " + FIND_LIMIT : "") + " - '!find' to go back";
+    showTopLevel(result.ids(), summary);
+  }
+
+  /**
+   * Shows the tasks matching a {@link TaskFilter} expression as a filtered view. The filter runs
+   * as SQL on the persistence thread and only the matching ids come back; no argument goes back.
+   */
+  private void list(String filter) {
+    if (filter.isEmpty()) {
+      ws.panel.clearResults();
+      return;
+    }
+    TaskQuery query;
+    try {
+      query = TaskFilter.parse(filter, LocalDate.now());
+    } catch (IllegalArgumentException e) {
+      inputPanel.showMessage("!ls: " + e.getMessage() + " - see help");
+      return;
+    }
+    PersistenceQueue.submit("db.queryTasks", () -> DataService.queryTasks(query))
+        .whenComplete((result, error) -> Platform.runLater(() -> {
+          if (error != null) {
+            error.printStackTrace();
+            inputPanel.showMessage("!ls failed: " + rootMessage(error));
+            return;
+          }
+          showTopLevel(result.ids(), "ls: " + result.ids().size() + (result.truncated() ? "+" : "")
+              + " task(s) - '!ls' to go back");
+        }));
+  }
+
+  /**
+   * Shows tasks by id in the results view, reusing the loaded instances so edits there land on
+   * the live list and fetching only the rest.
+   */
+  private void showTopLevel(List<String> ids, String summary) {
+    WorkspaceView w = ws;
+    List<Task> hits = new ArrayList<>();
+    List<String> missing = new ArrayList<>();
+    for (String id : ids) {
+      Task loadedTask = w.taskIndex.get(id);
+      if (loadedTask != null && w.taskIndex.parentOf(loadedTask) == null) hits.add(loadedTask);
+      else missing.add(id);
+    }
+
+    if (missing.isEmpty()) {
+      showFindResults(w, hits, summary);
+      return;
+    }
+    PersistenceQueue.submit("db.loadTasksByIds", () -> DataService.loadTasksByIds(missing))
+        .whenComplete((fetched, error) -> Platform.runLater(() -> {
+          if (error != null) {
+            error.printStackTrace();
+          } else {
+            hits.addAll(fetched);
+          }
+          showFindResults(w, hits, summary);
+        }));
+  }
+
+  /** Shows one day, archived rows included, in the results view; no argument goes back. */
+  private void showHistoryDay(String arg) {
+    if (arg.isEmpty()) {
+      ws.panel.clearResults();
+      return;
+    }
+    LocalDate day;
+    try {
+      day = LocalDate.parse(arg);
+    } catch (DateTimeParseException e) {
+      inputPanel.showMessage("usage: !history yyyy-mm-dd");
+      return;
+    }
+    WorkspaceView w = ws;
+    PersistenceQueue.submit("db.loadDay", () -> DataService.loadDay(day))
+        .whenComplete((dayTasks, error) -> Platform.runLater(() -> {
+          if (error != null) {
+            error.printStackTrace();
+            return;
+          }
+          indexResults(w, dayTasks);
+          w.panel.showResults(dayTasks);
+          inputPanel.showMessage("history " + day + ": " + dayTasks.size() + " task(s) - '!history' to go back");
+        }));
+  }
+
+  private void showFindResults(WorkspaceView w, List<Task> hits, String summary) {
+    hits.sort(Comparator.comparing(Task::getCreatedAt));
+    indexResults(w, hits);
+    w.panel.showResults(hits);
+    inputPanel.showMessage(summary);
+  }
+
+  /** Indexes the results not in the live list, replacing the previous results. */
+  private static void indexResults(WorkspaceView w, List<Task> results) {
+    w.resultIndex.clear();
+    for (Task t : results) {
+      if (w.taskIndex.get(t.getId()) != t) w.resultIndex.add(t);
+    }
+  }
+
+  /** Swaps the list renderer; both draw the same rows, so nothing is reloaded. */
+  private void setViewMode(String mode, boolean persist) {
+    canvasMode = mode.equals("canvas");
+    root.setCenter(ws.view(canvasMode));
+    if (persist) {
+      boolean canvas = canvasMode;
+      PersistenceQueue.submit("db.saveSetting", () -> {
+        DataService.setSetting(VIEW_KEY, canvas ? "canvas" : "nodes");
+        return null;
+      });
+    }
+  }
+
+  /** Latency percentiles of every timed operation, plus writes in flight, heap and node counts. */
+  private void showStats() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("%-22s %8s %9s %9s %9s%n", "OPERATION", "COUNT", "P50 ms", "P99 ms", "MAX ms"));
+    Metrics.snapshot().forEach((name, h) -> sb.append(String.format("%-22s %8d %9.2f %9.2f %9.2f%n",
+        name, h.count(), h.p50() / 1e6, h.p99() / 1e6, h.max() / 1e6)));
+
+    Runtime rt = Runtime.getRuntime();
+    long mb = 1024 * 1024;
+    sb.append(String.format("%npending writes: %d%n", PersistenceQueue.pendingCount()));
+    sb.append(String.format("heap: %d MB used / %d MB committed / %d MB max%n",
+        (rt.totalMemory() - rt.freeMemory()) / mb, rt.totalMemory() / mb, rt.maxMemory() / mb));
+    sb.append(String.format("scene nodes: %d live, %d created by task rows, %d list cells%n",
+        countNodes(root.getScene().getRoot()), TaskContainer.getNodeAllocations(), ws.panel.getCreatedCellCount()));
+    sb.append(String.format("tasks: %d loaded, %d history rows (~%d KB compact), %d indexed for !find%n",
+        ws.tasks.size(), ws.historyStore.size(), ws.historyStore.estimatedBytes() / 1024, ws.searchIndex.documentCount()));
+    sb.append(String.format("workspace: %s, %d of %d cached (%s)%n",
+        ws.name, views.size(), workspaceCacheSize, String.join(", ", views.keySet())));
+
+    Alert alert = new Alert(Alert.AlertType.INFORMATION);
+    alert.initOwner(primaryStage);
+    alert.setResizable(true);
+    alert.setTitle("TerminalTodo Stats");
+    alert.setHeaderText("PERFORMANCE COUNTERS");
+
+    TextArea area = new TextArea(sb.toString());
+    area.setEditable(false);
+    area.getStyleClass().add("help-console");
+    area.setPrefColumnCount(64);
+
+    var dialogPane = alert.getDialogPane();
+    dialogPane.setContent(area);
+    dialogPane.getStylesheets().add(getClass().getResource("style.css").toExternalForm());
+    dialogPane.getStyleClass().addAll("terminal-window", "theme-dark");
+    alert.show();
   }
 
   private void showHelp() {
@@ -144,8 +1068,36 @@ public class TerminalTodo extends Application {
         4. Edit Task:
            Double click on existing task description. Edit (press ENTER to save)
         
-        5. System:
-           $ clear   (Delete all tasks)
+        5. Search (tasks and subtasks, whole history):
+           $ !find milk eggs
+           $ !find   (Back to the full list)
+           $ !history 2024-01-31   (One day, archived tasks included)
+        
+        6. Filter (all terms must hold; '!ls' alone goes back):
+           $ !ls priority:high,critical done:false
+           $ !ls since:7d until:today milk
+           $ !ls parent:none|any|1a2b  "exact phrase"  limit:50
+           Dates: yyyy-mm-dd, today, yesterday, or Nd (N days ago)
+        
+        7. Workspaces (separate task lists; recently used ones stay loaded):
+           $ !ws work   (Switch to or create workspace 'work')
+           $ !ws        (Current, cached and stored workspaces)
+        
+        8. Sync (with a server started by 'app serve'):
+           $ !sync http://host:8789   (Remember the server, sync now and every few minutes)
+           $ !sync   (Sync now)
+           A server beyond this machine needs a token: start both sides with
+           TERMINALTODO_SYNC_TOKEN set to the same secret.
+        
+        9. System:
+           $ !migrate (Carry unfinished tasks from earlier days to today)
+           $ !export ~/tasks.jsonl   (or .csv)
+           $ !import ~/tasks.jsonl   (Upsert rows from an export)
+           $ !source ~/plan.txt   (One task line per line, applied as one batch;
+                                   pasting several lines does the same)
+           $ clear   (Delete all tasks of this workspace)
+           $ !stats  (Latency percentiles, pending writes, heap, node counts)
+           $ !view canvas   (Draw the list on a canvas; !view nodes goes back)
            $ help    (Show this menu)
            $ exit    (Close app)
         """;
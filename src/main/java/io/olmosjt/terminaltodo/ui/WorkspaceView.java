@@ -0,0 +1,62 @@
+package io.olmosjt.terminaltodo.ui;
+
+import io.olmosjt.terminaltodo.backend.CompactTaskStore;
+import io.olmosjt.terminaltodo.backend.SearchIndex;
+import io.olmosjt.terminaltodo.backend.Task;
+import io.olmosjt.terminaltodo.backend.TaskIndex;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.scene.Node;
+
+import java.time.LocalDate;
+import java.util.function.Consumer;
+
+/**
+ * Everything the window holds for one workspace: the live task list with the indexes kept in
+ * step with it, the compact history, the list panel (and the canvas once it is asked for) and the
+ * paging state. {@link TerminalTodo} keeps the last few in an LRU, so switching back to one is a
+ * swap of the center node rather than a reload.
+ */
+final class WorkspaceView {
+  final String name;
+  final ObservableList<Task> tasks = FXCollections.observableArrayList();
+  final TaskIndex taskIndex = new TaskIndex();
+  final SearchIndex searchIndex = new SearchIndex();
+  // Results fetched by id or day (not in the live list), so a delete there finds the parent.
+  final TaskIndex resultIndex = new TaskIndex();
+  // Pages scrolled in from older history, kept columnar instead of as Task objects.
+  final CompactTaskStore historyStore = new CompactTaskStore();
+  final TaskListPanel panel;
+  private CanvasTaskView canvas; // created on first use
+
+  // Oldest date currently loaded, null until the first window arrives; everything before it is
+  // fetched page by page on scroll-up.
+  LocalDate historyCursor;
+  boolean loadingHistory;
+  boolean historyExhausted;
+
+  WorkspaceView(String name, Consumer<Task> onSave, Consumer<Task> onDelete) {
+    this.name = name;
+    tasks.addListener((ListChangeListener<Task>) c -> {
+      while (c.next()) {
+        for (Task removed : c.getRemoved()) {
+          taskIndex.remove(removed);
+          searchIndex.remove(removed.getId());
+        }
+        for (Task added : c.getAddedSubList()) {
+          taskIndex.add(added);
+          searchIndex.reindex(added);
+        }
+      }
+    });
+    panel = new TaskListPanel(tasks, historyStore, onSave, onDelete);
+  }
+
+  /** The node to put in the window: the canvas renderer or the node-based list. */
+  Node view(boolean canvasMode) {
+    if (!canvasMode) return panel;
+    if (canvas == null) canvas = new CanvasTaskView(panel);
+    return canvas;
+  }
+}
@@ -2,6 +2,9 @@ module io.olmosjt.terminaltodo {
   requires javafx.controls;
   requires javafx.fxml;
   requires java.sql;
+  requires jdk.jfr;
+  requires jdk.httpserver;
+  requires java.net.http;
   requires static lombok;
 
   exports io.olmosjt.terminaltodo.ui;
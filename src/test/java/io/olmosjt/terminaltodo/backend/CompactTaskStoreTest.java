@@ -0,0 +1,109 @@
+package io.olmosjt.terminaltodo.backend;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactTaskStoreTest {
+  private static final int ROWS = 1_000_000;
+  private static final LocalDateTime EPOCH = LocalDateTime.of(2024, 1, 1, 9, 0);
+
+  /**
+   * 1M history rows cost the store under 64 bytes each by its own accounting; the two
+   * {@link LocalDateTime}s alone of a {@link Task} take about 144. Texts repeat like recurring
+   * tasks do, so they are stored once each.
+   */
+  @Test
+  void holdsAMillionRowsInUnderSixtyFourBytesEach() {
+    CompactTaskStore store = new CompactTaskStore();
+    for (int i = 0; i < ROWS; i++) store.append(historyTask(i));
+
+    assertEquals(ROWS, store.size());
+    assertTrue(store.estimatedBytes() < ROWS * 64L, "store " + store.estimatedBytes() + " bytes");
+  }
+
+  @Test
+  void keepsMicrosecondTimestamps() {
+    Task t = historyTask(7);
+    t.setCreatedAt(EPOCH.withNano(123_456_000));
+    t.setCompletedAt(EPOCH.plusHours(1).withNano(999_999_000));
+    CompactTaskStore store = new CompactTaskStore();
+
+    Task back = store.materialize(store.append(t));
+
+    assertEquals(t.getCreatedAt(), back.getCreatedAt());
+    assertEquals(t.getCompletedAt(), back.getCompletedAt());
+  }
+
+  @Test
+  void findsTopLevelRowsByIdPrefixAcrossAppends() {
+    CompactTaskStore store = new CompactTaskStore();
+    int first = store.append(withId("ab12cd34"));
+    Task parent = withId("ffff0000");
+    parent.getSubTasks().add(withId("ab120000"));
+    int second = store.append(parent);
+    int third = store.append(withId("ab12ffff"));
+    int odd = store.append(withId("ab12-custom"));
+
+    assertEquals(List.of(first, third, odd), store.findByPrefix("ab12", 5));
+    assertEquals(List.of(second), store.findByPrefix("ffff", 5));
+    assertEquals(List.of(first), store.findByPrefix("ab12", 1));
+
+    store.remove(first);
+    assertEquals(List.of(third, odd), store.findByPrefix("ab12", 5));
+  }
+
+  @Test
+  void patchesPulledRowsInPlace() {
+    CompactTaskStore store = new CompactTaskStore();
+    Task parent = withId("10000000");
+    Task child = withId("10000001");
+    child.getSubTasks().add(withId("10000002"));
+    parent.getSubTasks().add(child);
+    parent.getSubTasks().add(withId("10000003"));
+    int top = store.append(parent);
+    int gone = store.append(withId("20000000"));
+    Task shown = store.materialize(top);
+
+    TaskRow stored = TaskRow.of(withId("10000003"), "10000000");
+    TaskRow edited = new TaskRow(stored.id(), "pulled text", false, stored.migrated(), stored.createdAt(), null,
+        Task.Priority.HIGH, stored.parentId(), stored.workspace());
+    List<Integer> removed = store.applyPulled(List.of(
+        new SyncChange(edited.id(), 0, false, SyncChange.TEXT | SyncChange.DONE | SyncChange.PRIORITY, edited),
+        SyncChange.deletion("10000001", 0),
+        SyncChange.deletion("20000000", 0)));
+
+    assertEquals(List.of(gone), removed);
+    assertEquals(1, shown.getSubTasks().size());
+    Task patched = shown.getSubTasks().get(0);
+    assertEquals("pulled text", patched.getText());
+    assertEquals(Task.Priority.HIGH, patched.getPriority());
+    assertTrue(!patched.isDone() && !patched.isDirty());
+    assertEquals(1, store.subTaskCount(top));
+
+    for (int i = 0; i < 300; i++) store.materialize(store.append(historyTask(i))); // evicts the cached copy
+    Task fresh = store.materialize(top);
+    assertEquals(List.of("10000003"), fresh.getSubTasks().stream().map(Task::getId).toList());
+    assertEquals("pulled text", fresh.getSubTasks().get(0).getText());
+  }
+
+  private static Task historyTask(int i) {
+    Task t = new Task("weekly review " + (i % 10_000), Task.Priority.values()[i % 4]);
+    t.setId(String.format("%08x", i * 2654435761L & 0xffffffffL));
+    t.setCreatedAt(EPOCH.minusMinutes(i));
+    t.setDone(true);
+    t.setCompletedAt(t.getCreatedAt().plusHours(1));
+    t.markClean();
+    return t;
+  }
+
+  private static Task withId(String id) {
+    Task t = historyTask(0);
+    t.setId(id);
+    return t;
+  }
+}
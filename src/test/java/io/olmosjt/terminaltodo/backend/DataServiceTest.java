@@ -0,0 +1,246 @@
+package io.olmosjt.terminaltodo.backend;
+
+import io.olmosjt.terminaltodo.command.HeadlessCli;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Runs against the in-memory H2 database the Gradle test task points {@code terminaltodo.db} at. */
+class DataServiceTest {
+  private static final int TABLE_ROWS = 50_000;
+
+  @BeforeEach
+  void emptyTables() throws SQLException {
+    try (Statement st = Database.connection().createStatement()) {
+      st.execute("DELETE FROM tasks");
+      st.execute("DELETE FROM task_tombstones");
+      st.execute("DELETE FROM sync_base");
+    }
+    DataService.useWorkspace(Task.DEFAULT_WORKSPACE);
+  }
+
+  /** Counted in the table: a save touches exactly the rows that changed, and no others get a new version. */
+  @Test
+  void savingOneNewTaskWritesOneRowOfAFullTable() throws SQLException {
+    List<Task> tasks = new ArrayList<>(TABLE_ROWS + 1);
+    for (int i = 0; i < TABLE_ROWS; i++) {
+      tasks.add(task(i, "row " + i));
+    }
+    DataService.saveTasks(tasks);
+    assertEquals(TABLE_ROWS, count("SELECT COUNT(*) FROM tasks"));
+    long untouched = version(tasks.get(7).getId());
+
+    long mark = maxVersion();
+    tasks.add(task(TABLE_ROWS, "one more"));
+    DataService.saveTasks(tasks);
+    assertEquals(TABLE_ROWS + 1, count("SELECT COUNT(*) FROM tasks"));
+    assertEquals(List.of(tasks.get(TABLE_ROWS).getId()), idsWrittenAfter(mark));
+
+    mark = maxVersion();
+    tasks.get(123).setText("edited");
+    DataService.saveTasks(tasks);
+    assertEquals(List.of(tasks.get(123).getId()), idsWrittenAfter(mark));
+
+    mark = maxVersion();
+    DataService.saveTasks(tasks);
+    assertEquals(List.of(), idsWrittenAfter(mark));
+    assertEquals(TABLE_ROWS + 1, count("SELECT COUNT(*) FROM tasks"));
+    assertEquals(untouched, version(tasks.get(7).getId()));
+  }
+
+  @Test
+  void loadsTogglesAndDeletesSubtreesBelowDepthThree() throws SQLException {
+    Task[] chain = chain(5); // depths 0 to 4
+    assertEquals(5, DataService.saveTasks(List.of(chain[0])));
+    assertEquals(4, DataService.depthOf(chain[4].getId()));
+    assertEquals(ids(chain), ids(onlyRoot()));
+
+    // Toggle from depth 1: everything below it follows, the root does not.
+    LocalDateTime at = LocalDateTime.of(2025, 6, 30, 9, 15, 30, 123_456_000);
+    chain[1].setDoneWithSubtasks(true, at);
+    assertTrue(DataService.applyWrites(List.of(new PendingWrite(PendingWrite.Kind.SET_DONE, chain[1].getId(),
+        TaskRow.of(chain[1], chain[0].getId())))));
+    Task[] loaded = flatten(onlyRoot());
+    assertFalse(loaded[0].isDone());
+    for (int depth = 1; depth < 5; depth++) {
+      assertTrue(loaded[depth].isDone(), "depth " + depth);
+      assertEquals(at, loaded[depth].getCompletedAt());
+    }
+
+    // Deleting at depth 2 takes depths 3 and 4 along and leaves tombstones for the push.
+    DataService.deleteTask(chain[2].getId());
+    assertEquals(List.of(chain[0].getId(), chain[1].getId()), ids(onlyRoot()));
+    assertEquals(2, count("SELECT COUNT(*) FROM tasks"));
+    assertEquals(3, count("SELECT COUNT(*) FROM task_tombstones"));
+  }
+
+  @Test
+  void pagesAndIdPrefixesStayInTheActiveWorkspace() {
+    DataService.saveTasks(List.of(inWorkspace(task(0xab01, "home task"), "home"),
+        inWorkspace(task(0xab02, "work task"), "work")));
+
+    DataService.useWorkspace("home");
+    assertEquals(List.of("0000ab01"), DataService.loadPage(LocalDate.now(), DataService.END_OF_TIME).stream()
+        .map(Task::getId).toList());
+    assertEquals(List.of("0000ab01"), DataService.findByIdPrefix("0000ab", 5).stream().map(TaskRow::id).toList());
+
+    DataService.useWorkspace("work");
+    assertEquals(List.of("0000ab02"), DataService.findByIdPrefix("0000ab", 5).stream().map(TaskRow::id).toList());
+    assertTrue(DataService.findByIdPrefix("0000ab01", 5).isEmpty());
+  }
+
+  /** {@code add "... sub:<id>"} only ever nests under a task of its own workspace. */
+  @Test
+  void cliResolvesParentsInItsOwnWorkspace() throws SQLException {
+    DataService.saveTasks(List.of(inWorkspace(task(0xcd01, "home parent"), "home"),
+        inWorkspace(task(0xcd02, "work parent"), "work")));
+
+    // The CLI closes the shared connection when done; this one keeps the in-memory database alive.
+    try (Connection keepAlive = DriverManager.getConnection(Database.DB_URL)) {
+      // Both parents match the prefix, but only one is in "home": not ambiguous.
+      String nested = cli("--ws", "home", "add", "pack [sub:0000cd]");
+      // The only "0000cd02" is in "work", so from "home" it is no parent at all.
+      String orphan = cli("--ws", "home", "add", "unpack [sub:0000cd02]");
+
+      assertEquals("0000cd01", parentOf(keepAlive, nested));
+      assertNull(parentOf(keepAlive, orphan));
+      assertEquals(2, count(keepAlive, "SELECT COUNT(*) FROM tasks WHERE workspace = 'home' AND id IN ('"
+          + nested + "', '" + orphan + "')"));
+    }
+  }
+
+  /**
+   * A workspace view dropped from the cache leaves its unsaved rows in the persistence queue only.
+   * Switching away, and clearing the workspace switched to, must not lose them.
+   */
+  @Test
+  void writesQueuedBeforeLeavingAWorkspaceStillLand() {
+    PersistenceQueue.useWorkspace("home");
+    Task queued = inWorkspace(task(0xef01, "queued at home"), "home");
+    PersistenceQueue.save(queued);
+    PersistenceQueue.useWorkspace("work");
+    PersistenceQueue.clearAll();
+    PersistenceQueue.useWorkspace(Task.DEFAULT_WORKSPACE).join();
+    PersistenceQueue.flush();
+
+    DataService.useWorkspace("home");
+    assertEquals(List.of(queued.getId()), DataService.loadPage(LocalDate.now(), DataService.END_OF_TIME).stream()
+        .map(Task::getId).toList());
+  }
+
+  /** A top-level task with a single line of descendants, {@code length} tasks in all. */
+  private static Task[] chain(int length) {
+    Task[] chain = new Task[length];
+    for (int i = 0; i < length; i++) {
+      chain[i] = task(i, "depth " + i);
+      if (i > 0) chain[i - 1].getSubTasks().add(chain[i]);
+    }
+    return chain;
+  }
+
+  private static Task onlyRoot() {
+    List<Task> page = DataService.loadPage(LocalDate.now(), DataService.END_OF_TIME);
+    assertEquals(1, page.size());
+    return page.get(0);
+  }
+
+  private static Task[] flatten(Task root) {
+    List<Task> line = new ArrayList<>();
+    for (Task t = root; t != null; t = t.getSubTasks().isEmpty() ? null : t.getSubTasks().get(0)) {
+      assertTrue(t.getSubTasks().size() <= 1);
+      line.add(t);
+    }
+    return line.toArray(new Task[0]);
+  }
+
+  private static List<String> ids(Task root) {
+    return Arrays.stream(flatten(root)).map(Task::getId).toList();
+  }
+
+  private static List<String> ids(Task[] tasks) {
+    return Arrays.stream(tasks).map(Task::getId).toList();
+  }
+
+  // Sequential ids: 50k random 8-hex ids would collide now and then.
+  private static Task task(int n, String text) {
+    Task t = new Task(text, Task.Priority.NORMAL);
+    t.setId(String.format("%08x", n));
+    return t;
+  }
+
+  private static Task inWorkspace(Task t, String workspace) {
+    t.setWorkspace(workspace);
+    return t;
+  }
+
+  /** Runs a headless command and returns what it printed, the new task's id for {@code add}. */
+  private static String cli(String... args) {
+    PrintStream out = System.out;
+    ByteArrayOutputStream printed = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(printed, true, StandardCharsets.UTF_8));
+    try {
+      assertEquals(0, HeadlessCli.run(args));
+    } finally {
+      System.setOut(out);
+    }
+    return printed.toString(StandardCharsets.UTF_8).trim();
+  }
+
+  private static String parentOf(Connection connection, String id) throws SQLException {
+    try (PreparedStatement ps = connection.prepareStatement("SELECT parent_id FROM tasks WHERE id = ?")) {
+      ps.setString(1, id);
+      try (ResultSet rs = ps.executeQuery()) {
+        assertTrue(rs.next(), "no row " + id);
+        return rs.getString(1);
+      }
+    }
+  }
+
+  private static long maxVersion() throws SQLException {
+    return count("SELECT COALESCE(MAX(sync_version), 0) FROM tasks");
+  }
+
+  private static long version(String id) throws SQLException {
+    return count("SELECT sync_version FROM tasks WHERE id = '" + id + "'");
+  }
+
+  /** Rows inserted or updated since the table's versions were at most {@code mark}. */
+  private static List<String> idsWrittenAfter(long mark) throws SQLException {
+    List<String> ids = new ArrayList<>();
+    try (Statement st = Database.connection().createStatement();
+         ResultSet rs = st.executeQuery("SELECT id FROM tasks WHERE sync_version > " + mark + " ORDER BY id")) {
+      while (rs.next()) ids.add(rs.getString(1));
+    }
+    return ids;
+  }
+
+  private static long count(String sql) throws SQLException {
+    return count(Database.connection(), sql);
+  }
+
+  private static long count(Connection connection, String sql) throws SQLException {
+    try (Statement st = connection.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+      rs.next();
+      return rs.getLong(1);
+    }
+  }
+}
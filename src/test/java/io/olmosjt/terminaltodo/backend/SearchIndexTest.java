@@ -0,0 +1,51 @@
+package io.olmosjt.terminaltodo.backend;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchIndexTest {
+
+  @Test
+  void clearCancelsABulkLoadRequestedBeforeIt() {
+    SearchIndex index = new SearchIndex();
+    long requested = index.generation();
+    assertTrue(index.beginBulkLoad(requested));
+    assertTrue(index.addBulkRow(requested, "a", "buy milk", null));
+
+    index.clear(); // e.g. !clear while the load streams
+    assertFalse(index.addBulkRow(requested, "b", "buy bread", null));
+    index.endBulkLoad();
+    assertEquals(0, index.search("buy", 10).total());
+
+    // Queued before the clear but not started yet: it must not start at all.
+    long queued = index.generation();
+    index.clear();
+    assertFalse(index.beginBulkLoad(queued));
+    assertTrue(index.beginBulkLoad(index.generation()));
+    index.endBulkLoad();
+  }
+
+  @Test
+  void subtaskRowsFoldIntoTheirRootAndUiEditsWinOverTheLoad() {
+    SearchIndex index = new SearchIndex();
+    long generation = index.generation();
+    assertTrue(index.beginBulkLoad(generation));
+    index.addBulkRow(generation, "root", "plan trip", null);
+
+    Task edited = new Task("pack bags", Task.Priority.NORMAL);
+    edited.setId("other");
+    index.reindex(edited);
+    index.addBulkRow(generation, "other", "stale text", null);
+    index.addBulkRow(generation, "sub", "book train", "root");
+    index.endBulkLoad();
+
+    assertEquals(List.of("root"), index.search("train", 10).ids());
+    assertEquals(List.of("other"), index.search("bags", 10).ids());
+    assertEquals(0, index.search("stale", 10).total());
+  }
+}
@@ -0,0 +1,121 @@
+package io.olmosjt.terminaltodo.sync;
+
+import io.olmosjt.terminaltodo.backend.DataService;
+import io.olmosjt.terminaltodo.backend.SyncChange;
+import io.olmosjt.terminaltodo.backend.Task;
+import io.olmosjt.terminaltodo.backend.TaskRow;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A client on the in-memory test database against a fresh server; the other machine is played by
+ * pushing to the server directly.
+ */
+class SyncClientTest {
+  private SyncServer server;
+  private SyncClient client;
+
+  @BeforeEach
+  void freshServer() throws IOException {
+    DataService.useWorkspace(Task.DEFAULT_WORKSPACE);
+    DataService.deleteAllTasks();
+    DataService.applyPulled(List.of(), 0); // the new server's versions start over
+    server = new SyncServer(InetAddress.getLoopbackAddress(), 0, null, null);
+    server.start();
+    client = new SyncClient("http://127.0.0.1:" + server.port(), 2, null);
+  }
+
+  @AfterEach
+  void stopServer() {
+    client.close();
+    server.stop();
+  }
+
+  @Test
+  void pushesLocalRowsAndPullsTheOtherMachinesRows() throws Exception {
+    Task local = task("a0000001", "written here");
+    DataService.saveTasks(List.of(local));
+
+    SyncClient.Result first = client.sync();
+    assertTrue(first.pushed() >= 1);
+    assertEquals("written here", onServer().get(local.getId()).row().text());
+
+    TaskRow remote = TaskRow.of(task("b0000001", "written there"), null);
+    server.push(List.of(new SyncChange(remote.id(), 0, false, SyncChange.ALL, remote)));
+    SyncClient.Result second = client.sync();
+
+    assertEquals(0, second.pushed());
+    assertEquals(List.of(remote.id()), second.changes().stream().map(SyncChange::id).toList());
+    assertEquals("written there", loaded(remote.id()).getText());
+    assertEquals(0, client.sync().pulled());
+  }
+
+  @Test
+  void deletionsTravelAsTombstonesBothWays() throws Exception {
+    Task mine = task("a0000002", "delete here");
+    Task theirs = task("a0000003", "delete there");
+    DataService.saveTasks(List.of(mine, theirs));
+    client.sync();
+
+    DataService.deleteTask(mine.getId());
+    server.push(List.of(SyncChange.deletion(theirs.getId(), 0)));
+    client.sync();
+
+    assertTrue(onServer().get(mine.getId()).deleted());
+    assertTrue(DataService.loadTasksByIds(List.of(mine.getId(), theirs.getId())).isEmpty());
+
+    // An edit from a machine that missed the delete does not bring the row back.
+    TaskRow stale = TaskRow.of(mine, null);
+    server.push(List.of(new SyncChange(mine.getId(), 0, false, SyncChange.TEXT, stale)));
+    client.sync();
+    assertTrue(DataService.loadTasksByIds(List.of(mine.getId())).isEmpty());
+  }
+
+  @Test
+  void concurrentEditsToOneTaskKeepBothFields() throws Exception {
+    Task shared = task("a0000004", "plan trip");
+    DataService.saveTasks(List.of(shared));
+    client.sync();
+
+    // Here the priority changes; meanwhile the other machine changes the text.
+    shared.setPriority(Task.Priority.HIGH);
+    DataService.saveTasks(List.of(shared));
+    TaskRow there = TaskRow.of(task(shared.getId(), "plan trip to Oslo"), null);
+    server.push(List.of(new SyncChange(shared.getId(), 0, false, SyncChange.TEXT, there)));
+    client.sync();
+
+    Task here = loaded(shared.getId());
+    assertEquals("plan trip to Oslo", here.getText());
+    assertEquals(Task.Priority.HIGH, here.getPriority());
+    TaskRow merged = onServer().get(shared.getId()).row();
+    assertEquals("plan trip to Oslo", merged.text());
+    assertEquals(Task.Priority.HIGH, merged.priority());
+  }
+
+  private Map<String, SyncChange> onServer() {
+    return server.pull(0, 1000).changes().stream().collect(Collectors.toMap(SyncChange::id, Function.identity()));
+  }
+
+  private static Task loaded(String id) {
+    List<Task> tasks = DataService.loadTasksByIds(List.of(id));
+    assertEquals(1, tasks.size());
+    return tasks.get(0);
+  }
+
+  private static Task task(String id, String text) {
+    Task t = new Task(text, Task.Priority.NORMAL);
+    t.setId(id);
+    return t;
+  }
+}
@@ -0,0 +1,180 @@
+package io.olmosjt.terminaltodo.sync;
+
+import io.olmosjt.terminaltodo.backend.SyncChange;
+import io.olmosjt.terminaltodo.backend.Task;
+import io.olmosjt.terminaltodo.backend.TaskRow;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Talks to a server on a free loopback port over HTTP, as two clients would. */
+class SyncServerTest {
+  private static final LocalDateTime CREATED = LocalDateTime.of(2025, 3, 1, 8, 0);
+
+  private final HttpClient http = HttpClient.newHttpClient();
+  private final List<SyncServer> started = new ArrayList<>();
+
+  @AfterEach
+  void stopServers() {
+    started.forEach(SyncServer::stop);
+  }
+
+  @Test
+  void pushedRowsComeBackOnPullPageByPage() throws Exception {
+    SyncServer server = start(null);
+    assertEquals(204, push(server, null, added(row("a1", "first")), added(row("a2", "second")),
+        added(row("a3", "third"))));
+
+    List<SyncChange> all = new ArrayList<>();
+    long cursor = 0;
+    SyncCodec.Frame page;
+    do {
+      page = pull(server, null, cursor, 2);
+      all.addAll(page.changes());
+      cursor = page.cursor();
+    } while (page.more());
+
+    assertEquals(List.of("a1", "a2", "a3"), all.stream().map(SyncChange::id).toList());
+    assertEquals(List.of("first", "second", "third"), all.stream().map(c -> c.row().text()).toList());
+    assertTrue(pull(server, null, cursor, 2).changes().isEmpty());
+  }
+
+  @Test
+  void aDeletionWinsAndItsTombstoneOutlivesARestart() throws Exception {
+    Path data = Files.createTempFile("sync-server", ".data");
+    try {
+      SyncServer server = start(data);
+      push(server, null, added(row("d1", "doomed")));
+      push(server, null, SyncChange.deletion("d1", 0));
+      // A machine that missed the delete still pushes its edit.
+      push(server, null, new SyncChange("d1", 0, false, SyncChange.TEXT, row("d1", "edited elsewhere")));
+      server.stop();
+
+      SyncCodec.Frame page = pull(start(data), null, 0, 10);
+      assertEquals(1, page.changes().size());
+      assertEquals("d1", page.changes().get(0).id());
+      assertTrue(page.changes().get(0).deleted());
+    } finally {
+      Files.deleteIfExists(data);
+    }
+  }
+
+  @Test
+  void concurrentEditsToOneTaskMergeByField() throws Exception {
+    SyncServer server = start(null);
+    TaskRow base = row("c1", "plan trip");
+    push(server, null, added(base));
+    long seen = pull(server, null, 0, 10).cursor();
+
+    // Both machines edit from the same copy: one the text, the other the priority.
+    push(server, null, new SyncChange("c1", 0, false, SyncChange.TEXT, withText(base, "plan trip to Oslo")));
+    push(server, null, new SyncChange("c1", 0, false, SyncChange.PRIORITY, withPriority(base, Task.Priority.HIGH)));
+    TaskRow merged = pull(server, null, seen, 10).changes().get(0).row();
+    assertEquals("plan trip to Oslo", merged.text());
+    assertEquals(Task.Priority.HIGH, merged.priority());
+
+    // Both edit the text: the push that arrives last wins.
+    push(server, null, new SyncChange("c1", 0, false, SyncChange.TEXT, withText(base, "from laptop")));
+    push(server, null, new SyncChange("c1", 0, false, SyncChange.TEXT, withText(base, "from desktop")));
+    List<SyncChange> after = pull(server, null, 0, 10).changes();
+    assertEquals(1, after.size());
+    assertEquals("from desktop", after.get(0).row().text());
+    assertEquals(Task.Priority.HIGH, after.get(0).row().priority());
+  }
+
+  @Test
+  void aTokenServerRejectsMissingOrWrongTokens() throws Exception {
+    SyncServer server = start(null, "s3cret");
+    SyncChange change = added(row("t1", "secret task"));
+
+    assertEquals(401, push(server, null, change));
+    assertEquals(401, push(server, "guess", change));
+    assertEquals(401, pullStatus(server, null));
+    assertEquals(401, pullStatus(server, "guess"));
+    assertEquals(204, push(server, "s3cret", change));
+    assertEquals(List.of("t1"), pull(server, "s3cret", 0, 10).changes().stream().map(SyncChange::id).toList());
+  }
+
+  @Test
+  void refusesToListenBeyondLoopbackWithoutAToken() throws Exception {
+    InetAddress any = InetAddress.getByName("0.0.0.0");
+    assertFalse(any.isLoopbackAddress());
+    assertThrows(IllegalArgumentException.class, () -> new SyncServer(any, 0, null, null));
+    assertThrows(IllegalArgumentException.class, () -> new SyncServer(any, 0, null, " "));
+  }
+
+  private SyncServer start(Path data) throws IOException {
+    return start(data, null);
+  }
+
+  private SyncServer start(Path data, String token) throws IOException {
+    SyncServer server = new SyncServer(InetAddress.getLoopbackAddress(), 0, data, token);
+    server.start();
+    started.add(server);
+    return server;
+  }
+
+  /** @return the HTTP status */
+  private int push(SyncServer server, String token, SyncChange... changes) throws Exception {
+    byte[] body = SyncCodec.encode(new SyncCodec.Frame(0, false, List.of(changes)));
+    HttpRequest request = request(server, "/push", token)
+        .header("Content-Type", SyncCodec.CONTENT_TYPE)
+        .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+        .build();
+    return http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+  }
+
+  private SyncCodec.Frame pull(SyncServer server, String token, long since, int limit) throws Exception {
+    HttpResponse<byte[]> response = http.send(request(server, "/pull?since=" + since + "&limit=" + limit, token)
+        .GET()
+        .build(), HttpResponse.BodyHandlers.ofByteArray());
+    assertEquals(200, response.statusCode());
+    return SyncCodec.decode(new ByteArrayInputStream(response.body()));
+  }
+
+  private int pullStatus(SyncServer server, String token) throws Exception {
+    return http.send(request(server, "/pull?since=0", token).GET().build(), HttpResponse.BodyHandlers.discarding())
+        .statusCode();
+  }
+
+  private static HttpRequest.Builder request(SyncServer server, String path, String token) {
+    HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.port() + path));
+    if (token != null) builder.header("Authorization", "Bearer " + token);
+    return builder;
+  }
+
+  private static SyncChange added(TaskRow row) {
+    return new SyncChange(row.id(), 0, false, SyncChange.ALL, row);
+  }
+
+  private static TaskRow row(String id, String text) {
+    return new TaskRow(id, text, false, false, CREATED, null, Task.Priority.NORMAL, null, Task.DEFAULT_WORKSPACE);
+  }
+
+  private static TaskRow withText(TaskRow r, String text) {
+    return new TaskRow(r.id(), text, r.done(), r.migrated(), r.createdAt(), r.completedAt(), r.priority(),
+        r.parentId(), r.workspace());
+  }
+
+  private static TaskRow withPriority(TaskRow r, Task.Priority priority) {
+    return new TaskRow(r.id(), r.text(), r.done(), r.migrated(), r.createdAt(), r.completedAt(), priority,
+        r.parentId(), r.workspace());
+  }
+}
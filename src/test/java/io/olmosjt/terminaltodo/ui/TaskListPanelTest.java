@@ -0,0 +1,123 @@
+package io.olmosjt.terminaltodo.ui;
+
+import io.olmosjt.terminaltodo.backend.CompactTaskStore;
+import io.olmosjt.terminaltodo.backend.Task;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Drives the panel through its task-list listener, the way the app adds and removes tasks. Needs
+ * the JavaFX toolkit; without a display the tests are skipped.
+ */
+class TaskListPanelTest {
+  private static final int EVENTS = 10_000;
+  private static final LocalDateTime NOW = LocalDateTime.of(2025, 6, 30, 12, 0);
+
+  private static boolean toolkit;
+
+  @BeforeAll
+  static void startToolkit() {
+    try {
+      Platform.startup(() -> {});
+      toolkit = true;
+    } catch (IllegalStateException e) {
+      toolkit = true; // already running
+    } catch (RuntimeException e) {
+      toolkit = false; // e.g. UnsupportedOperationException: no display
+    }
+  }
+
+  /** 10k adds and removes spread over 60 days, every fourth event a removal at a random index. */
+  @Test
+  void tenThousandAddsAndRemovesKeepTheRowsSorted() throws Exception {
+    assumeTrue(toolkit, "no JavaFX toolkit");
+    onFx(() -> {
+      ObservableList<Task> tasks = FXCollections.observableArrayList();
+      TaskListPanel panel = new TaskListPanel(tasks, new CompactTaskStore(), t -> {}, t -> {});
+      Random random = new Random(2);
+      for (int i = 0; i < EVENTS; i++) {
+        if (i % 4 == 3) tasks.remove(random.nextInt(tasks.size()));
+        else tasks.add(task(random));
+      }
+      assertRowsMatch(panel, tasks);
+
+      // Emptying the list row by row also drops every day's header.
+      while (!tasks.isEmpty()) tasks.remove(random.nextInt(tasks.size()));
+      assertEquals(0, panel.getItems().size());
+      return null;
+    });
+  }
+
+  @Test
+  void keepsOneHeaderPerDayAndOneRowPerTask() throws Exception {
+    assumeTrue(toolkit, "no JavaFX toolkit");
+    onFx(() -> {
+      ObservableList<Task> tasks = FXCollections.observableArrayList();
+      TaskListPanel panel = new TaskListPanel(tasks, new CompactTaskStore(), t -> {}, t -> {});
+      Random random = new Random(3);
+      for (int i = 0; i < 2_000; i++) {
+        tasks.add(task(random));
+        if (i % 3 == 2) tasks.remove(random.nextInt(tasks.size()));
+      }
+      assertRowsMatch(panel, tasks);
+      return null;
+    });
+  }
+
+  /** One header per day with tasks, each directly above its day's rows, and every task once, in time order. */
+  private static void assertRowsMatch(TaskListPanel panel, List<Task> tasks) {
+    Set<LocalDate> days = new HashSet<>();
+    tasks.forEach(t -> days.add(t.getCreatedAt().toLocalDate()));
+    long headers = panel.getItems().stream().filter(e -> e instanceof TaskListPanel.DateHeader).count();
+    long rows = panel.getItems().stream().filter(e -> e instanceof TaskListPanel.TaskEntry).count();
+    assertEquals(days.size(), headers);
+    assertEquals(tasks.size(), rows);
+
+    LocalDateTime previous = LocalDateTime.MIN;
+    LocalDate day = null;
+    for (TaskListPanel.Entry e : panel.getItems()) {
+      if (e instanceof TaskListPanel.DateHeader h) {
+        day = h.date();
+      } else if (e instanceof TaskListPanel.TaskEntry row) {
+        assertTrue(!row.task().getCreatedAt().isBefore(previous), "rows out of order");
+        assertEquals(day, row.task().getCreatedAt().toLocalDate(), "row under the wrong header");
+        previous = row.task().getCreatedAt();
+      }
+    }
+  }
+
+  private static Task task(Random random) {
+    Task t = new Task("task", Task.Priority.NORMAL);
+    t.setCreatedAt(NOW.minusDays(random.nextInt(60)).minusMinutes(random.nextInt(600)));
+    return t;
+  }
+
+  private static <T> T onFx(Supplier<T> work) throws Exception {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    Platform.runLater(() -> {
+      try {
+        result.complete(work.get());
+      } catch (Throwable t) {
+        result.completeExceptionally(t);
+      }
+    });
+    return result.get(60, TimeUnit.SECONDS);
+  }
+}